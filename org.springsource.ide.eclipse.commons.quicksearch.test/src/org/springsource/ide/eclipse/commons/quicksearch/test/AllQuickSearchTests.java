@@ -0,0 +1,27 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class AllQuickSearchTests {
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite(AllQuickSearchTests.class.getName());
+		suite.addTestSuite(PrioriTreeTest.class);
+		suite.addTestSuite(QuickTextQueryTest.class);
+		suite.addTestSuite(LineReaderTest.class);
+		suite.addTestSuite(ByteLineScannerTest.class);
+		suite.addTestSuite(ContentCacheTest.class);
+		suite.addTestSuite(MatchStoreTest.class);
+		suite.addTestSuite(BatchingRequestorTest.class);
+		suite.addTestSuite(ResultRankerTest.class);
+		suite.addTestSuite(NameMatcherTest.class);
+		suite.addTestSuite(PathGlobsTest.class);
+		suite.addTestSuite(ContentSnifferTest.class);
+		suite.addTestSuite(BloomFilterTableTest.class);
+		suite.addTestSuite(TrigramIndexTest.class);
+		suite.addTestSuite(QuickTextSearcherTest.class);
+		return suite;
+	}
+
+}
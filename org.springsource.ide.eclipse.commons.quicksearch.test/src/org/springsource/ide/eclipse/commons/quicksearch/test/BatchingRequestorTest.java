@@ -0,0 +1,129 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.springsource.ide.eclipse.commons.quicksearch.core.BatchingRequestor;
+import org.springsource.ide.eclipse.commons.quicksearch.core.LineItem;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextSearchRequestor;
+
+public class BatchingRequestorTest extends TestCase {
+
+	/**
+	 * Records the calls it receives, as strings.
+	 */
+	private static class Recorder extends QuickTextSearchRequestor {
+		final List<String> calls = new ArrayList<String>();
+		int delivered = 0;
+
+		@Override
+		public synchronized void addAll(List<LineItem> matches) {
+			calls.add("add "+matches.size());
+			delivered += matches.size();
+		}
+
+		@Override
+		public synchronized void updateAll(List<LineItem> matches) {
+			calls.add("update "+matches.size());
+			delivered += matches.size();
+		}
+
+		@Override
+		public synchronized void revokeAll(List<LineItem> lines) {
+			calls.add("revoke "+lines.size());
+			delivered += lines.size();
+		}
+
+		@Override
+		public synchronized void clear() {
+			calls.add("clear");
+		}
+
+		synchronized int getDelivered() {
+			return delivered;
+		}
+	}
+
+	/**
+	 * Uses only the single item methods.
+	 */
+	private static class SingleItemRecorder extends QuickTextSearchRequestor {
+		final List<String> calls = new ArrayList<String>();
+
+		@Override
+		public void add(LineItem match) {
+			calls.add("add "+match.getLineNumber());
+		}
+
+		@Override
+		public void revoke(LineItem line) {
+			calls.add("revoke "+line.getLineNumber());
+		}
+	}
+
+	private final MockFile file = new MockFile("/p/a.txt");
+
+	private LineItem item(int line) {
+		return new LineItem(file, "line "+line, line, 0);
+	}
+
+	public void testGroupsConsecutiveResultsInOrder() throws Exception {
+		Recorder recorder = new Recorder();
+		BatchingRequestor batcher = new BatchingRequestor(recorder);
+		batcher.add(item(1));
+		batcher.add(item(2));
+		batcher.update(item(1));
+		batcher.revoke(item(2));
+		batcher.revoke(item(3));
+		batcher.add(item(4));
+		assertTrue(recorder.calls.isEmpty());
+		batcher.flush();
+		assertEquals("[add 2, update 1, revoke 2, add 1]", recorder.calls.toString());
+		batcher.dispose();
+	}
+
+	public void testSingleItemRequestorStillWorks() throws Exception {
+		SingleItemRecorder recorder = new SingleItemRecorder();
+		BatchingRequestor batcher = new BatchingRequestor(recorder);
+		batcher.add(item(1));
+		batcher.add(item(2));
+		batcher.revoke(item(1));
+		batcher.flush();
+		assertEquals("[add 1, add 2, revoke 1]", recorder.calls.toString());
+		batcher.dispose();
+	}
+
+	public void testClearDropsPendingResults() throws Exception {
+		Recorder recorder = new Recorder();
+		BatchingRequestor batcher = new BatchingRequestor(recorder);
+		batcher.add(item(1));
+		batcher.clear();
+		batcher.add(item(2));
+		batcher.flush();
+		assertEquals("[clear, add 1]", recorder.calls.toString());
+		batcher.dispose();
+		batcher.add(item(3));
+		batcher.flush();
+		assertEquals("[clear, add 1]", recorder.calls.toString());
+	}
+
+	public void testDeliversWithoutFlush() throws Exception {
+		Recorder recorder = new Recorder();
+		BatchingRequestor batcher = new BatchingRequestor(recorder);
+		for (int i = 0; i < 10*BatchingRequestor.MAX_PENDING; i++) {
+			//Blocks now and then, since the recorder receives batches slower than we add results.
+			batcher.add(item(i));
+		}
+		long end = System.currentTimeMillis() + 5000;
+		while (recorder.getDelivered()<10*BatchingRequestor.MAX_PENDING && System.currentTimeMillis()<end) {
+			Thread.sleep(10);
+		}
+		assertEquals(10*BatchingRequestor.MAX_PENDING, recorder.getDelivered());
+		//Batched, but not necessarily in batches of exactly BATCH_SIZE.
+		assertTrue(recorder.calls.toString(), recorder.calls.size() < 10*BatchingRequestor.MAX_PENDING/BatchingRequestor.BATCH_SIZE*2);
+		batcher.dispose();
+	}
+
+}
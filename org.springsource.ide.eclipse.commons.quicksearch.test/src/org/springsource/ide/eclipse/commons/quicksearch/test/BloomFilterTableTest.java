@@ -0,0 +1,113 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.BloomFilterTable;
+
+public class BloomFilterTableTest extends TestCase {
+
+	private final MockFile a = new MockFile("/p/a.txt");
+	private final MockFile b = new MockFile("/p/b.txt");
+	private final MockFile c = new MockFile("/q/c.txt");
+
+	public void testNoFalseNegatives() throws Exception {
+		BloomFilterTable table = new BloomFilterTable();
+		Random rnd = new Random(1234);
+		//Like source code, a limited vocabulary of words used over and over.
+		String[] words = new String[200];
+		for (int w = 0; w < words.length; w++) {
+			StringBuilder word = new StringBuilder();
+			int len = 2 + rnd.nextInt(8);
+			for (int i = 0; i < len; i++) {
+				word.append((char)((rnd.nextBoolean() ? 'a' : 'A') + rnd.nextInt(26)));
+			}
+			words[w] = word.toString();
+		}
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 20000) {
+			text.append(words[rnd.nextInt(words.length)]);
+			text.append(rnd.nextInt(5)==0 ? '\n' : ' ');
+		}
+		build(table, a, text.toString(), 100);
+		assertTrue(table.hasFilter(a));
+		assertTrue(table.getFilterBytes() <= 1024);
+		for (int i = 0; i+3 <= text.length(); i++) {
+			String trigram = text.substring(i, i+3);
+			assertTrue(trigram, table.mayContain(a, keys(trigram, true)));
+			assertTrue(trigram, table.mayContain(a, keys(trigram.toUpperCase(), false)));
+		}
+	}
+
+	public void testSmallFileIsFolded() throws Exception {
+		BloomFilterTable table = new BloomFilterTable();
+		build(table, a, "hello world", 4);
+		assertTrue(table.hasFilter(a));
+		assertEquals(1, table.getFileCount());
+		assertEquals(8, table.getFilterBytes());
+		assertTrue(table.mayContain(a, keys("lo wor", true)));
+		assertTrue(table.mayContain(a, keys("HELLO", false)));
+		assertFalse(table.mayContain(a, keys("goodbye", true)));
+		//Too short to rule anything out.
+		assertTrue(table.mayContain(a, keys("xy", true)));
+	}
+
+	public void testFullFilterIsDropped() throws Exception {
+		BloomFilterTable table = new BloomFilterTable();
+		Random rnd = new Random(4321);
+		byte[] bytes = new byte[100000];
+		rnd.nextBytes(bytes);
+		BloomFilterTable.Builder builder = table.startFile(a);
+		builder.bytesRead(bytes, 0, bytes.length);
+		builder.commit();
+		assertFalse(table.hasFilter(a));
+		assertEquals(0, table.getFileCount());
+		assertTrue(table.mayContain(a, keys("goodbye", true)));
+	}
+
+	public void testStaleFilterIsIgnored() throws Exception {
+		BloomFilterTable table = new BloomFilterTable();
+		MockFile file = new MockFile("/p/changed.txt");
+		build(table, file, "hello", 10);
+		assertFalse(table.mayContain(file, keys("goodbye", true)));
+		file.setModificationStamp(2);
+		assertFalse(table.hasFilter(file));
+		assertTrue(table.mayContain(file, keys("goodbye", true)));
+	}
+
+	public void testChangedAndRemoved() throws Exception {
+		BloomFilterTable table = new BloomFilterTable();
+		build(table, a, "hello", 10);
+		build(table, b, "hello", 10);
+		build(table, c, "hello", 10);
+		assertEquals(3, table.getFileCount());
+		table.fileChanged(a, null);
+		assertFalse(table.hasFilter(a));
+		table.removed(new Path("/p"));
+		assertFalse(table.hasFilter(b));
+		assertTrue(table.hasFilter(c));
+		assertEquals(1, table.getFileCount());
+		table.removed(c.getFullPath());
+		assertEquals(0, table.getFileCount());
+	}
+
+	private static int[] keys(String pattern, boolean caseSensitive) {
+		return BloomFilterTable.keysFor(new QuickTextQuery(pattern, caseSensitive));
+	}
+
+	/**
+	 * Feed the text to a builder in chunks, so that trigrams span the chunks.
+	 */
+	private static void build(BloomFilterTable table, MockFile file, String text, int chunk) throws Exception {
+		byte[] bytes = text.getBytes("UTF-8");
+		BloomFilterTable.Builder builder = table.startFile(file);
+		for (int i = 0; i < bytes.length; i += chunk) {
+			builder.bytesRead(bytes, i, Math.min(chunk, bytes.length-i));
+		}
+		builder.commit();
+	}
+
+}
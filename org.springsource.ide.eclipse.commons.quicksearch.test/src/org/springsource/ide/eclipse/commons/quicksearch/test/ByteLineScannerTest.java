@@ -0,0 +1,267 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.ByteLiteralMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.util.ByteLineScanner;
+import org.springsource.ide.eclipse.commons.quicksearch.util.LineReader;
+
+public class ByteLineScannerTest extends TestCase {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	public void testLineNumbersAndOffsets() throws Exception {
+		String text = "foo\r\nbar\rfoo bar\n\nzor foo";
+		List<String> found = scan(text, UTF8, "foo", true, false);
+		assertEquals("[1:0:foo, 3:9:foo bar, 5:18:zor foo]", found.toString());
+	}
+
+	public void testCaseInsensitive() throws Exception {
+		List<String> found = scan("FOO\nfoo\nfOo", LATIN1, "Foo", false, false);
+		assertEquals("[1:0:FOO, 2:4:foo, 3:8:fOo]", found.toString());
+	}
+
+	public void testOffsetsCountChars() throws Exception {
+		//Multi-byte chars (and a surrogate pair) before the match must count as chars, not bytes.
+		String text = "é€😀\nx foo";
+		assertEquals("[2:5:x foo]", scan(text, UTF8, "foo", true, false).toString());
+	}
+
+	public void testMaxLineLength() throws Exception {
+		StringBuilder longLine = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			longLine.append('x');
+		}
+		try {
+			scan("foo\n"+longLine, UTF8, "foo", true, false);
+			fail("Should have aborted on the long line");
+		} catch (IOException e) {
+			//expected
+		}
+		//Same limit as LineReader: a line of maxLineLength chars is already too long.
+		assertEquals(1, scan(longLine.substring(0, 996)+"foo"+"\n", UTF8, "foo", true, false).size());
+		try {
+			scan(longLine.substring(0, 997)+"foo"+"\n", UTF8, "foo", true, false);
+			fail("Should have aborted on the long line");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+
+	public void testLongLineWindows() throws Exception {
+		StringBuilder longLine = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			longLine.append(i==1500 ? "foo" : "x");
+		}
+		//Windows of 1000 chars, starting 750 chars apart. Only the last two contain the match.
+		List<String> found = scan("bar\n"+longLine+"\n", UTF8, "foo", true, false, true);
+		assertEquals(2, found.size());
+		assertEquals("2:754:"+longLine.substring(750, 1750), found.get(0));
+		assertEquals("2:1504:"+longLine.substring(1500), found.get(1));
+	}
+
+	public void testWindowsDontSplitChars() throws Exception {
+		StringBuilder longLine = new StringBuilder();
+		for (int i = 0; i < 3000; i++) {
+			longLine.append(i%3==0 ? "\uD83D\uDE00" : "\u00E9");
+		}
+		for (boolean inMemory : new boolean[] {false, true}) {
+			List<String> found = scan(longLine.toString(), UTF8, "\u00E9", true, inMemory, true);
+			assertTrue(found.size()>1);
+			for (String window : found) {
+				String[] parts = window.split(":", 3);
+				//The offset counts a surrogate pair as two chars, and the window starts with a whole char.
+				assertTrue(longLine.toString().startsWith(parts[2], Integer.parseInt(parts[1])));
+			}
+		}
+	}
+
+	/**
+	 * The scanner should find the same lines as decoding the text with a LineReader and matching
+	 * the lines with a regexp.
+	 */
+	public void testAgreesWithLineReader() throws Exception {
+		Random rnd = new Random(4321);
+		String alphabet = "abA\r\né ";
+		for (int i = 0; i < 500; i++) {
+			StringBuilder buf = new StringBuilder();
+			int len = rnd.nextInt(i%50==0 ? 200000 : 80);
+			for (int j = 0; j < len; j++) {
+				buf.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+			}
+			String text = buf.toString();
+			Charset charset = rnd.nextBoolean() ? UTF8 : LATIN1;
+			boolean caseSensitive = rnd.nextBoolean();
+			String literal = rnd.nextBoolean() ? "a" : "éa";
+			List<String> expected = scanWithLineReader(text, charset, literal, caseSensitive);
+			assertEquals(expected, scan(text, charset, literal, caseSensitive, false));
+			assertEquals(expected, scan(text, charset, literal, caseSensitive, true));
+
+			//Long lines are split into the same windows, and the same windows match.
+			expected = scanWithLineReader(text, charset, literal, caseSensitive, true);
+			assertEquals(expected, scan(text, charset, literal, caseSensitive, false, true));
+			assertEquals(expected, scan(text, charset, literal, caseSensitive, true, true));
+		}
+	}
+
+	/**
+	 * Bytes that are not valid UTF-8 should be counted as the chars the decoder replaces them with,
+	 * so offsets still agree with the LineReader.
+	 */
+	public void testMalformedUtf8() throws Exception {
+		//Latin-1 text in a file that is declared to be UTF-8.
+		byte[] latin1 = "// Gr\u00FC\u00DFe f\u00FCr M\u00FCnchen\nfoo\n".getBytes(LATIN1);
+		assertEquals("[2:21:foo]", scan(latin1, UTF8, "foo", true, false, false).toString());
+
+		int[][] malformed = {
+				{0xF0, 0x9F, 0x98}, //Truncated 4 byte sequence.
+				{0xF0, 0x9F},
+				{0xF3},
+				{0xF0, 0x80, 0x80, 0x80}, //Overlong.
+				{0xF4, 0x90, 0x80, 0x80}, //Above U+10FFFF.
+				{0xF5, 0x80}, {0xFF},
+				{0xED, 0xA0, 0x80}, //Surrogate.
+				{0xE0, 0x80, 0x80}, //Overlong.
+				{0xE2, 0x82},
+				{0xC0, 0x80}, {0xC1, 0xBF}, {0xC2},
+				{0x80}, {0xBF, 0xBF},
+		};
+		for (int[] sequence : malformed) {
+			for (String[] around : new String[][] {{"x", " foo\nfoo"}, {"foo ", ""}, {"", "\r\nfoo"}}) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				out.write(around[0].getBytes(UTF8));
+				for (int b : sequence) {
+					out.write(b);
+				}
+				out.write(around[1].getBytes(UTF8));
+				byte[] bytes = out.toByteArray();
+				List<String> expected = scanWithLineReader(bytes, UTF8, "foo", true, false);
+				assertFalse(expected.isEmpty());
+				assertEquals(expected, scan(bytes, UTF8, "foo", true, false, false));
+				assertEquals(expected, scan(bytes, UTF8, "foo", true, true, false));
+			}
+		}
+	}
+
+	/**
+	 * Like {@link #testAgreesWithLineReader()}, for random bytes that are mostly not valid UTF-8.
+	 */
+	public void testAgreesWithLineReaderOnMalformedUtf8() throws Exception {
+		Random rnd = new Random(8765);
+		int[] alphabet = { 'a', 'b', '\r', '\n', 0x80, 0x8F, 0x90, 0x9F, 0xA0, 0xBF, 0xC0, 0xC2, 0xDF, 0xE0, 0xE2,
+				0xED, 0xEF, 0xF0, 0xF3, 0xF4, 0xF5, 0xFC, 0xFF };
+		for (int i = 0; i < 3000; i++) {
+			byte[] bytes = new byte[rnd.nextInt(i%100==0 ? 5000 : 60)];
+			for (int j = 0; j < bytes.length; j++) {
+				bytes[j] = (byte) alphabet[rnd.nextInt(alphabet.length)];
+			}
+			List<String> expected = scanWithLineReader(bytes, UTF8, "a", true, false);
+			assertEquals(expected, scan(bytes, UTF8, "a", true, false, false));
+			assertEquals(expected, scan(bytes, UTF8, "a", true, true, false));
+		}
+	}
+
+	/**
+	 * Long lines should be cut into the same windows as the LineReader cuts them, also when a surrogate
+	 * pair or a malformed sequence falls on a window boundary.
+	 */
+	public void testWindowsAgreeWithLineReader() throws Exception {
+		Random rnd = new Random(2468);
+		int[][] pieces = {
+				{'a'}, {'a'}, {'b'},
+				{0xC3, 0xA9}, //\u00E9
+				{0xF0, 0x9F, 0x98, 0x80}, //Surrogate pair.
+				{0xF0, 0x9F, 0x98, 0x80},
+				{0xF0, 0x9F}, {0xED, 0xA0, 0x80}, {0xFF}, //Malformed.
+		};
+		for (int i = 0; i < 300; i++) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int len = rnd.nextInt(i%30==0 ? 20000 : 3000);
+			for (int j = 0; j < len; j++) {
+				if (rnd.nextInt(1000)==0) {
+					out.write('\n');
+				}
+				for (int b : pieces[rnd.nextInt(pieces.length)]) {
+					out.write(b);
+				}
+			}
+			byte[] bytes = out.toByteArray();
+			List<String> expected = scanWithLineReader(bytes, UTF8, "a", true, true);
+			assertEquals(expected, scan(bytes, UTF8, "a", true, false, true));
+			assertEquals(expected, scan(bytes, UTF8, "a", true, true, true));
+		}
+	}
+
+	private List<String> scanWithLineReader(String text, Charset charset, String literal, boolean caseSensitive) throws IOException {
+		return scanWithLineReader(text, charset, literal, caseSensitive, false);
+	}
+
+	private List<String> scanWithLineReader(String text, Charset charset, String literal, boolean caseSensitive, boolean windows) throws IOException {
+		return scanWithLineReader(text.getBytes(charset), charset, literal, caseSensitive, windows);
+	}
+
+	private List<String> scanWithLineReader(byte[] bytes, Charset charset, String literal, boolean caseSensitive, boolean windows) throws IOException {
+		Pattern pattern = Pattern.compile(Pattern.quote(literal), caseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
+		LineReader reader = new LineReader(new InputStreamReader(new ByteArrayInputStream(bytes), charset), windows ? 1000 : 100000);
+		reader.setLongLineWindows(windows);
+		List<String> found = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine())!=null) {
+			if (pattern.matcher(line).find()) {
+				found.add(reader.getLineNumber()+":"+reader.getLastLineOffset()+":"+line);
+			}
+		}
+		return found;
+	}
+
+	private List<String> scan(String text, Charset charset, String literal, boolean caseSensitive, boolean inMemory) throws IOException {
+		return scan(text, charset, literal, caseSensitive, inMemory, false);
+	}
+
+	private List<String> scan(String text, Charset charset, String literal, boolean caseSensitive, boolean inMemory, boolean windows) throws IOException {
+		return scan(text.getBytes(charset), charset, literal, caseSensitive, inMemory, windows);
+	}
+
+	private List<String> scan(byte[] bytes, Charset charset, String literal, boolean caseSensitive, boolean inMemory, boolean windows) throws IOException {
+		ByteLineScanner scanner = inMemory
+				? new ByteLineScanner(ByteBuffer.wrap(bytes), charset, 1000)
+				: new ByteLineScanner(new TrickleInputStream(new ByteArrayInputStream(bytes)), charset, 1000);
+		scanner.setLongLineWindows(windows);
+		ByteLiteralMatcher matcher = ByteLiteralMatcher.create(literal, caseSensitive, charset);
+		List<String> found = new ArrayList<String>();
+		while (scanner.find(matcher, new NullProgressMonitor())) {
+			found.add(scanner.getLineNumber()+":"+scanner.getLastLineOffset()+":"+scanner.getLine());
+		}
+		return found;
+	}
+
+	/**
+	 * Returns only a few bytes at a time, to test the scanner's buffer refilling.
+	 */
+	private static class TrickleInputStream extends FilterInputStream {
+		private int count = 0;
+		TrickleInputStream(InputStream in) {
+			super(in);
+		}
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 1 + (count++)%7));
+		}
+	}
+
+}
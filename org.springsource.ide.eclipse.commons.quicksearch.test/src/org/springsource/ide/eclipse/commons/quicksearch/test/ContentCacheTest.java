@@ -0,0 +1,71 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.ContentCache;
+
+public class ContentCacheTest extends TestCase {
+
+	public void testStampMustMatch() throws Exception {
+		ContentCache cache = new ContentCache(1600);
+		cache.put(path("/p/a"), 1, bytes(10));
+		assertNotNull(cache.get(path("/p/a"), 1));
+		assertNull(cache.get(path("/p/a"), 2));
+		assertNull(cache.get(path("/p/b"), 1));
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		ContentCache cache = new ContentCache(1600); //Entries up to 100 bytes
+		cache.put(path("/p/a"), 1, bytes(100));
+		cache.put(path("/p/b"), 1, bytes(100));
+		for (int i = 0; i < 14; i++) {
+			cache.put(path("/p/x"+i), 1, bytes(100));
+		}
+		assertEquals(1600, cache.getSize());
+		cache.get(path("/p/a"), 1);
+		cache.put(path("/p/c"), 1, bytes(100));
+		assertEquals(1, cache.getEvictions());
+		assertNotNull(cache.get(path("/p/a"), 1));
+		assertNull(cache.get(path("/p/b"), 1));
+		assertEquals(1600, cache.getSize());
+
+		cache.setBudget(800);
+		assertEquals(800, cache.getSize());
+		assertEquals(9, cache.getEvictions());
+		assertNotNull(cache.get(path("/p/c"), 1));
+	}
+
+	public void testTooLargeIsNotCached() throws Exception {
+		ContentCache cache = new ContentCache(1600);
+		cache.put(path("/p/a"), 1, bytes(101));
+		assertNull(cache.get(path("/p/a"), 1));
+		assertEquals(0, cache.getSize());
+	}
+
+	public void testReplaceAndRemove() throws Exception {
+		ContentCache cache = new ContentCache(1600);
+		cache.put(path("/p/a"), 1, bytes(50));
+		cache.put(path("/p/a"), 2, bytes(20));
+		cache.put(path("/p/dir/b"), 1, bytes(10));
+		cache.put(path("/q/c"), 1, bytes(10));
+		assertEquals(40, cache.getSize());
+
+		cache.removed(path("/p"));
+		assertEquals(1, cache.getEntryCount());
+		assertEquals(10, cache.getSize());
+		assertNotNull(cache.get(path("/q/c"), 1));
+	}
+
+	private static IPath path(String path) {
+		return new Path(path);
+	}
+
+	private static byte[] bytes(int size) {
+		return new byte[size];
+	}
+
+}
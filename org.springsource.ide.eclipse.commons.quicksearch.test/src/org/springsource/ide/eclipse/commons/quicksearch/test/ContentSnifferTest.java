@@ -0,0 +1,70 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.ContentSniffer;
+
+public class ContentSnifferTest extends TestCase {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+	private static final Charset UTF16 = Charset.forName("UTF-16LE");
+
+	public void testText() throws Exception {
+		assertFalse(looksBinary("", UTF8));
+		assertFalse(looksBinary("class Foo {\r\n\tint x = 1;\f\n}\n", UTF8));
+		assertFalse(looksBinary("Grüße aus Köln, 東京 😀", UTF8));
+		assertFalse(looksBinary("Grüße aus Köln", LATIN1));
+		//Some Latin-1 text in a file that claims to be UTF-8.
+		byte[] latin1 = "Die Straße in Köln ist lang und breit. ".getBytes(LATIN1);
+		assertFalse(ContentSniffer.looksBinary(latin1, 0, latin1.length, UTF8));
+		assertFalse(looksBinary("\u0000t\u0000e\u0000x\u0000t", UTF16));
+	}
+
+	public void testBinary() throws Exception {
+		assertTrue(looksBinary("text, but\u0000", UTF8));
+		assertTrue(looksBinary("\u0001\u0002\u0003 text", LATIN1));
+		byte[] random = new byte[ContentSniffer.SNIFF_LENGTH];
+		new Random(42).nextBytes(random);
+		for (int i = 0; i < random.length; i++) {
+			//Not even a NUL byte.
+			random[i] |= 0x80;
+		}
+		assertTrue(ContentSniffer.looksBinary(random, 0, random.length, UTF8));
+		assertFalse(ContentSniffer.looksBinary(random, 0, random.length, LATIN1));
+	}
+
+	public void testCutOffSequence() throws Exception {
+		//A multi-byte char cut off by the end of the inspected bytes is not held against the file.
+		byte[] bytes = "ab€".getBytes(UTF8);
+		assertFalse(ContentSniffer.looksBinary(bytes, 0, bytes.length-1, UTF8));
+		//But stray continuation bytes are.
+		assertTrue(ContentSniffer.looksBinary(bytes, 3, 2, UTF8));
+	}
+
+	public void testVerdictIsCachedPerStamp() throws Exception {
+		ContentSniffer sniffer = new ContentSniffer();
+		MockFile file = new MockFile("/p/data");
+		file.setModificationStamp(1);
+		assertTrue(sniffer.isBinary(file, UTF8, new byte[] {1, 0, 2}));
+		//Same version, the contents aren't looked at again.
+		assertTrue(sniffer.isBinary(file, UTF8, "text".getBytes(UTF8)));
+		file.setModificationStamp(2);
+		assertFalse(sniffer.isBinary(file, UTF8, "text".getBytes(UTF8)));
+		assertEquals(1, sniffer.getFileCount());
+
+		sniffer.isBinary(new MockFile("/q/other"), UTF8, new byte[0]);
+		sniffer.removed(new Path("/p"));
+		assertEquals(1, sniffer.getFileCount());
+	}
+
+	private static boolean looksBinary(String text, Charset charset) {
+		byte[] bytes = text.getBytes(charset);
+		return ContentSniffer.looksBinary(bytes, 0, bytes.length, charset);
+	}
+
+}
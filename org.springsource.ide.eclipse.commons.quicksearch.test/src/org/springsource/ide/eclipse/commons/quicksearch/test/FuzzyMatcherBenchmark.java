@@ -0,0 +1,100 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.util.Random;
+
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.FuzzyMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.LiteralMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.TextMatcher;
+
+/**
+ * Compares the throughput of fuzzy matching with {@link FuzzyMatcher} to exact matching with a
+ * {@link LiteralMatcher}, on lines that look a bit like source code. This is not a test and not
+ * part of the test suite. Run it as a plain Java application. Optional arguments are the number of
+ * lines (default 200000) and the number of rounds (default 10).
+ */
+public class FuzzyMatcherBenchmark {
+
+	private static final String PATTERN = "quickSearchNeedle";
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		String[] lines = generate(count);
+		long chars = 0;
+		for (String line : lines) {
+			chars += line.length();
+		}
+		System.out.println("Lines: "+count+", chars: "+chars+", rounds: "+rounds);
+		double literal = measure("LiteralMatcher", lines, chars, rounds, new LiteralMatcher(PATTERN, true));
+		measure("LiteralMatcher (ignore case)", lines, chars, rounds, new LiteralMatcher(PATTERN, false));
+		for (int k = 1; k <= 3; k++) {
+			double fuzzy = measure("FuzzyMatcher (k="+k+")", lines, chars, rounds, new FuzzyMatcher(PATTERN, true, k));
+			System.out.println(String.format("%-28s %6.1fx", "  vs LiteralMatcher", fuzzy / literal));
+		}
+		measure("FuzzyMatcher (ignore case)", lines, chars, rounds, new FuzzyMatcher(PATTERN, false, 3));
+	}
+
+	/**
+	 * @return nanoseconds per char.
+	 */
+	private static double measure(String name, String[] lines, long chars, int rounds, TextMatcher matcher) {
+		int matches = 0;
+		//Warm up.
+		for (int r = 0; r < 3; r++) {
+			matches = run(lines, matcher);
+		}
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			run(lines, matcher);
+		}
+		double nanos = (System.nanoTime() - start) / ((double)rounds * chars);
+		System.out.println(String.format("%-28s %6.2f ns/char  (%d matches)", name, nanos, matches));
+		return nanos;
+	}
+
+	private static int run(String[] lines, TextMatcher matcher) {
+		int matches = 0;
+		for (String line : lines) {
+			if (matcher.matches(line)) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Lines of random identifiers and punctuation, with the pattern, or a misspelled version of it,
+	 * in about one line out of a hundred.
+	 */
+	private static String[] generate(int count) {
+		Random rnd = new Random(42);
+		String punctuation = " .,;(){}=+<>\"";
+		String[] lines = new String[count];
+		for (int i = 0; i < count; i++) {
+			StringBuilder line = new StringBuilder();
+			int indent = rnd.nextInt(4);
+			for (int j = 0; j < indent; j++) {
+				line.append('\t');
+			}
+			int len = 20 + rnd.nextInt(80);
+			while (line.length() < len) {
+				int word = 1 + rnd.nextInt(10);
+				for (int j = 0; j < word; j++) {
+					char c = (char)('a' + rnd.nextInt(26));
+					line.append(rnd.nextInt(8)==0 ? Character.toUpperCase(c) : c);
+				}
+				line.append(punctuation.charAt(rnd.nextInt(punctuation.length())));
+			}
+			if (rnd.nextInt(100)==0) {
+				StringBuilder needle = new StringBuilder(PATTERN);
+				if (rnd.nextBoolean()) {
+					needle.deleteCharAt(rnd.nextInt(needle.length()));
+				}
+				line.insert(rnd.nextInt(line.length()), needle);
+			}
+			lines[i] = line.toString();
+		}
+		return lines;
+	}
+
+}
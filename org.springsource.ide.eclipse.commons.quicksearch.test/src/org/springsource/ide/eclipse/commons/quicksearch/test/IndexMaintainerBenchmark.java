@@ -0,0 +1,120 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.IndexMaintainer;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.TrigramIndex;
+
+/**
+ * Measures how long the {@link IndexMaintainer} takes to catch up with a burst of changes to
+ * 5000 files. Not part of the test suite, run it as a JUnit plug-in test.
+ * <p>
+ * For each burst (create, change, close/reopen and delete) it prints how long the workspace operation
+ * took, how long after that the index caught up, and the files per second that makes.
+ */
+public class IndexMaintainerBenchmark extends TestCase {
+
+	private static final int FILES = 5000;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private IProject project;
+	private IndexMaintainer maintainer;
+	private TrigramIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject("index-maintainer-benchmark");
+		if (!project.exists()) {
+			project.create(null);
+		}
+		project.open(null);
+		index = new TrigramIndex(null);
+		maintainer = new IndexMaintainer();
+		maintainer.addParticipant(index);
+		maintainer.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		maintainer.stop();
+		project.delete(true, null);
+	}
+
+	public void testDeltaBurst() throws Exception {
+		measure("create", new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (int i = 0; i < FILES; i++) {
+					IFolder folder = project.getFolder("src"+(i/100));
+					if (!folder.exists()) {
+						folder.create(true, true, null);
+					}
+					folder.getFile("File"+i+".java").create(contents(i, "created"), true, null);
+				}
+			}
+		});
+		assertEquals(FILES, index.getFileCount());
+
+		measure("change", new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (int i = 0; i < FILES; i++) {
+					file(i).setContents(contents(i, "changed"), true, false, null);
+				}
+			}
+		});
+		assertEquals(FILES, index.getFileCount());
+
+		measure("close/reopen", new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				project.close(null);
+				project.open(null);
+			}
+		});
+		assertEquals(FILES, index.getFileCount());
+
+		measure("delete", new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (int i = 0; i < FILES; i++) {
+					file(i).delete(true, null);
+				}
+			}
+		});
+		assertEquals(0, index.getFileCount());
+	}
+
+	private IFile file(int i) {
+		return project.getFile(new Path("src"+(i/100)+"/File"+i+".java"));
+	}
+
+	private static ByteArrayInputStream contents(int i, String state) {
+		StringBuilder text = new StringBuilder();
+		for (int line = 0; line < 100; line++) {
+			text.append("public static final String CONSTANT_"+line+" = \""+state+" file "+i+"\";\n");
+		}
+		return new ByteArrayInputStream(text.toString().getBytes(UTF8));
+	}
+
+	private void measure(String name, IWorkspaceRunnable burst) throws Exception {
+		long start = System.currentTimeMillis();
+		ResourcesPlugin.getWorkspace().run(burst, new NullProgressMonitor());
+		long changed = System.currentTimeMillis();
+		while (!maintainer.isReady()) {
+			Thread.sleep(10);
+		}
+		long done = System.currentTimeMillis();
+		System.out.println(name+" "+FILES+" files: workspace "+(changed-start)+" ms, index caught up after "
+				+(done-changed)+" ms ("+(FILES*1000L/Math.max(1, done-changed))+" files/s)");
+	}
+
+}
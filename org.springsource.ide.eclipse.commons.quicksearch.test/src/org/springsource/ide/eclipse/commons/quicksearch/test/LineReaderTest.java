@@ -0,0 +1,197 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.springsource.ide.eclipse.commons.quicksearch.util.LineReader;
+
+public class LineReaderTest extends TestCase {
+
+	public void testTerminatorsAndOffsets() throws Exception {
+		assertEquals("[1:0:foo, 2:5:bar, 3:9:, 4:10:zor, 5:14:]", read("foo\r\nbar\r\rzor\n\n", 1000).toString());
+		assertEquals("[1:0:foo, 2:4:bar]", read("foo\rbar", 1000).toString());
+		assertEquals("[1:0:foo]", read("foo\r", 1000).toString());
+		assertEquals("[]", read("", 1000).toString());
+	}
+
+	public void testMaxLineLength() throws Exception {
+		assertEquals(1, read(repeat('x', 9)+"\n", 10).size());
+		try {
+			read(repeat('x', 10)+"\n", 10);
+			fail("Should have aborted on the long line");
+		} catch (IOException e) {
+			//expected
+		}
+		try {
+			read("foo\n"+repeat('x', 10), 10);
+			fail("Should have aborted on the long line");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+
+	public void testLongLineWindows() throws Exception {
+		//Windows of 10 chars, starting 8 chars apart. All have the line number of the long line.
+		String text = "ab\n0123456789012345678901234\nz";
+		assertEquals("[1:0:ab, 2:3:0123456789, 2:11:8901234567, 2:19:678901234, 3:29:z]", read(text, 10, true).toString());
+		//A line that fits is not split.
+		assertEquals("[1:0:0123456789]", read("0123456789", 10, true).toString());
+
+		LineReader reader = new LineReader(new StringReader(text), 10);
+		reader.setLongLineWindows(true);
+		reader.nextLine();
+		assertFalse(reader.isPartialLine());
+		for (int i = 0; i < 3; i++) {
+			reader.nextLine();
+			assertTrue(reader.isPartialLine());
+		}
+		reader.nextLine();
+		assertFalse(reader.isPartialLine());
+	}
+
+	public void testWindowsDontSplitPairs() throws Exception {
+		String pair = "\uD83D\uDE00";
+		//The pair straddles the end of the first window, which ends before it instead.
+		assertEquals("[1:0:012345678, 1:8:8"+pair+"abcdefg, 1:16:fghij]",
+				read("012345678"+pair+"abcdefghij", 10, true).toString());
+		//The pair straddles the start of the second window, which starts at the pair instead.
+		assertEquals("[1:0:0123456"+pair+"8, 1:7:"+pair+"89abcdef, 1:15:efghij]",
+				read("0123456"+pair+"89abcdefghij", 10, true).toString());
+	}
+
+	/**
+	 * With windows, long lines in a random text should be split the same as splitting the whole
+	 * text and then cutting the long lines into windows.
+	 */
+	public void testWindowsAgreeWithSplit() throws Exception {
+		Random rnd = new Random(5678);
+		String[] alphabet = { "a", "b", "\uD83D\uDE00", "\r", "\n", " " };
+		for (int i = 0; i < 300; i++) {
+			StringBuilder buf = new StringBuilder();
+			int len = rnd.nextInt(i%30==0 ? 100000 : 500);
+			for (int j = 0; j < len; j++) {
+				buf.append(alphabet[rnd.nextInt(i%3==0 ? 3 : alphabet.length)]);
+			}
+			String text = buf.toString();
+			int maxLineLength = 1 + rnd.nextInt(100);
+			assertEquals(windows(text, maxLineLength), read(text, maxLineLength, true));
+		}
+	}
+
+	public void testLineWindowIsReused() throws Exception {
+		LineReader reader = new LineReader(new StringReader("foo\nbar"));
+		CharSequence first = reader.nextLine();
+		String kept = first.toString();
+		assertEquals("oo", first.subSequence(1, 3).toString());
+		assertSame(first, reader.nextLine());
+		assertEquals("foo", kept);
+		assertEquals("bar", first.toString());
+		assertNull(reader.nextLine());
+	}
+
+	/**
+	 * Reading a random text in small chunks, with lines longer than the reader's buffer, should
+	 * give the same lines as splitting the whole text.
+	 */
+	public void testAgreesWithSplit() throws Exception {
+		Random rnd = new Random(1234);
+		String alphabet = "ab\r\n ";
+		for (int i = 0; i < 300; i++) {
+			StringBuilder buf = new StringBuilder();
+			int len = rnd.nextInt(i%30==0 ? 100000 : 100);
+			for (int j = 0; j < len; j++) {
+				//Sometimes long runs without terminators.
+				buf.append(alphabet.charAt(rnd.nextInt(i%3==0 ? 2 : alphabet.length())));
+			}
+			String text = buf.toString();
+			assertEquals(split(text), read(text, Integer.MAX_VALUE));
+		}
+	}
+
+	private List<String> split(String text) {
+		List<String> lines = new ArrayList<String>();
+		int lineNumber = 1;
+		int start = 0;
+		while (start<text.length()) {
+			int end = start;
+			while (end<text.length() && text.charAt(end)!='\r' && text.charAt(end)!='\n') {
+				end++;
+			}
+			lines.add(lineNumber++ +":"+start+":"+text.substring(start, end));
+			if (text.startsWith("\r\n", end)) {
+				end++;
+			}
+			start = end + 1;
+		}
+		return lines;
+	}
+
+	private List<String> windows(String text, int maxLineLength) {
+		int step = Math.max(1, maxLineLength - maxLineLength/4);
+		List<String> windows = new ArrayList<String>();
+		for (String line : split(text)) {
+			String[] parts = line.split(":", 3);
+			int start = Integer.parseInt(parts[1]);
+			String rest = parts[2];
+			while (rest.length()>maxLineLength) {
+				//Boundaries that would split a surrogate pair move one char earlier.
+				int length = maxLineLength>1 && splitsPair(rest, maxLineLength) ? maxLineLength-1 : maxLineLength;
+				int next = step>1 && splitsPair(rest, step) ? step-1 : step;
+				windows.add(parts[0]+":"+start+":"+rest.substring(0, length));
+				rest = rest.substring(next);
+				start += next;
+			}
+			windows.add(parts[0]+":"+start+":"+rest);
+		}
+		return windows;
+	}
+
+	private static boolean splitsPair(String text, int i) {
+		return Character.isHighSurrogate(text.charAt(i-1)) && Character.isLowSurrogate(text.charAt(i));
+	}
+
+	private List<String> read(String text, int maxLineLength) throws IOException {
+		return read(text, maxLineLength, false);
+	}
+
+	private List<String> read(String text, int maxLineLength, boolean windows) throws IOException {
+		LineReader reader = new LineReader(new TrickleReader(new StringReader(text)), maxLineLength);
+		reader.setLongLineWindows(windows);
+		List<String> lines = new ArrayList<String>();
+		CharSequence line;
+		while ((line = reader.nextLine())!=null) {
+			lines.add(reader.getLineNumber()+":"+reader.getLastLineOffset()+":"+line);
+		}
+		return lines;
+	}
+
+	private static String repeat(char c, int count) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			buf.append(c);
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Returns only a few chars at a time, to test the reader's buffer refilling.
+	 */
+	private static class TrickleReader extends FilterReader {
+		private int count = 0;
+		TrickleReader(Reader in) {
+			super(in);
+		}
+		@Override
+		public int read(char[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 1 + (count++)%7));
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.springsource.ide.eclipse.commons.quicksearch.core.LineItem;
+import org.springsource.ide.eclipse.commons.quicksearch.core.MatchStore;
+
+/**
+ * Compares the heap used per match when matches are kept as LineItems (a set in the searcher and a list in
+ * the dialog) to keeping them in a {@link MatchStore}, which the dialog shows directly. This is not a test
+ * and not part of the test suite.
+ * Run it as a plain Java application. Optional arguments are the number of matches (default 50000) and
+ * the number of files they are spread over (default 2000).
+ */
+public class MatchMemoryBenchmark {
+
+	private interface Layout {
+		Object fill(List<MockFile> files, int matches);
+	}
+
+	public static void main(String[] args) {
+		final int matches = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int fileCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		List<MockFile> files = new ArrayList<MockFile>();
+		for (int i = 0; i < fileCount; i++) {
+			files.add(new MockFile("/project/src/some/package/File"+i+".java"));
+		}
+		System.out.println("Matches: "+matches+", files: "+fileCount);
+		measure("LineItems (set + list)", files, matches, new Layout() {
+			public Object fill(List<MockFile> files, int matches) {
+				Set<LineItem> set = new HashSet<LineItem>(2000);
+				List<LineItem> list = Collections.synchronizedList(new ArrayList<LineItem>(2048));
+				Random rnd = new Random(42);
+				for (int i = 0; i < matches; i++) {
+					LineItem item = new LineItem(files.get(i%files.size()), randomLine(rnd), i, i*80);
+					if (set.add(item)) {
+						list.add(item);
+					}
+				}
+				return new Object[] { set, list };
+			}
+		});
+		measure("MatchStore", files, matches, new Layout() {
+			public Object fill(List<MockFile> files, int matches) {
+				MatchStore store = new MatchStore();
+				Random rnd = new Random(42);
+				for (int i = 0; i < matches; i++) {
+					String line = randomLine(rnd);
+					store.add(files.get(i%files.size()), line, i, i*80, line.length()/2);
+				}
+				return store;
+			}
+		});
+	}
+
+	/**
+	 * Mostly source code like lines, with the occasional long line.
+	 */
+	private static String randomLine(Random rnd) {
+		int length = rnd.nextInt(50)==0 ? 300 + rnd.nextInt(700) : 10 + rnd.nextInt(100);
+		StringBuilder line = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			line.append((char)('a' + rnd.nextInt(26)));
+		}
+		return line.toString();
+	}
+
+	private static void measure(String name, List<MockFile> files, int matches, Layout layout) {
+		long before = usedMemory();
+		Object kept = layout.fill(files, matches);
+		long after = usedMemory();
+		System.out.println(String.format("%-24s %8.1f bytes per match", name, (after - before) / (double) matches));
+		if (kept.hashCode()==42) {
+			System.out.println(); //Keep the data alive until after measuring.
+		}
+	}
+
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
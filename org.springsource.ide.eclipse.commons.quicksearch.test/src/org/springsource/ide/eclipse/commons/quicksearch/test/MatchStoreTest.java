@@ -0,0 +1,251 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.springsource.ide.eclipse.commons.quicksearch.core.LineItem;
+import org.springsource.ide.eclipse.commons.quicksearch.core.MatchStore;
+
+public class MatchStoreTest extends TestCase {
+
+	private final MockFile a = new MockFile("/p/a.txt");
+	private final MockFile b = new MockFile("/p/b.txt");
+
+	public void testAddAndGet() throws Exception {
+		MatchStore store = new MatchStore();
+		LineItem item = store.add(a, "hello world", 3, 100, 6);
+		assertEquals("hello world", item.getText());
+		assertEquals(3, item.getLineNumber());
+		assertEquals(100, item.getOffset());
+		assertSame(a, item.getFile());
+
+		assertNull(store.add(new MockFile("/p/a.txt"), "other text", 3, 100, 0));
+		assertNotNull(store.add(a, "line 4", 4, 112, 0));
+		assertTrue(store.add(new LineItem(b, "from b", 3, 10)));
+		assertFalse(store.add(new LineItem(b, "from b again", 3, 10)));
+
+		assertEquals(3, store.size());
+		assertEquals("hello world", store.get(0).getText());
+		assertEquals("line 4", store.get(1).getText());
+		assertEquals("from b", store.get(2).getText());
+		assertTrue(store.contains(new LineItem(a, "", 4, 0)));
+		assertFalse(store.contains(new LineItem(b, "", 4, 0)));
+	}
+
+	public void testNonLatin1Text() throws Exception {
+		MatchStore store = new MatchStore();
+		store.add(a, "caf\u00e9", 1, 0, 0);
+		store.add(a, "\u20ac 10 \u0141\u00f3d\u017a", 2, 0, 0);
+		store.add(a, "plain", 3, 0, 0);
+		store.remove(new LineItem(a, "", 1, 0));
+		assertEquals("\u20ac 10 \u0141\u00f3d\u017a", store.get(0).getText());
+		assertEquals("plain", store.get(1).getText());
+		assertEquals("caf\u00e9", store.copy().add(a, "caf\u00e9", 1, 0, 0).getText());
+	}
+
+	public void testLongLinesAreCutDown() throws Exception {
+		MatchStore store = new MatchStore();
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			line.append((char)('a' + i%26));
+		}
+		LineItem item = store.add(a, line, 1, 0, 500);
+		assertEquals(MatchStore.MAX_SNIPPET_LENGTH, item.getText().length());
+		int start = item.getOffset();
+		assertTrue(start<=500 && start+MatchStore.MAX_SNIPPET_LENGTH>500);
+		assertEquals(line.substring(start, start+MatchStore.MAX_SNIPPET_LENGTH), item.getText());
+		assertTrue(store.isTruncated(item));
+
+		//Match near the end.
+		item = store.add(a, line, 2, 2000, 999);
+		assertEquals(2000+1000-MatchStore.MAX_SNIPPET_LENGTH, item.getOffset());
+		assertEquals(line.substring(1000-MatchStore.MAX_SNIPPET_LENGTH), item.getText());
+
+		item = store.add(a, "short", 3, 0, 0);
+		assertFalse(store.isTruncated(item));
+
+		//A window onto a longer line is kept whole, but is still only part of the line.
+		item = store.add(a, "window", 4, 0, 0, true);
+		assertEquals("window", item.getText());
+		assertTrue(store.isTruncated(item));
+	}
+
+	public void testWindowsOfALine() throws Exception {
+		MatchStore store = new MatchStore();
+		assertNotNull(store.add(a, "first window", 7, 100, 0, true));
+		assertNotNull(store.add(a, "second window", 7, 850, 0, true));
+		//Same window again.
+		assertNull(store.add(a, "second window", 7, 850, 0, true));
+		assertEquals(2, store.size());
+		LineItem second = new LineItem(a, "second window", 7, 850);
+		assertTrue(store.contains(second));
+		assertTrue(store.isTruncated(second));
+		assertTrue(store.remove(second));
+		assertFalse(store.contains(second));
+		assertTrue(store.contains(new LineItem(a, "", 7, 100)));
+		assertNotNull(store.add(a, "third window", 7, 1600, 0, true));
+		assertEquals(2, store.copy().size());
+		store.removeFiles(Arrays.<IFile>asList(a));
+		assertEquals(0, store.size());
+	}
+
+	public void testAddAllKeepsTruncation() throws Exception {
+		MatchStore source = new MatchStore();
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			line.append((char)('a' + i%26));
+		}
+		source.add(a, line, 1, 0, 500);
+		source.setScore(source.add(a, "first window", 2, 2000, 0, true), 2.5);
+		source.add(a, "second window", 2, 2750, 0, true);
+		source.add(b, "caf\u00e9", 3, 40, 0);
+		source.add(b, "gone", 4, 50, 0);
+		source.remove(new LineItem(b, "", 4, 0));
+
+		MatchStore store = new MatchStore();
+		store.add(b, "already there", 3, 40, 0);
+		List<LineItem> added = store.addAll(source);
+		assertEquals(3, added.size());
+		assertEquals(4, store.size());
+		assertEquals(source.get(0).getText(), added.get(0).getText());
+		assertEquals(source.get(0).getOffset(), added.get(0).getOffset());
+		assertEquals("second window", store.get(3).getText());
+		assertEquals(2.5, store.getScore(added.get(1)));
+		for (LineItem item : added) {
+			assertTrue(store.isTruncated(item));
+		}
+		LineItem existing = store.get(0);
+		assertEquals("already there", existing.getText());
+		assertFalse(store.isTruncated(existing));
+		//Windows are still told apart by their offset.
+		assertNull(store.add(a, "second window", 2, 2750, 0, true));
+		assertNotNull(store.add(a, "third window", 2, 3500, 0, true));
+		//The source is unchanged.
+		assertEquals(4, source.size());
+	}
+
+	public void testRemove() throws Exception {
+		MatchStore store = new MatchStore();
+		for (int i = 0; i < 100; i++) {
+			store.add(i%2==0 ? a : b, "line "+i, i, i*10, 0);
+		}
+		for (int i = 0; i < 100; i += 3) {
+			assertTrue(store.remove(new LineItem(i%2==0 ? a : b, "", i, 0)));
+		}
+		assertFalse(store.remove(new LineItem(a, "", 0, 0)));
+		assertEquals(66, store.size());
+		int expected = 1;
+		for (int i = 0; i < store.size(); i++) {
+			assertEquals("line "+expected, store.get(i).getText());
+			expected += expected%3==1 ? 1 : 2;
+		}
+		//Removed lines can be added again.
+		assertNotNull(store.add(a, "line 0 again", 0, 0, 0));
+		assertEquals("line 0 again", store.get(66).getText());
+
+		store.removeFiles(Arrays.<IFile>asList(a));
+		assertEquals(33, store.size());
+		for (LineItem item : store) {
+			assertSame(b, item.getFile());
+		}
+	}
+
+	public void testIteratorRemove() throws Exception {
+		MatchStore store = new MatchStore();
+		for (int i = 0; i < 1000; i++) {
+			store.add(a, "line "+i, i, 0, 0);
+		}
+		Iterator<LineItem> iter = store.iterator();
+		int count = 0;
+		while (iter.hasNext()) {
+			LineItem item = iter.next();
+			if (item.getLineNumber()%10!=0) {
+				iter.remove();
+			}
+			count++;
+		}
+		assertEquals(1000, count);
+		assertEquals(100, store.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals("line "+(i*10), store.get(i).getText());
+		}
+	}
+
+	/**
+	 * Compare the store with a plain list, over random adds and removes.
+	 */
+	public void testAgreesWithList() throws Exception {
+		Random rnd = new Random(777);
+		MatchStore store = new MatchStore();
+		List<LineItem> reference = new ArrayList<LineItem>();
+		for (int i = 0; i < 20000; i++) {
+			int line = rnd.nextInt(2000);
+			LineItem item = new LineItem(rnd.nextBoolean() ? a : b, "line "+line, line, 0);
+			int firstChange;
+			if (rnd.nextInt(3)==0) {
+				int index = reference.indexOf(item);
+				assertEquals(index>=0, store.remove(item));
+				if (index>=0) {
+					reference.remove(index);
+				}
+				firstChange = index;
+			} else {
+				boolean added = !reference.contains(item);
+				assertEquals(added, store.add(item));
+				if (added) {
+					reference.add(item);
+				}
+				firstChange = added ? reference.size()-1 : -1;
+			}
+			assertEquals(firstChange, store.takeFirstChange());
+			assertEquals(reference.size(), store.size());
+			if (!reference.isEmpty()) {
+				int index = rnd.nextInt(reference.size());
+				LineItem expected = reference.get(index);
+				LineItem actual = store.get(index);
+				assertEquals(expected, actual);
+				assertEquals(expected.getText(), actual.getText());
+			}
+		}
+		assertEquals(reference, store.toList());
+	}
+
+	public void testFirstChange() throws Exception {
+		MatchStore store = new MatchStore();
+		assertEquals(-1, store.takeFirstChange());
+		for (int i = 0; i < 10; i++) {
+			store.add(a, "line", i, 0, 0);
+		}
+		assertEquals(0, store.takeFirstChange());
+		store.add(a, "line", 10, 0, 0);
+		store.remove(new LineItem(a, "", 7, 0));
+		store.remove(new LineItem(a, "", 3, 0));
+		assertEquals(3, store.takeFirstChange());
+		assertEquals(-1, store.takeFirstChange());
+		store.clear();
+		assertEquals(0, store.takeFirstChange());
+	}
+
+	public void testCopy() throws Exception {
+		MatchStore store = new MatchStore();
+		store.add(a, "one", 1, 0, 0);
+		store.setScore(store.add(a, "two", 2, 4, 0), 3.0);
+		store.remove(new LineItem(a, "", 1, 0));
+		MatchStore copy = store.copy();
+		store.clear();
+		assertEquals(0, store.size());
+		assertEquals(1, copy.size());
+		assertEquals("two", copy.get(0).getText());
+		assertEquals(3.0, copy.getScore(copy.get(0)));
+		assertEquals(0.0, copy.getScore(new LineItem(a, "", 1, 0)));
+		assertNull(copy.add(a, "two", 2, 4, 0));
+		assertNotNull(copy.add(a, "one", 1, 0, 0));
+	}
+
+}
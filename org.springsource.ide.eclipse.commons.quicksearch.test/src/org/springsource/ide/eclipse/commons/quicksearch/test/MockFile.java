@@ -0,0 +1,134 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFileState;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.content.IContentDescription;
+
+public class MockFile extends MockResource implements IFile {
+
+	private long stamp = 1;
+
+	public MockFile(String pathStr) {
+		super(pathStr);
+	}
+
+	@Override
+	public int getType() {
+		return IResource.FILE;
+	}
+
+	@Override
+	public long getModificationStamp() {
+		return stamp;
+	}
+
+	public void setModificationStamp(long stamp) {
+		this.stamp = stamp;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof MockFile && fullPath.equals(((MockFile) obj).fullPath);
+	}
+
+	@Override
+	public int hashCode() {
+		return fullPath.hashCode();
+	}
+
+	public void appendContents(InputStream source, boolean force, boolean keepHistory, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void appendContents(InputStream source, int updateFlags, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void create(InputStream source, boolean force, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void create(InputStream source, int updateFlags, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void createLink(IPath path, int updateFlags, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void createLink(URI location, int updateFlags, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void delete(boolean force, boolean keepHistory, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public String getCharset() throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public String getCharset(boolean checkImplicit) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public String getCharsetFor(Reader reader) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public IContentDescription getContentDescription() throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public InputStream getContents() throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public InputStream getContents(boolean force) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public int getEncoding() throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public IFileState[] getHistory(IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void move(IPath path, boolean force, boolean keepHistory, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void setCharset(String newCharset) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void setCharset(String newCharset, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void setContents(InputStream source, boolean force, boolean keepHistory, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void setContents(IFileState source, boolean force, boolean keepHistory, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void setContents(InputStream source, int updateFlags, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+
+	public void setContents(IFileState source, int updateFlags, IProgressMonitor monitor) throws CoreException {
+		throw new Error("Not implemented");
+	}
+}
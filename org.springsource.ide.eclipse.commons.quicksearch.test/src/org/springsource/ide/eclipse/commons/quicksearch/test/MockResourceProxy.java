@@ -0,0 +1,77 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.QualifiedName;
+
+/**
+ * A proxy for a {@link MockResource}. Keeps track of whether a handle was requested.
+ */
+public class MockResourceProxy implements IResourceProxy {
+
+	private final IPath fullPath;
+	private final int type;
+	private boolean handleRequested = false;
+
+	public MockResourceProxy(String pathStr, int type) {
+		this.fullPath = new Path(pathStr);
+		this.type = type;
+	}
+
+	public boolean isHandleRequested() {
+		return handleRequested;
+	}
+
+	public long getModificationStamp() {
+		throw new Error("Not implemented");
+	}
+
+	public boolean isAccessible() {
+		return true;
+	}
+
+	public boolean isDerived() {
+		return false;
+	}
+
+	public boolean isLinked() {
+		return false;
+	}
+
+	public boolean isPhantom() {
+		return false;
+	}
+
+	public boolean isHidden() {
+		return false;
+	}
+
+	public boolean isTeamPrivateMember() {
+		return false;
+	}
+
+	public String getName() {
+		String name = fullPath.lastSegment();
+		return name!=null ? name : "";
+	}
+
+	public Object getSessionProperty(QualifiedName key) {
+		throw new Error("Not implemented");
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public IPath requestFullPath() {
+		return fullPath;
+	}
+
+	public IResource requestResource() {
+		handleRequested = true;
+		return type==IResource.FILE ? new MockFile(fullPath.toString()) : new MockResource(fullPath.toString());
+	}
+
+}
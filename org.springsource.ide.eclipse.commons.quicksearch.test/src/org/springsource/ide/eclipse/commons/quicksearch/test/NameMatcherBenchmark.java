@@ -0,0 +1,119 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.util.Random;
+
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.DefaultPriorityFunction;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.NameMatcher;
+
+/**
+ * Compares checking resource names against the default ignore lists with a loop per list, as
+ * {@link DefaultPriorityFunction} used to, and with a {@link NameMatcher}. This is not a test and
+ * not part of the test suite. Run it as a plain Java application. Optional arguments are the number
+ * of names (default 1000000) and the number of rounds (default 10).
+ */
+public class NameMatcherBenchmark {
+
+	private static final String[] PREFIXES = new DefaultPriorityFunction().ignoredPrefixes;
+	private static final String[] NAMES = new DefaultPriorityFunction().ignoredNames;
+
+	private interface Check {
+		boolean ignored(String name);
+	}
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		final String[] extensions = new DefaultPriorityFunction().ignoredExtensions;
+		String[] names = generate(count, extensions);
+		System.out.println("Names: "+count+", rounds: "+rounds);
+		measure("Loops", names, rounds, new Check() {
+			public boolean ignored(String name) {
+				return loops(extensions, name);
+			}
+		});
+		final NameMatcher matcher = new NameMatcher(extensions, PREFIXES, NAMES, false);
+		measure("NameMatcher", names, rounds, new Check() {
+			public boolean ignored(String name) {
+				return matcher.matches(name);
+			}
+		});
+		final NameMatcher ignoreCase = new NameMatcher(extensions, PREFIXES, NAMES, true);
+		measure("NameMatcher (ignore case)", names, rounds, new Check() {
+			public boolean ignored(String name) {
+				return ignoreCase.matches(name);
+			}
+		});
+	}
+
+	private static boolean loops(String[] extensions, String name) {
+		for (String ext : extensions) {
+			if (name.endsWith(ext)) {
+				return true;
+			}
+		}
+		for (String pre : PREFIXES) {
+			if (name.startsWith(pre)) {
+				return true;
+			}
+		}
+		for (String n : NAMES) {
+			if (name.equals(n)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void measure(String name, String[] names, int rounds, Check check) {
+		int ignored = 0;
+		//Warm up.
+		for (int r = 0; r < 3; r++) {
+			ignored = run(names, check);
+		}
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			run(names, check);
+		}
+		double nanos = (System.nanoTime() - start) / ((double)rounds * names.length);
+		System.out.println(String.format("%-28s %6.1f ns/name  (%d ignored)", name, nanos, ignored));
+	}
+
+	private static int run(String[] names, Check check) {
+		int ignored = 0;
+		for (String n : names) {
+			if (check.ignored(n)) {
+				ignored++;
+			}
+		}
+		return ignored;
+	}
+
+	/**
+	 * Mostly source files, with some ignored extensions, hidden files and build folders in between.
+	 */
+	private static String[] generate(int count, String[] extensions) {
+		Random rnd = new Random(42);
+		String[] sourceExtensions = { ".java", ".xml", ".properties", ".js", ".html", ".md", ".txt", "" };
+		String[] names = new String[count];
+		for (int i = 0; i < count; i++) {
+			StringBuilder name = new StringBuilder();
+			int kind = rnd.nextInt(100);
+			if (kind < 2) {
+				name.append(NAMES[rnd.nextInt(NAMES.length)]);
+			} else {
+				if (kind < 5) {
+					name.append('.');
+				}
+				int len = 3 + rnd.nextInt(12);
+				for (int j = 0; j < len; j++) {
+					name.append((char)('a' + rnd.nextInt(26)));
+				}
+				name.append(kind < 20 ? extensions[rnd.nextInt(extensions.length)]
+						: sourceExtensions[rnd.nextInt(sourceExtensions.length)]);
+			}
+			names[i] = name.toString();
+		}
+		return names;
+	}
+
+}
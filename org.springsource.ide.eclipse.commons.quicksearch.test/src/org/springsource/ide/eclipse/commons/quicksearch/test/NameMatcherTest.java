@@ -0,0 +1,96 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.DefaultPriorityFunction;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.NameMatcher;
+
+public class NameMatcherTest extends TestCase {
+
+	private static final String[] EXTENSIONS = { ".class", ".CLASS", ".jar", "~", ".tar.gz", ".ppt", ".pptx" };
+	private static final String[] PREFIXES = { ".", "_tmp" };
+	private static final String[] NAMES = { "bin", "target" };
+
+	public void testMatches() throws Exception {
+		NameMatcher matcher = new NameMatcher(EXTENSIONS, PREFIXES, NAMES, false);
+		assertTrue(matcher.matches("Foo.class"));
+		assertTrue(matcher.matches("Foo.CLASS"));
+		assertFalse(matcher.matches("Foo.Class"));
+		assertTrue(matcher.matches(".class"));
+		assertFalse(matcher.matches("class"));
+		assertTrue(matcher.matches("backup~"));
+		assertTrue(matcher.matches("x.tar.gz"));
+		assertFalse(matcher.matches("x.gz"));
+		assertTrue(matcher.matches("slides.ppt"));
+		assertTrue(matcher.matches("slides.pptx"));
+		assertFalse(matcher.matches("slides.pp"));
+
+		assertTrue(matcher.matches(".git"));
+		assertTrue(matcher.matches("_tmp123"));
+		assertFalse(matcher.matches("_tm"));
+
+		assertTrue(matcher.matches("bin"));
+		assertFalse(matcher.matches("bins"));
+		assertFalse(matcher.matches("Target"));
+		assertFalse(matcher.matches(""));
+		assertFalse(matcher.matches("README.md"));
+	}
+
+	public void testIgnoreCase() throws Exception {
+		NameMatcher matcher = new NameMatcher(EXTENSIONS, PREFIXES, NAMES, true);
+		assertTrue(matcher.matches("Foo.Class"));
+		assertTrue(matcher.matches("X.TAR.GZ"));
+		assertFalse(matcher.matches("Foo.Clas"));
+		//Only extensions ignore case.
+		assertFalse(matcher.matches("BIN"));
+	}
+
+	public void testEmptyStrings() throws Exception {
+		String[] none = {};
+		assertFalse(new NameMatcher(none, none, none, false).matches("foo"));
+		//Like String.endsWith and startsWith, an empty extension or prefix matches anything.
+		assertTrue(new NameMatcher(new String[] { "" }, none, none, false).matches("foo"));
+		assertTrue(new NameMatcher(none, new String[] { "" }, none, false).matches("foo"));
+	}
+
+	public void testAgreesWithLoops() throws Exception {
+		String[] extensions = new DefaultPriorityFunction().ignoredExtensions;
+		NameMatcher matcher = new NameMatcher(extensions, PREFIXES, NAMES, false);
+		Random rnd = new Random(3);
+		String alphabet = ".~_abcijlsptxCJLSPTX";
+		for (int i = 0; i < 100000; i++) {
+			StringBuilder name = new StringBuilder();
+			int len = rnd.nextInt(8);
+			for (int j = 0; j < len; j++) {
+				name.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+			}
+			if (rnd.nextBoolean()) {
+				name.append(extensions[rnd.nextInt(extensions.length)]);
+			}
+			String n = name.toString();
+			assertEquals(n, matchesWithLoops(extensions, n), matcher.matches(n));
+		}
+	}
+
+	static boolean matchesWithLoops(String[] extensions, String name) {
+		for (String ext : extensions) {
+			if (name.endsWith(ext)) {
+				return true;
+			}
+		}
+		for (String pre : PREFIXES) {
+			if (name.startsWith(pre)) {
+				return true;
+			}
+		}
+		for (String n : NAMES) {
+			if (name.equals(n)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.commons.quicksearch.core.pathmatch.PathGlobs;
+
+public class PathGlobsTest extends TestCase {
+
+	public void testAnchored() throws Exception {
+		PathGlobs globs = new PathGlobs("/my-service/src/main/**");
+		assertFile(true, globs, "/my-service/src/main/java/A.java");
+		assertFile(true, globs, "/my-service/src/main/A.java");
+		assertFile(false, globs, "/my-service/src/test/A.java");
+		assertFile(false, globs, "/other/src/main/A.java");
+		//Only what is inside.
+		assertFalse(globs.matches(new Path("/my-service/src/main"), true));
+
+		assertTrue(globs.mayMatchBelow(Path.ROOT));
+		assertTrue(globs.mayMatchBelow(new Path("/my-service")));
+		assertTrue(globs.mayMatchBelow(new Path("/my-service/src")));
+		assertTrue(globs.mayMatchBelow(new Path("/my-service/src/main")));
+		assertTrue(globs.mayMatchBelow(new Path("/my-service/src/main/java")));
+		assertFalse(globs.mayMatchBelow(new Path("/other")));
+		assertFalse(globs.mayMatchBelow(new Path("/my-service/src/test")));
+		assertFalse(globs.mayMatchBelow(new Path("/my-service/bin")));
+	}
+
+	public void testSlashInTheMiddleAnchors() throws Exception {
+		PathGlobs globs = new PathGlobs("proj/*.txt");
+		assertFile(true, globs, "/proj/x.txt");
+		assertFile(false, globs, "/proj/sub/x.txt");
+		assertFile(false, globs, "/other/proj/x.txt");
+		assertFalse(globs.mayMatchBelow(new Path("/other")));
+		//Files in it can't match, but a folder called 'x.txt' could.
+		assertTrue(globs.mayMatchBelow(new Path("/proj")));
+		assertFalse(globs.mayMatchBelow(new Path("/proj/sub")));
+	}
+
+	public void testUnanchored() throws Exception {
+		PathGlobs globs = new PathGlobs("*.java");
+		assertFile(true, globs, "/p/A.java");
+		assertFile(true, globs, "/p/src/deep/A.java");
+		assertFile(false, globs, "/p/A.txt");
+		assertTrue(globs.mayMatchBelow(new Path("/p/src")));
+
+		globs = new PathGlobs("src");
+		assertFile(true, globs, "/p/src/A.java");
+		assertFile(true, globs, "/src");
+		assertFile(false, globs, "/p/source/A.java");
+	}
+
+	public void testAnySegments() throws Exception {
+		PathGlobs globs = new PathGlobs("proj/**/A.java");
+		assertFile(true, globs, "/proj/A.java");
+		assertFile(true, globs, "/proj/src/A.java");
+		assertFile(true, globs, "/proj/x/y/A.java");
+		assertFile(false, globs, "/proj/x/y/B.java");
+		assertFalse(globs.mayMatchBelow(new Path("/other")));
+
+		globs = new PathGlobs("**/test/**");
+		assertFile(true, globs, "/proj/test/x/y.java");
+		assertFile(true, globs, "/a/b/test/c.java");
+		assertFile(false, globs, "/proj/test");
+	}
+
+	public void testContainersOnly() throws Exception {
+		PathGlobs globs = new PathGlobs("build/");
+		assertFile(true, globs, "/p/build/out.txt");
+		assertFile(false, globs, "/p/build");
+		assertTrue(globs.matches(new Path("/p/build"), true));
+	}
+
+	public void testSeveralGlobs() throws Exception {
+		PathGlobs globs = new PathGlobs("/a/src/**", " /b/**", "", "docs/*.md ");
+		assertFile(true, globs, "/a/src/A.java");
+		assertFile(true, globs, "/b/x/y.txt");
+		assertFile(true, globs, "/docs/README.md");
+		assertFile(false, globs, "/a/test/A.java");
+		assertFile(false, globs, "/c/A.java");
+		assertTrue(globs.mayMatchBelow(new Path("/a")));
+		assertTrue(globs.mayMatchBelow(new Path("/b/x")));
+		assertFalse(globs.mayMatchBelow(new Path("/a/test")));
+		assertFalse(globs.mayMatchBelow(new Path("/c")));
+
+		assertTrue(new PathGlobs("", " ").isEmpty());
+		assertFalse(new PathGlobs("", " ").mayMatchBelow(Path.ROOT));
+	}
+
+	public void testSegmentGlobs() throws Exception {
+		PathGlobs globs = new PathGlobs("A?.java", "[ab]*.txt", "[!x]y", "c\\*");
+		assertFile(true, globs, "/p/AB.java");
+		assertFile(false, globs, "/p/A.java");
+		assertFile(true, globs, "/p/b1.txt");
+		assertFile(false, globs, "/p/c1.txt");
+		assertFile(true, globs, "/p/zy");
+		assertFile(false, globs, "/p/xy");
+		assertFile(true, globs, "/p/c*");
+		assertFile(false, globs, "/p/cd");
+	}
+
+	private void assertFile(boolean expected, PathGlobs globs, String path) {
+		assertEquals(path, expected, globs.matches(new Path(path), false));
+	}
+
+}
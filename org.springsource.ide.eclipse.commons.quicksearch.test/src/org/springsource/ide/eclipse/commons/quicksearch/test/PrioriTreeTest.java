@@ -2,8 +2,12 @@ package org.springsource.ide.eclipse.commons.quicksearch.test;
 
 import static org.springsource.ide.eclipse.commons.quicksearch.core.priority.PriorityFunction.PRIORITY_DEFAULT;
 import static org.springsource.ide.eclipse.commons.quicksearch.core.priority.PriorityFunction.PRIORITY_IGNORE;
+
+import java.util.HashSet;
+
 import junit.framework.TestCase;
 
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.Path;
 import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PrioriTree;
 
@@ -141,6 +145,68 @@ public class PrioriTreeTest extends TestCase {
 		checkPriority(PRIORITY_IGNORE,  "/promoted/other/big.zip");
 	}
 	
+	public void testSubtreePriority() {
+		tree.setPriority(new Path("/project/src"), 100.0, 50.0);
+
+		checkPriority(100.0, "/");
+		checkPriority(100.0, "/project");
+		checkPriority(100.0, "/project/src");
+		checkPriority(50.0, "/project/src/main");
+		checkPriority(50.0, "/project/src/main/Foo.java");
+		checkPriority(PRIORITY_DEFAULT, "/project/test");
+		checkPriority(PRIORITY_IGNORE, "/project/src/big.zip");
+
+		//A descendant can still be raised above the rest of the subtree...
+		setPriority("/project/src/main/Foo.java", 200.0);
+		checkPriority(200.0, "/project/src/main/Foo.java");
+		checkPriority(200.0, "/project/src");
+		checkPriority(50.0, "/project/src/main/Bar.java");
+
+		//... but never lowered.
+		setPriority("/project/src/main", 10.0);
+		checkPriority(200.0, "/project/src/main");
+		checkPriority(50.0, "/project/src/main/Bar.java");
+
+		//The subtree can't be more interesting than its root.
+		tree.setPriority(new Path("/other"), 10.0, 300.0);
+		checkPriority(10.0, "/other");
+		checkPriority(10.0, "/other/sub");
+	}
+
+	public void testPruning() {
+		setPriority("/a/b/c", 50.0);
+		setPriority("/a/b/d", 50.0);
+		setPriority("/a/e", 50.0);
+		assertEquals(6, tree.getNodeCount());
+
+		//Raising all of /a makes the nodes below it redundant.
+		setPriority("/a", 100.0);
+		assertEquals(2, tree.getNodeCount());
+		checkPriority(100.0, "/a/b/c");
+		checkPriority(100.0, "/a/e");
+		checkPriority(PRIORITY_DEFAULT, "/other");
+
+		//Setting a priority that is already implied doesn't add nodes.
+		setPriority("/a/b/c", 100.0);
+		setPriority("/a/x", 20.0);
+		assertEquals(2, tree.getNodeCount());
+
+		//But setting a higher one does.
+		setPriority("/a/b/c", 200.0);
+		assertEquals(4, tree.getNodeCount());
+		checkPriority(200.0, "/a/b/c");
+		checkPriority(200.0, "/a");
+		checkPriority(100.0, "/a/b/other");
+	}
+
+	public void testIgnoredResourcesThroughProxy() {
+		tree.ignoredResources = new HashSet<IResource>();
+		tree.ignoredResources.add(new MockFile("/project/ignored.txt"));
+		assertEquals(PRIORITY_IGNORE, tree.priority(new MockResourceProxy("/project/ignored.txt", IResource.FILE)));
+		assertEquals(PRIORITY_DEFAULT, tree.priority(new MockResourceProxy("/project/other.txt", IResource.FILE)));
+		assertEquals(PRIORITY_DEFAULT, tree.priority(new MockResourceProxy("/project/ignored.txt", IResource.FOLDER)));
+	}
+
 	private void setPriority(String pathStr, double pri) {
 		tree.setPriority(new Path(pathStr), pri);
 	}
@@ -148,6 +214,10 @@ public class PrioriTreeTest extends TestCase {
 	private void checkPriority(double expected, String pathStr) {
 		assertEquals(pathStr,
 				expected, tree.priority(new MockResource(pathStr)));
+		//Same priority when seen through a proxy, but without creating a handle.
+		MockResourceProxy proxy = new MockResourceProxy(pathStr, IResource.FOLDER);
+		assertEquals(pathStr, expected, tree.priority(proxy));
+		assertFalse(pathStr, proxy.isHandleRequested());
 	}
 	
 }
@@ -0,0 +1,490 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery.Mode;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery.TextRange;
+import org.eclipse.jface.text.IRegion;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.FuzzyMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.LiteralMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.RegexLiterals;
+
+public class QuickTextQueryTest extends TestCase {
+
+	public void testLiteralMatch() {
+		checkMatch(true, "foo", true, "a foo b");
+		checkMatch(false, "foo", true, "a FOO b");
+		checkMatch(true, "foo", false, "a FOO b");
+		checkMatch(true, "Foo", false, "a fOO b");
+		checkMatch(false, "foo", true, "fo");
+		checkMatch(true, "foo", true, "foo");
+		checkMatch(true, "a\\*b", true, "xa*by");
+		checkMatch(false, "a\\*b", true, "xaXby");
+	}
+
+	public void testWildcardMatch() {
+		checkMatch(true, "f*o", true, "a fxxxo b");
+		checkMatch(true, "f?o", true, "a fxo b");
+		checkMatch(false, "f?o", true, "a fxxo b");
+	}
+
+	public void testNonAsciiCaseInsensitive() {
+		//Like regexp CASE_INSENSITIVE without UNICODE_CASE, only ascii letters are folded.
+		checkMatch(true, "\u00e9t\u00e9", false, "L'\u00e9T\u00e9");
+		checkMatch(false, "\u00e9t\u00e9", false, "L'\u00c9T\u00c9");
+	}
+
+	public void testLineScopeTerms() {
+		checkTerms(true, "foo & bar", true, "bar x foo");
+		checkTerms(false, "foo & bar", true, "foo");
+		checkTerms(true, "f*o & b?r", false, "BAR FxO");
+		checkTerms(true, "a \\& b", true, "a & b");
+		checkTerms(false, "a \\& b", true, "a b");
+		//Without spaces around it, '&' is just a char.
+		checkTerms(true, "a&&b", true, "if (a&&b)");
+		//An empty term while typing doesn't match everything.
+		checkTerms(false, "foo & ", true, "bar");
+		assertEquals(1, new QuickTextQuery("foo & bar", true, Mode.MULTI_TERM).getGroupCount());
+		//Nothing but separators.
+		checkTerms(true, " & ", true, "a & b");
+	}
+
+	public void testNoTermsInWildcardMode() {
+		checkMatch(true, "foo & bar", true, "x foo & bar");
+		checkMatch(false, "foo & bar", true, "bar x foo");
+		checkMatch(true, "a && b", true, "if (a && b)");
+		checkMatch(false, "a && b", true, "a b");
+		assertEquals(1, new QuickTextQuery("a && b", true).getGroupCount());
+		//The backslash is only an escape for the wildcards.
+		checkMatch(true, "a \\& b", true, "a \\& b");
+		checkMatch(false, "a \\& b", true, "a & b");
+	}
+
+	public void testFileScopeGroups() {
+		QuickTextQuery q = new QuickTextQuery("foo && bar & zor", true, Mode.MULTI_TERM);
+		assertEquals(2, q.getGroupCount());
+		assertEquals(0, q.matchGroup("foo", 0));
+		assertEquals(-1, q.matchGroup("foo", 1));
+		assertEquals(-1, q.matchGroup("bar", 0));
+		assertEquals(1, q.matchGroup("zor bar", 0));
+		assertEquals(0, q.matchGroup("zor bar foo", 0));
+		assertEquals(1, q.matchGroup("zor bar foo", 1));
+		assertTrue(q.matchItem("foo"));
+		assertTrue(q.matchItem("bar zor"));
+		assertFalse(q.matchItem("bar"));
+	}
+
+	public void testMultiTermLiterals() {
+		Charset utf8 = Charset.forName("UTF-8");
+		QuickTextQuery q = new QuickTextQuery("foo & barbaz", true, Mode.MULTI_TERM);
+		assertEquals(2, q.getRequiredLiterals().length);
+		assertEquals(6, q.getByteMatcher(utf8).length());
+		q = new QuickTextQuery("foo && barbaz", true, Mode.MULTI_TERM);
+		assertNull(q.getByteMatcher(utf8));
+		assertEquals(6, q.getFileByteMatcher(utf8).length());
+	}
+
+	public void testFindAllTerms() {
+		QuickTextQuery q = new QuickTextQuery("ab & bc && x", true, Mode.MULTI_TERM);
+		List<TextRange> ranges = q.findAll("abc x bc");
+		assertEquals(3, ranges.size());
+		//Overlapping matches of 'ab' and 'bc' are merged.
+		assertEquals(0, ranges.get(0).getOffset());
+		assertEquals(3, ranges.get(0).getLength());
+		assertEquals(4, ranges.get(1).getOffset());
+		assertEquals(6, ranges.get(2).getOffset());
+		assertEquals(4, q.findFirst("zzzzx bc").getOffset());
+	}
+
+	public void testRegexp() {
+		checkRegexp(true, "fo+ba?r", true, "x fooobr");
+		checkRegexp(false, "fo+ba?r", true, "x FOObar");
+		checkRegexp(true, "fo+ba?r", false, "x FOObar");
+		checkRegexp(true, "a & b|c", true, "c");
+		checkRegexp(true, "\\bint\\b", true, "int x;");
+		checkRegexp(false, "\\bint\\b", true, "print");
+		//Not a wildcard pattern.
+		checkRegexp(true, "ab?", true, "a");
+		checkMatch(false, "ab?", true, "a");
+
+		QuickTextQuery q = new QuickTextQuery("foo(", true, Mode.REGEXP);
+		assertNotNull(q.getPatternError());
+		assertTrue(q.isTrivial());
+		assertNull(new QuickTextQuery("foo", true, Mode.REGEXP).getPatternError());
+		assertFalse(new QuickTextQuery("foo", true, Mode.REGEXP).equalsFilter(new QuickTextQuery("foo", true)));
+		assertFalse(new QuickTextQuery("foo", true, Mode.REGEXP).isSubFilter(new QuickTextQuery("foobar", true, Mode.REGEXP)));
+	}
+
+	public void testRegexpLiterals() {
+		checkLiterals("foo.*bar", "foo", "bar");
+		checkLiterals("fooo?", "foo");
+		checkLiterals("fo+", "fo");
+		checkLiterals("ab{2}c", "a", "c");
+		checkLiterals("a(bc)*d[ef]g", "a", "d", "g");
+		checkLiterals("a\\.b\\d+c", "a.b", "c");
+		checkLiterals("\\x41bc\\u0041de\\p{Alpha}f", "bc", "de", "f");
+		checkLiterals("a\\Q.*\\Eb", "a.*b");
+		checkLiterals("[]a]b", "b");
+		checkLiterals("(a|b)c", "c");
+		checkLiterals("ab|c");
+		checkLiterals("(?i)abc");
+		checkLiterals("x\ud83d\ude00?", "x");
+
+		QuickTextQuery q = new QuickTextQuery("foo.*barbaz", true, Mode.REGEXP);
+		assertEquals(2, q.getRequiredLiterals().length);
+		assertEquals(6, q.getByteMatcher(Charset.forName("UTF-8")).length());
+	}
+
+	/**
+	 * Every text that a regexp matches should contain its required literals.
+	 */
+	public void testRegexpLiteralsAreRequired() {
+		Random rnd = new Random(2468);
+		String alphabet = "abab?*+|()[].\\{1}";
+		int checked = 0;
+		for (int i = 0; i < 20000; i++) {
+			String regex = randomString(rnd, alphabet, 1 + rnd.nextInt(8));
+			Pattern pattern;
+			try {
+				pattern = Pattern.compile(regex);
+			} catch (Exception e) {
+				continue;
+			}
+			List<String> literals = RegexLiterals.requiredLiterals(regex);
+			for (int j = 0; j < 20; j++) {
+				String text = randomString(rnd, "ab.", rnd.nextInt(10));
+				if (pattern.matcher(text).find()) {
+					checked++;
+					for (String literal : literals) {
+						assertTrue(regex+" matches '"+text+"' without "+literal, text.contains(literal));
+					}
+				}
+			}
+		}
+		assertTrue(checked > 1000);
+	}
+
+	public void testRegexpStepBudget() {
+		QuickTextQuery q = new QuickTextQuery("(a|aa)+b", true, Mode.REGEXP);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 60; i++) {
+			text.append('a');
+		}
+		text.append("c b");
+		//Without a budget, this would backtrack for ages.
+		long start = System.currentTimeMillis();
+		assertFalse(q.matchItem(text));
+		assertNull(q.findFirst(text));
+		assertTrue(System.currentTimeMillis()-start < 10000);
+		//A well behaved pattern is unaffected.
+		assertTrue(new QuickTextQuery("(a|aa)+c", true, Mode.REGEXP).matchItem(text));
+	}
+
+	public void testFuzzy() {
+		checkFuzzy(true, "quickSearch", true, "  quickSerch();");
+		checkFuzzy(true, "quickSearch", true, "  quikcSearch();");
+		checkFuzzy(false, "quickSearch", true, "  quikcSerch();");
+		checkFuzzy(false, "quickSearch", true, "  QUICKSEARCH");
+		checkFuzzy(true, "quickSearch", false, "  QUICKSERCH");
+		//Too short for typos.
+		checkFuzzy(false, "foo", true, "fo");
+		checkFuzzy(true, "foo", true, "a foo");
+
+		QuickTextQuery q = new QuickTextQuery("quickSearch", true, Mode.FUZZY);
+		assertEquals(0, q.getRequiredLiterals().length);
+		assertFalse(q.isSubFilter(new QuickTextQuery("quickSearchX", true, Mode.FUZZY)));
+		List<TextRange> ranges = q.findAll("x.quickSearch(quikSearch)");
+		assertEquals(2, ranges.size());
+		assertEquals(2, ranges.get(0).getOffset());
+		assertEquals(11, ranges.get(0).getLength());
+		assertEquals(14, ranges.get(1).getOffset());
+		assertEquals(10, ranges.get(1).getLength());
+		assertEquals(1, new QuickTextQuery("foo", true, Mode.FUZZY).getRequiredLiterals().length);
+	}
+
+	/**
+	 * The fuzzy matcher should find a match exactly when some part of the text is within the allowed
+	 * number of edits of the pattern, as computed by the textbook dynamic programming algorithm.
+	 */
+	public void testFuzzyMatcherAgreesWithEditDistance() {
+		Random rnd = new Random(1357);
+		String alphabet = "abcAB\u0141";
+		for (int i = 0; i < 20000; i++) {
+			String pattern = randomString(rnd, alphabet, 1 + rnd.nextInt(8));
+			String text = randomString(rnd, alphabet, rnd.nextInt(16));
+			boolean caseSensitive = rnd.nextBoolean();
+			int maxEdits = rnd.nextInt(pattern.length());
+			FuzzyMatcher matcher = new FuzzyMatcher(pattern, caseSensitive, maxEdits);
+			int from = rnd.nextInt(text.length()+1);
+			boolean expected = bestDistance(pattern, text.substring(from), caseSensitive)<=maxEdits;
+			IRegion match = matcher.find(text, from);
+			assertEquals(matcher+" in "+text+" from "+from, expected, match!=null);
+			if (match!=null) {
+				String found = text.substring(match.getOffset(), match.getOffset()+match.getLength());
+				assertTrue(matcher+" found "+found+" in "+text, match.getOffset()>=from);
+				assertTrue(matcher+" found "+found+" in "+text, distance(pattern, found, caseSensitive)<=maxEdits);
+			}
+			if (from==0) {
+				assertEquals(expected, matcher.matches(text));
+			}
+		}
+	}
+
+	/**
+	 * The smallest edit distance between the pattern and any substring of the text.
+	 */
+	private static int bestDistance(String pattern, String text, boolean caseSensitive) {
+		int best = Integer.MAX_VALUE;
+		for (int start = 0; start <= text.length(); start++) {
+			for (int end = start; end <= text.length(); end++) {
+				best = Math.min(best, distance(pattern, text.substring(start, end), caseSensitive));
+			}
+		}
+		return best;
+	}
+
+	private static int distance(String a, String b, boolean caseSensitive) {
+		if (!caseSensitive) {
+			a = asciiLower(a);
+			b = asciiLower(b);
+		}
+		int[][] d = new int[a.length()+1][b.length()+1];
+		for (int i = 0; i <= a.length(); i++) {
+			for (int j = 0; j <= b.length(); j++) {
+				if (i==0 || j==0) {
+					d[i][j] = i+j;
+				} else {
+					int replace = d[i-1][j-1] + (a.charAt(i-1)==b.charAt(j-1) ? 0 : 1);
+					d[i][j] = Math.min(replace, Math.min(d[i-1][j], d[i][j-1]) + 1);
+				}
+			}
+		}
+		return d[a.length()][b.length()];
+	}
+
+	private static String asciiLower(String s) {
+		StringBuilder buf = new StringBuilder(s);
+		for (int i = 0; i < buf.length(); i++) {
+			char c = buf.charAt(i);
+			if (c>='A' && c<='Z') {
+				buf.setCharAt(i, (char)(c + ('a'-'A')));
+			}
+		}
+		return buf.toString();
+	}
+
+	public void testFindAll() {
+		QuickTextQuery q = new QuickTextQuery("ab", false);
+		List<TextRange> ranges = q.findAll("xxABxxabab");
+		assertEquals(3, ranges.size());
+		assertEquals(2, ranges.get(0).getOffset());
+		assertEquals(6, ranges.get(1).getOffset());
+		assertEquals(8, ranges.get(2).getOffset());
+		assertEquals(2, ranges.get(2).getLength());
+
+		TextRange first = q.findFirst("xxxAb");
+		assertEquals(3, first.getOffset());
+		assertNull(q.findFirst("nothing"));
+	}
+
+	/**
+	 * The literal matcher should find exactly the same matches as a regexp would.
+	 */
+	public void testLiteralMatcherAgreesWithRegexp() {
+		Random rnd = new Random(12345);
+		String alphabet = "abAB\u0141\u0241";
+		for (int i = 0; i < 20000; i++) {
+			String pattern = randomString(rnd, alphabet, 1 + rnd.nextInt(4));
+			String text = randomString(rnd, alphabet, rnd.nextInt(20));
+			boolean caseSensitive = rnd.nextBoolean();
+			LiteralMatcher literal = new LiteralMatcher(pattern, caseSensitive);
+			Matcher regexp = Pattern.compile(Pattern.quote(pattern), caseSensitive?0:Pattern.CASE_INSENSITIVE).matcher(text);
+			int from = rnd.nextInt(text.length()+1);
+			int expected = regexp.find(from) ? regexp.start() : -1;
+			assertEquals(pattern+" in "+text+" from "+from, expected, literal.indexOf(text, from));
+		}
+	}
+
+	public void testSubFilter() {
+		checkSubFilter(true, "foo", true, "foobar", true);
+		checkSubFilter(true, "foo", false, "xFOOx", false);
+		checkSubFilter(false, "foobar", true, "foo", true);
+		checkSubFilter(true, "foo", true, "foo*bar", true);
+		checkSubFilter(true, "bar", true, "foo*bar", true);
+		checkSubFilter(true, "f*r", true, "foo*bar", true);
+		checkSubFilter(true, "f*r", true, "f?r", true);
+		checkSubFilter(true, "f?r", true, "fxr", true);
+		checkSubFilter(false, "fxr", true, "f?r", true);
+		checkSubFilter(false, "f?r", true, "f*r", true);
+		checkSubFilter(true, "a*b*c", true, "abc", true);
+		checkSubFilter(false, "a*b*c", true, "acb", true);
+		checkSubFilter(true, "a\\*b", true, "xa\\*by", true);
+		checkSubFilter(false, "a\\*b", true, "xa*by", true);
+		checkSubFilter(false, "a\\*b", true, "axb", true);
+		//Stricter case
+		checkSubFilter(true, "foo", false, "foo", true);
+		checkSubFilter(true, "foo", false, "xFoo", true);
+		checkSubFilter(false, "foo", true, "foo", false);
+		checkSubFilter(true, "1+2", true, "1+2=3", false);
+		checkSubFilter(false, "foo", true, "Foo", true);
+		//Trivial queries match everything, but results are not collected for them.
+		checkSubFilter(false, "", true, "foo", true);
+	}
+
+	public void testMultiTermSubFilter() {
+		//Adding terms
+		checkTermsSubFilter(true, "foo", "foo & bar");
+		checkTermsSubFilter(true, "foo", "bar & xfoo");
+		checkTermsSubFilter(false, "foo & bar", "foo");
+		checkTermsSubFilter(true, "foo & bar", "foo & barx & zor");
+		checkTermsSubFilter(true, "foo && bar", "foo && barx");
+		checkTermsSubFilter(true, "foo && bar", "foo && bar & zor");
+		checkTermsSubFilter(true, "foo && bar", "foo & bar");
+		checkTermsSubFilter(false, "foo & bar", "foo && bar");
+		//The lines matching 'bar' weren't found.
+		checkTermsSubFilter(false, "foo", "foo && bar");
+		checkTermsSubFilter(false, "foo && bar", "foo");
+		//Plain wildcard patterns are compared with multi term ones by what they match.
+		assertTrue(new QuickTextQuery("foo", true).isSubFilter(new QuickTextQuery("foo & bar", true, Mode.MULTI_TERM)));
+		assertTrue(new QuickTextQuery("foo & bar", true, Mode.MULTI_TERM).isSubFilter(new QuickTextQuery("x foo & bar", true)));
+		assertFalse(new QuickTextQuery("foo & bar", true, Mode.MULTI_TERM).isSubFilter(new QuickTextQuery("foo", true)));
+	}
+
+	/**
+	 * Whenever a query with several terms is a sub filter, the lines reported for any file by the
+	 * more specific query should also be reported by the other.
+	 */
+	public void testMultiTermSubFilterIsSound() {
+		Random rnd = new Random(8765);
+		String alphabet = "aAb*";
+		String[] separators = {" & ", " && "};
+		int subFilters = 0;
+		for (int i = 0; i < 20000; i++) {
+			QuickTextQuery general = new QuickTextQuery(randomTerms(rnd, alphabet, separators, 1 + rnd.nextInt(3)), rnd.nextBoolean(), Mode.MULTI_TERM);
+			QuickTextQuery specific = new QuickTextQuery(randomTerms(rnd, alphabet, separators, 1 + rnd.nextInt(4)), rnd.nextBoolean(), Mode.MULTI_TERM);
+			if (general.isSubFilter(specific)) {
+				subFilters++;
+				for (int j = 0; j < 20; j++) {
+					List<String> file = new ArrayList<String>();
+					for (int k = rnd.nextInt(4); k>0; k--) {
+						file.add(randomString(rnd, "aAbB", rnd.nextInt(8)));
+					}
+					List<String> reported = report(general, file);
+					for (String line : report(specific, file)) {
+						assertTrue(general+" should report '"+line+"' in "+file+" like "+specific, reported.contains(line));
+					}
+				}
+			}
+		}
+		assertTrue(subFilters > 1000);
+	}
+
+	private String randomTerms(Random rnd, String alphabet, String[] separators, int count) {
+		StringBuilder buf = new StringBuilder(randomString(rnd, alphabet, 1 + rnd.nextInt(3)));
+		for (int i = 1; i < count; i++) {
+			buf.append(separators[rnd.nextInt(separators.length)]);
+			buf.append(randomString(rnd, alphabet, 1 + rnd.nextInt(3)));
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * The lines of a file that the searcher reports for a query.
+	 */
+	private List<String> report(QuickTextQuery q, List<String> file) {
+		boolean[] found = new boolean[q.getGroupCount()];
+		List<String> reported = new ArrayList<String>();
+		for (String line : file) {
+			for (int g = q.matchGroup(line, 0); g>=0; g = q.matchGroup(line, g+1)) {
+				found[g] = true;
+			}
+			if (q.matchItem(line)) {
+				reported.add(line);
+			}
+		}
+		for (boolean f : found) {
+			if (!f) {
+				return new ArrayList<String>();
+			}
+		}
+		return reported;
+	}
+
+	/**
+	 * Whenever a query is a sub filter, everything matching the more specific query should also
+	 * match the other.
+	 */
+	public void testSubFilterIsSound() {
+		Random rnd = new Random(4321);
+		String alphabet = "aAb*?";
+		int subFilters = 0;
+		for (int i = 0; i < 20000; i++) {
+			QuickTextQuery general = new QuickTextQuery(randomString(rnd, alphabet, 1 + rnd.nextInt(4)), rnd.nextBoolean());
+			QuickTextQuery specific = new QuickTextQuery(randomString(rnd, alphabet, 1 + rnd.nextInt(6)), rnd.nextBoolean());
+			if (general.isSubFilter(specific)) {
+				subFilters++;
+				for (int j = 0; j < 20; j++) {
+					String text = randomString(rnd, "aAbB", rnd.nextInt(10));
+					if (specific.matchItem(text)) {
+						assertTrue(general+" should match '"+text+"' like "+specific, general.matchItem(text));
+					}
+				}
+			}
+		}
+		assertTrue(subFilters > 1000);
+	}
+
+	private void checkSubFilter(boolean expected, String pattern, boolean caseSensitive, String specific, boolean specificCaseSensitive) {
+		QuickTextQuery q = new QuickTextQuery(pattern, caseSensitive);
+		QuickTextQuery other = new QuickTextQuery(specific, specificCaseSensitive);
+		assertEquals(q+" > "+other, expected, q.isSubFilter(other));
+	}
+
+	private void checkTermsSubFilter(boolean expected, String pattern, String specific) {
+		QuickTextQuery q = new QuickTextQuery(pattern, true, Mode.MULTI_TERM);
+		QuickTextQuery other = new QuickTextQuery(specific, true, Mode.MULTI_TERM);
+		assertEquals(q+" > "+other, expected, q.isSubFilter(other));
+	}
+
+	private String randomString(Random rnd, String alphabet, int len) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < len; i++) {
+			buf.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+		}
+		return buf.toString();
+	}
+
+	private void checkRegexp(boolean expected, String pattern, boolean caseSensitive, String text) {
+		QuickTextQuery q = new QuickTextQuery(pattern, caseSensitive, Mode.REGEXP);
+		assertEquals(q+" on '"+text+"'", expected, q.matchItem(text));
+	}
+
+	private void checkFuzzy(boolean expected, String pattern, boolean caseSensitive, String text) {
+		QuickTextQuery q = new QuickTextQuery(pattern, caseSensitive, Mode.FUZZY);
+		assertEquals(q+" on '"+text+"'", expected, q.matchItem(text));
+	}
+
+	private void checkTerms(boolean expected, String pattern, boolean caseSensitive, String text) {
+		QuickTextQuery q = new QuickTextQuery(pattern, caseSensitive, Mode.MULTI_TERM);
+		assertEquals(q+" on '"+text+"'", expected, q.matchItem(text));
+	}
+
+	private void checkLiterals(String regex, String... expected) {
+		assertEquals(regex, Arrays.asList(expected), RegexLiterals.requiredLiterals(regex));
+	}
+
+	private void checkMatch(boolean expected, String pattern, boolean caseSensitive, String text) {
+		QuickTextQuery q = new QuickTextQuery(pattern, caseSensitive);
+		assertEquals(q+" on '"+text+"'", expected, q.matchItem(text));
+	}
+
+}
@@ -0,0 +1,115 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.springsource.ide.eclipse.commons.quicksearch.core.LineItem;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextSearchRequestor;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextSearcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.ContentCache;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.DefaultPriorityFunction;
+import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
+
+/**
+ * Runs searches on files in the test workspace.
+ */
+public class QuickTextSearcherTest extends TestCase {
+
+	private static final int MAX_LINE_LEN = 1000;
+	private static final long TIMEOUT = 30000;
+
+	private IProject project;
+	private QuickTextSearcher searcher;
+
+	@Override
+	protected void setUp() throws Exception {
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject("quicksearch-test");
+		if (!project.exists()) {
+			project.create(null);
+		}
+		project.open(null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (searcher!=null) {
+			searcher.cancel();
+		}
+		project.delete(true, null);
+	}
+
+	/**
+	 * Each window onto a very long line has its own hit, and all of them should be reported, at their
+	 * true offsets.
+	 */
+	public void testHitsInEveryWindowOfLongLine() throws Exception {
+		StringBuilder text = new StringBuilder("first line\n");
+		List<Integer> expected = new ArrayList<Integer>();
+		//More than a window apart, so no window has two hits. Some are in the overlap of two windows.
+		for (int i = 0; i < 12; i++) {
+			for (int j = 0; j < 1100; j++) {
+				text.append((char)('a' + (j%7)));
+			}
+			expected.add(text.length());
+			text.append("needle");
+		}
+		text.append("\nlast line\n");
+		IFile file = project.getFile("long.txt");
+		file.create(new ByteArrayInputStream(text.toString().getBytes("UTF-8")), true, null);
+		file.setCharset("UTF-8", null);
+
+		List<LineItem> items = search(new QuickTextQuery("needle", true));
+		List<Integer> found = new ArrayList<Integer>();
+		for (LineItem item : items) {
+			assertEquals(file, item.getFile());
+			assertEquals(2, item.getLineNumber());
+			int hit = item.getText().indexOf("needle");
+			assertTrue(item.toString(), hit>=0);
+			found.add(item.getOffset() + hit);
+		}
+		Collections.sort(found);
+		assertEquals(expected, found);
+	}
+
+	/**
+	 * A binary file is skipped after sniffing its start, without reading it whole into the content cache.
+	 */
+	public void testBinaryFileIsNotCached() throws Exception {
+		byte[] data = new byte[64*1024];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i%3==0 ? 0 : 'x');
+		}
+		IFile binary = project.getFile("data.bin1");
+		binary.create(new ByteArrayInputStream(data), true, null);
+		IFile text = project.getFile("text.txt");
+		text.create(new ByteArrayInputStream("xxx\n".getBytes("UTF-8")), true, null);
+
+		List<LineItem> items = search(new QuickTextQuery("xxx", true));
+		assertEquals(1, items.size());
+		assertEquals(text, items.get(0).getFile());
+		ContentCache cache = QuickSearchActivator.getDefault().getContentCache();
+		if (cache!=null) {
+			assertNull(cache.get(binary.getFullPath(), binary.getModificationStamp()));
+			assertNotNull(cache.get(text.getFullPath(), text.getModificationStamp()));
+		}
+	}
+
+	private List<LineItem> search(QuickTextQuery query) throws InterruptedException {
+		searcher = new QuickTextSearcher(query, new DefaultPriorityFunction(), MAX_LINE_LEN, new QuickTextSearchRequestor() {});
+		long start = System.currentTimeMillis();
+		while (!searcher.isDone()) {
+			assertTrue("Search timed out", System.currentTimeMillis()-start < TIMEOUT);
+			Thread.sleep(20);
+		}
+		return searcher.getMatches().toList();
+	}
+
+}
@@ -0,0 +1,138 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IResource;
+import org.springsource.ide.eclipse.commons.quicksearch.core.LineItem;
+import org.springsource.ide.eclipse.commons.quicksearch.core.MatchStore;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.core.ResultRanker;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PriorityFunction;
+
+public class ResultRankerTest extends TestCase {
+
+	private static final PriorityFunction DEFAULT_PRIORITY = new PriorityFunction() {
+		@Override
+		public double priority(IResource r) {
+			return PRIORITY_DEFAULT;
+		}
+	};
+
+	private final MockFile file = new MockFile("/p/src/A.java");
+
+	public void testScore() throws Exception {
+		ResultRanker ranker = new ResultRanker(DEFAULT_PRIORITY, null);
+		QuickTextQuery query = new QuickTextQuery("foo", false);
+
+		//Exact case beats other case.
+		assertTrue(ranker.score(query, file, "a foo b") > ranker.score(query, file, "a FOO b"));
+		//Whole word beats part of a word.
+		assertTrue(ranker.score(query, file, "a foo b") > ranker.score(query, file, "a food b"));
+		//Earlier in the line beats later, not counting indentation.
+		assertTrue(ranker.score(query, file, "foo = 1; ") > ranker.score(query, file, "int x = 0; int y = 1; foo = 1;"));
+		assertEquals(ranker.score(query, file, "foo = 1;"), ranker.score(query, file, "\t\tfoo = 1;"));
+	}
+
+	public void testFilePriority() throws Exception {
+		final MockFile interesting = new MockFile("/p/src/B.java");
+		ResultRanker ranker = new ResultRanker(new PriorityFunction() {
+			@Override
+			public double priority(IResource r) {
+				return r.equals(interesting) ? PRIORITY_INTERESTING : PRIORITY_DEFAULT;
+			}
+		}, null);
+		QuickTextQuery query = new QuickTextQuery("foo", false);
+		assertTrue(ranker.score(query, interesting, "a FOO b") > ranker.score(query, file, "a foo b"));
+	}
+
+	public void testProximity() throws Exception {
+		ResultRanker ranker = new ResultRanker(DEFAULT_PRIORITY, file);
+		QuickTextQuery query = new QuickTextQuery("foo", false);
+		double same = ranker.score(query, file, "foo");
+		double folder = ranker.score(query, new MockFile("/p/src/B.java"), "foo");
+		double project = ranker.score(query, new MockFile("/p/test/B.java"), "foo");
+		double other = ranker.score(query, new MockFile("/q/src/A.java"), "foo");
+		assertTrue(same > folder);
+		assertTrue(folder > project);
+		assertTrue(project > other);
+	}
+
+	public void testKeepsBest() throws Exception {
+		ResultRanker ranker = new ResultRanker(DEFAULT_PRIORITY, null);
+		Random rnd = new Random(7);
+		int k = 50;
+		List<Double> all = new ArrayList<Double>();
+		for (int i = 0; i < 1000; i++) {
+			double score = rnd.nextInt(200);
+			all.add(score);
+			if (ranker.size() < k) {
+				ranker.add(new LineItem(file, Double.toString(score), i, 0), score);
+			} else if (ranker.beatsWorst(score)) {
+				ranker.add(new LineItem(file, Double.toString(score), i, 0), score);
+				assertNotNull(ranker.removeWorst());
+			}
+			assertTrue(ranker.size() <= k);
+		}
+		Collections.sort(all, Collections.reverseOrder());
+		LineItem[] ranked = ranker.getRanked();
+		assertEquals(k, ranked.length);
+		for (int i = 0; i < k; i++) {
+			assertEquals(all.get(i), Double.valueOf(ranked[i].getText()));
+		}
+	}
+
+	public void testRescoreKeepsScoreOfTruncatedLines() throws Exception {
+		ResultRanker ranker = new ResultRanker(DEFAULT_PRIORITY, null);
+		QuickTextQuery query = new QuickTextQuery("foo*bar", false);
+		StringBuilder longLine = new StringBuilder("foo ");
+		for (int i = 0; i < 300; i++) {
+			longLine.append('-');
+		}
+		longLine.append(" bar");
+		MatchStore matches = new MatchStore();
+		double longScore = ranker.score(query, file, longLine);
+		LineItem truncated = matches.add(file, longLine, 1, 0, 0);
+		matches.setScore(truncated, longScore);
+		LineItem whole = matches.add(file, "FOO_BAR", 2, 400, 0);
+		matches.setScore(whole, ranker.score(query, file, "FOO_BAR"));
+		assertTrue(matches.isTruncated(truncated));
+		//The snippet doesn't have the whole match, so it would score lower than the line did.
+		assertTrue(ranker.score(query, file, truncated.getText()) < ranker.score(query, file, "FOO_BAR"));
+		assertTrue(longScore > ranker.score(query, file, "FOO_BAR"));
+
+		ranker.rescore(query, matches);
+		LineItem[] ranked = ranker.getRanked();
+		assertEquals(2, ranked.length);
+		assertEquals(1, ranked[0].getLineNumber());
+		assertEquals(longScore, matches.getScore(truncated));
+
+		//Whole lines are scored again for a new query.
+		QuickTextQuery narrower = new QuickTextQuery("foo_bar", false);
+		ranker.rescore(narrower, matches);
+		assertEquals(ranker.score(narrower, file, "FOO_BAR"), matches.getScore(whole));
+		assertEquals(longScore, matches.getScore(truncated));
+	}
+
+	public void testTiesKeepArrivalOrder() throws Exception {
+		ResultRanker ranker = new ResultRanker(DEFAULT_PRIORITY, null);
+		for (int i = 0; i < 10; i++) {
+			ranker.add(new LineItem(file, "line "+i, i, 0), i%2);
+		}
+		LineItem[] ranked = ranker.getRanked();
+		int[] expected = { 1, 3, 5, 7, 9, 0, 2, 4, 6, 8 };
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], ranked[i].getLineNumber());
+		}
+		//The worst is the last one with the lowest score.
+		assertEquals(8, ranker.removeWorst().getLineNumber());
+		ranker.clear();
+		assertEquals(0, ranker.getRanked().length);
+		assertNull(ranker.removeWorst());
+	}
+
+}
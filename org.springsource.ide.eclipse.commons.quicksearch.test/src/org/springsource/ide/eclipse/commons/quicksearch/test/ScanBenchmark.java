@@ -0,0 +1,139 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.ByteLiteralMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.LiteralMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.util.ByteLineScanner;
+import org.springsource.ide.eclipse.commons.quicksearch.util.LineReader;
+
+/**
+ * Compares the throughput of the different ways quick search can read a large file. This is not a
+ * test and not part of the test suite. Run it as a plain Java application. Optional arguments are the
+ * file size in MB (default 64) and the number of rounds (default 10).
+ */
+public class ScanBenchmark {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String NEEDLE = "quickSearchNeedle";
+	private static final int MAX_LINE_LEN = 1000;
+
+	private interface Scan {
+		int run(File file) throws IOException;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		File file = File.createTempFile("scan-benchmark", ".txt");
+		try {
+			generate(file, sizeMb * 1024L * 1024L);
+			System.out.println("File: "+file.length()/(1024*1024)+" MB, rounds: "+rounds);
+			measure("LineReader + literal", file, rounds, new Scan() {
+				public int run(File file) throws IOException {
+					return lineReader(file);
+				}
+			});
+			measure("ByteLineScanner (stream)", file, rounds, new Scan() {
+				public int run(File file) throws IOException {
+					return byteScan(new ByteLineScanner(new FileInputStream(file), UTF8, MAX_LINE_LEN));
+				}
+			});
+			measure("ByteLineScanner (mapped)", file, rounds, new Scan() {
+				public int run(File file) throws IOException {
+					try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+						ByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+						return byteScan(new ByteLineScanner(mapped, UTF8, MAX_LINE_LEN));
+					}
+				}
+			});
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static int lineReader(File file) throws IOException {
+		LiteralMatcher matcher = new LiteralMatcher(NEEDLE, false);
+		int found = 0;
+		LineReader reader = new LineReader(new InputStreamReader(new FileInputStream(file), UTF8), MAX_LINE_LEN);
+		try {
+			CharSequence line;
+			while ((line = reader.nextLine()) != null) {
+				if (matcher.matches(line)) {
+					found++;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return found;
+	}
+
+	private static int byteScan(ByteLineScanner scanner) throws IOException {
+		ByteLiteralMatcher matcher = ByteLiteralMatcher.create(NEEDLE, false, UTF8);
+		NullProgressMonitor mon = new NullProgressMonitor();
+		int found = 0;
+		try {
+			while (scanner.find(matcher, mon)) {
+				scanner.getLine();
+				found++;
+			}
+		} finally {
+			scanner.close();
+		}
+		return found;
+	}
+
+	private static void measure(String name, File file, int rounds, Scan scan) throws IOException {
+		//Warm up, and make sure the file is in the OS cache so we measure reading rather than disk.
+		int found = scan.run(file);
+		scan.run(file);
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			scan.run(file);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double mb = file.length() * (double)rounds / (1024 * 1024);
+		System.out.println(String.format("%-28s %8.1f MB/s  (%d matching lines)", name, mb / seconds, found));
+	}
+
+	private static void generate(File file, long size) throws IOException {
+		Random rnd = new Random(42);
+		String[] words = { "public", "static", "void", "return", "String", "int", "final", "class",
+				"import", "org.eclipse.core", "ßüö", "€", "{", "}", "(", ")", ";", "=", "+" };
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try {
+			long written = 0;
+			StringBuilder line = new StringBuilder();
+			while (written < size) {
+				line.setLength(0);
+				int len = rnd.nextInt(12);
+				for (int i = 0; i < len; i++) {
+					line.append(words[rnd.nextInt(words.length)]).append(' ');
+				}
+				if (rnd.nextInt(1000) == 0) {
+					line.append(NEEDLE);
+				}
+				line.append('\n');
+				byte[] bytes = line.toString().getBytes(UTF8);
+				out.write(bytes);
+				written += bytes.length;
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.TrigramIndex;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.TrigramIndex.Candidates;
+
+public class TrigramIndexTest extends TestCase {
+
+	private final MockFile a = new MockFile("/p/a.txt");
+	private final MockFile b = new MockFile("/p/b.txt");
+	private final MockFile c = new MockFile("/q/c.txt");
+
+	public void testCandidates() throws Exception {
+		TrigramIndex index = new TrigramIndex(null);
+		index(index, a, "Hello world");
+		index(index, b, "goodbye", "world");
+		assertTrue(index.isIndexed(a));
+		assertFalse(index.isIndexed(c));
+
+		Candidates hello = index.candidates(new QuickTextQuery("hello", true));
+		assertTrue(hello.mayContain(a));
+		assertFalse(hello.mayContain(b));
+		//Nothing is known about files that weren't indexed.
+		assertTrue(hello.mayContain(c));
+
+		Candidates world = index.candidates(new QuickTextQuery("WORLD", false));
+		assertTrue(world.mayContain(a));
+		assertTrue(world.mayContain(b));
+		//Trigrams don't span lines.
+		assertFalse(index.candidates(new QuickTextQuery("byeworld", true)).mayContain(b));
+		assertFalse(index.candidates(new QuickTextQuery("xyz", true)).mayContain(a));
+		//Too short to narrow down the search.
+		assertNull(index.candidates(new QuickTextQuery("he", true)));
+	}
+
+	public void testChangedFileIsUnknown() throws Exception {
+		TrigramIndex index = new TrigramIndex(null);
+		MockFile file = new MockFile("/p/changed.txt");
+		index(index, file, "hello");
+		Candidates before = index.candidates(new QuickTextQuery("goodbye", true));
+		assertFalse(before.mayContain(file));
+		file.setModificationStamp(2);
+		assertFalse(index.isIndexed(file));
+		assertTrue(before.mayContain(file));
+	}
+
+	public void testReindex() throws Exception {
+		TrigramIndex index = new TrigramIndex(null);
+		MockFile file = new MockFile("/p/changed.txt");
+		index(index, file, "hello");
+		Candidates before = index.candidates(new QuickTextQuery("hello", true));
+		file.setModificationStamp(2);
+		index(index, file, "goodbye");
+		assertEquals(1, index.getFileCount());
+		assertEquals(1, index.getDeadCount());
+		assertFalse(index.candidates(new QuickTextQuery("hello", true)).mayContain(file));
+		assertTrue(index.candidates(new QuickTextQuery("goodbye", true)).mayContain(file));
+		//Indexed after the candidates were computed.
+		assertTrue(before.mayContain(file));
+	}
+
+	public void testRemove() throws Exception {
+		TrigramIndex index = new TrigramIndex(null);
+		index(index, a, "hello");
+		index(index, b, "hello");
+		index(index, c, "hello");
+		index.remove(a.getFullPath().toString());
+		assertFalse(index.isIndexed(a));
+		assertTrue(index.candidates(new QuickTextQuery("hello", true)).mayContain(a));
+		index.removed(new Path("/p"));
+		assertFalse(index.isIndexed(b));
+		assertTrue(index.isIndexed(c));
+		assertEquals(1, index.getFileCount());
+		assertEquals(2, index.getDeadCount());
+	}
+
+	public void testDeadIdsArePurged() throws Exception {
+		TrigramIndex index = new TrigramIndex(null);
+		MockFile[] files = new MockFile[1500];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = new MockFile("/p/f"+i+".txt");
+			index(index, files[i], "file "+i, i%2==0 ? "even" : "odd");
+		}
+		Candidates even = index.candidates(new QuickTextQuery("even", true));
+		//Twice, so the dead ids outnumber the live ones.
+		for (int stamp = 2; stamp <= 3; stamp++) {
+			for (int i = 0; i < files.length; i++) {
+				files[i].setModificationStamp(stamp);
+				index(index, files[i], "file "+i, i%2==0 ? "odd" : "even");
+			}
+		}
+		assertEquals(files.length, index.getFileCount());
+		assertTrue(index.getDeadCount() < files.length);
+		Candidates odd = index.candidates(new QuickTextQuery("odd", true));
+		Candidates reindexedEven = index.candidates(new QuickTextQuery("even", true));
+		for (int i = 0; i < files.length; i++) {
+			assertEquals(i%2==0, odd.mayContain(files[i]));
+			assertEquals(i%2==1, reindexedEven.mayContain(files[i]));
+			//These were computed before the reindexing, so know nothing about the new versions.
+			assertTrue(even.mayContain(files[i]));
+		}
+	}
+
+	public void testSaveAndLoad() throws Exception {
+		File store = File.createTempFile("trigrams", ".idx");
+		store.delete();
+		try {
+			TrigramIndex index = new TrigramIndex(store);
+			index(index, a, "hello");
+			index(index, b, "world");
+			index(index, c, "hello world");
+			b.setModificationStamp(2);
+			index(index, b, "goodbye");
+			index.remove(c.getFullPath().toString());
+			index.save();
+
+			TrigramIndex loaded = new TrigramIndex(store);
+			assertEquals(2, loaded.getFileCount());
+			assertEquals(0, loaded.getDeadCount());
+			assertTrue(loaded.isIndexed(a));
+			assertTrue(loaded.isIndexed(b));
+			assertFalse(loaded.isIndexed(c));
+			assertTrue(loaded.candidates(new QuickTextQuery("hello", true)).mayContain(a));
+			assertFalse(loaded.candidates(new QuickTextQuery("hello", true)).mayContain(b));
+			assertTrue(loaded.candidates(new QuickTextQuery("goodbye", true)).mayContain(b));
+			assertFalse(loaded.candidates(new QuickTextQuery("world", true)).mayContain(a));
+			assertFalse(loaded.candidates(new QuickTextQuery("world", true)).mayContain(b));
+		} finally {
+			store.delete();
+		}
+	}
+
+	private static void index(TrigramIndex index, MockFile file, String... lines) {
+		TrigramIndex.Indexer indexer = index.startFile(file);
+		for (String line : lines) {
+			indexer.addLine(line);
+		}
+		indexer.commit();
+	}
+
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Sits between a {@link QuickTextSearcher} and a requestor, and passes the results on in batches. Results are
+ * delivered from a separate job, once {@link #BATCH_SIZE} of them are waiting or {@link #FLUSH_DELAY} ms after
+ * the first one arrived, whichever comes first. Consecutive results of the same kind are delivered with a single
+ * call to {@link QuickTextSearchRequestor#addAll(List)}, {@link QuickTextSearchRequestor#updateAll(List)} or
+ * {@link QuickTextSearchRequestor#revokeAll(List)}. The order of the results is preserved.
+ * <p>
+ * If the requestor falls behind, so that more than {@link #MAX_PENDING} results are waiting, then the threads
+ * reporting results are blocked until it catches up.
+ * <p>
+ * {@link #clear()} drops results that were not delivered yet, and is passed on right away.
+ */
+public class BatchingRequestor extends QuickTextSearchRequestor {
+
+	public static final int BATCH_SIZE = 256;
+	public static final long FLUSH_DELAY = 50;
+	public static final int MAX_PENDING = 8*BATCH_SIZE;
+
+	private enum Kind {
+		ADD, UPDATE, REVOKE
+	}
+
+	private final QuickTextSearchRequestor requestor;
+
+	/**
+	 * Protects the pending results.
+	 */
+	private final Object lock = new Object();
+	private List<Kind> pendingKinds = new ArrayList<Kind>();
+	private List<LineItem> pendingItems = new ArrayList<LineItem>();
+	private boolean disposed = false;
+
+	/**
+	 * Held while results are passed on to the requestor, so that batches are delivered one at a time, and
+	 * in order.
+	 */
+	private final Object deliveryLock = new Object();
+
+	private final Job flushJob = new Job("Deliver quick search results") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			flush();
+			synchronized (lock) {
+				if (!pendingItems.isEmpty() && !disposed) {
+					schedule(pendingItems.size()>=BATCH_SIZE ? 0 : FLUSH_DELAY);
+				}
+			}
+			return Status.OK_STATUS;
+		}
+	};
+
+	public BatchingRequestor(QuickTextSearchRequestor requestor) {
+		this.requestor = requestor;
+		flushJob.setSystem(true);
+	}
+
+	@Override
+	public void add(LineItem match) {
+		enqueue(Kind.ADD, match);
+	}
+
+	@Override
+	public void update(LineItem match) {
+		enqueue(Kind.UPDATE, match);
+	}
+
+	@Override
+	public void revoke(LineItem line) {
+		enqueue(Kind.REVOKE, line);
+	}
+
+	@Override
+	public void clear() {
+		synchronized (deliveryLock) {
+			synchronized (lock) {
+				pendingKinds.clear();
+				pendingItems.clear();
+				lock.notifyAll();
+			}
+			requestor.clear();
+		}
+	}
+
+	/**
+	 * Drop any results that were not delivered yet, and all results that come after. Threads waiting
+	 * for the requestor to catch up are released.
+	 */
+	public void dispose() {
+		synchronized (lock) {
+			disposed = true;
+			pendingKinds.clear();
+			pendingItems.clear();
+			lock.notifyAll();
+		}
+		flushJob.cancel();
+	}
+
+	private void enqueue(Kind kind, LineItem item) {
+		synchronized (lock) {
+			while (pendingItems.size()>=MAX_PENDING && !disposed) {
+				//Requestor is falling behind. Wait for it to catch up.
+				flushJob.wakeUp();
+				try {
+					lock.wait(FLUSH_DELAY);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			if (disposed) {
+				return;
+			}
+			pendingKinds.add(kind);
+			pendingItems.add(item);
+			int pending = pendingItems.size();
+			if (pending==1) {
+				flushJob.schedule(FLUSH_DELAY);
+			} else if (pending==BATCH_SIZE) {
+				flushJob.wakeUp();
+			}
+		}
+	}
+
+	/**
+	 * Pass all pending results on to the requestor now, from the calling thread.
+	 */
+	public void flush() {
+		synchronized (deliveryLock) {
+			List<Kind> kinds;
+			List<LineItem> items;
+			synchronized (lock) {
+				if (pendingItems.isEmpty()) {
+					return;
+				}
+				kinds = pendingKinds;
+				items = pendingItems;
+				pendingKinds = new ArrayList<Kind>();
+				pendingItems = new ArrayList<LineItem>();
+				lock.notifyAll();
+			}
+			int start = 0;
+			while (start<items.size()) {
+				Kind kind = kinds.get(start);
+				int end = start + 1;
+				while (end<items.size() && kinds.get(end)==kind) {
+					end++;
+				}
+				List<LineItem> batch = items.subList(start, end);
+				switch (kind) {
+				case ADD:
+					requestor.addAll(batch);
+					break;
+				case UPDATE:
+					requestor.updateAll(batch);
+					break;
+				case REVOKE:
+					requestor.revokeAll(batch);
+					break;
+				}
+				start = end;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,613 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.eclipse.core.resources.IFile;
+
+/**
+ * A compact collection of matches. Rather than keeping {@link LineItem} objects, the matches are stored
+ * in parallel arrays (file id, line number, offset), with the text of all matches in one shared byte array
+ * and the files in an interned table. Text that only has Latin-1 chars takes one byte per char. LineItems
+ * are only created when a match is asked for, e.g. when a virtual table shows it.
+ * <p>
+ * Only a window of at most {@link #MAX_SNIPPET_LENGTH} chars around the match is kept from long lines. The
+ * offset of a stored item is that of the start of the window, so offsets within the text of the item
+ * still translate to the right offsets in the file.
+ * <p>
+ * Like a set of LineItems, a store holds at most one match per line of a file. The exception are windows
+ * onto very long lines (see {@link #add(IFile, CharSequence, int, int, int, boolean)}), which get an entry
+ * each, told apart by their offset. Matches keep the order in
+ * which they were added. Adding, removing and looking up a match, by line or by position, take O(log n) time
+ * at most, so the store can back a virtual table directly. {@link #takeFirstChange()} tells such a table which
+ * rows need to be redrawn.
+ * <p>
+ * A ranked search can keep the score of each match with it (see {@link ResultRanker}), so the score
+ * survives copies of the store even when the text of the match is only part of its line.
+ * <p>
+ * All methods are thread safe.
+ */
+public class MatchStore implements Iterable<LineItem> {
+
+	/**
+	 * Lines longer than this are cut down to a window around the match.
+	 */
+	public static final int MAX_SNIPPET_LENGTH = 200;
+
+	/**
+	 * Part of the window shown before the start of the match.
+	 */
+	private static final int SNIPPET_LEAD = MAX_SNIPPET_LENGTH/4;
+
+	private static final int DEAD = -1;
+
+	/**
+	 * Column of a row that is the only one for its line.
+	 */
+	private static final int WHOLE_LINE = -1;
+
+	//Flags of a row.
+	private static final byte WIDE = 1; //Text has two bytes per char.
+	private static final byte TRUNCATED = 2; //Text is only part of the line.
+
+	//Interned files.
+	private final List<IFile> files = new ArrayList<IFile>();
+	private final Map<IFile, Integer> fileIds = new HashMap<IFile, Integer>();
+
+	//Rows, in the order they were added. Removed rows have fileId DEAD until the store is compacted.
+	private int rows = 0;
+	private int dead = 0;
+
+	/**
+	 * Fenwick tree counting the live rows, to find the row at a given position in O(log n). Entry i
+	 * covers rows [i - lowestOneBit(i), i).
+	 */
+	private int[] live = new int[17];
+
+	/**
+	 * Position of the first match that was added or removed since the last call to {@link #takeFirstChange()}.
+	 */
+	private int firstChange = Integer.MAX_VALUE;
+	private int[] fileId = new int[16];
+	private int[] lineNumber = new int[16];
+	private int[] offset = new int[16];
+	private int[] textStart = new int[16];
+	private int[] textLength = new int[16]; //In chars.
+	private int[] column = new int[16]; //WHOLE_LINE, or the offset of a window onto a long line.
+	private double[] score = new double[16];
+	private byte[] flags = new byte[16];
+
+	//Text of all rows.
+	private byte[] text = new byte[1024];
+	private int textUsed = 0;
+
+	/**
+	 * Open addressing hash table from (fileId, lineNumber, column) to row+1. 0 is an empty slot, and
+	 * removed rows leave DEAD in their slot.
+	 */
+	private int[] table = new int[32];
+
+	public MatchStore() {
+	}
+
+	/**
+	 * Add a match, unless there already is one for the same line.
+	 *
+	 * @param matchStart Position of the match in the line, used to pick the window to keep from long lines.
+	 * @return A LineItem for the stored match, or null if the store already had a match for the line.
+	 */
+	public LineItem add(IFile file, CharSequence line, int lineNumber, int lineOffset, int matchStart) {
+		return add(file, line, lineNumber, lineOffset, matchStart, false);
+	}
+
+	/**
+	 * Add a match, unless there already is one for the same line.
+	 * <p>
+	 * A very long line is searched in windows, which may each have a match. So when the text is a window,
+	 * the match is only rejected if there already is one at the same offset. The windows of a line share
+	 * its line number, their items can be told apart by their offset.
+	 *
+	 * @param matchStart Position of the match in the line, used to pick the window to keep from long lines.
+	 * @param partial Whether the given text is only part of the line, like a window onto a very long
+	 *    line. The item is then treated as truncated, even when its text is kept whole.
+	 * @return A LineItem for the stored match, or null if the store already had a match for the line.
+	 */
+	public synchronized LineItem add(IFile file, CharSequence line, int lineNumber, int lineOffset, int matchStart, boolean partial) {
+		int id = intern(file);
+		int length = line.length();
+		int start = 0;
+		int end = length;
+		if (length>MAX_SNIPPET_LENGTH) {
+			start = Math.max(0, Math.min(matchStart - SNIPPET_LEAD, length - MAX_SNIPPET_LENGTH));
+			end = start + MAX_SNIPPET_LENGTH;
+		}
+		int col = partial ? lineOffset + start : WHOLE_LINE;
+		if (find(id, lineNumber, col)>=0) {
+			return null;
+		}
+		int row = addRow(id, lineNumber, lineOffset + start, col);
+		addText(row, line, start, end);
+		if (partial || end - start < length) {
+			flags[row] |= TRUNCATED;
+		}
+		return item(row);
+	}
+
+	/**
+	 * Add a match, unless there already is one for the same line. The text of the item is kept as is,
+	 * it is assumed to be cut down already if needed.
+	 *
+	 * @return true if the item was added.
+	 */
+	public synchronized boolean add(LineItem item) {
+		int id = intern(item.getFile());
+		if (find(id, item.getLineNumber(), WHOLE_LINE)>=0) {
+			return false;
+		}
+		String line = item.getText();
+		int row = addRow(id, item.getLineNumber(), item.getOffset(), WHOLE_LINE);
+		addText(row, line, 0, line.length());
+		return true;
+	}
+
+	/**
+	 * Add the matches of another store, in order, skipping those for lines (or windows) this store
+	 * already has a match for. Unlike adding their LineItems one by one, this keeps whether the text
+	 * of a match is only part of its line.
+	 *
+	 * @return LineItems for the matches that were added.
+	 */
+	public List<LineItem> addAll(MatchStore other) {
+		//Take a snapshot first, so we never hold both locks.
+		MatchStore source = other.copy();
+		synchronized (this) {
+			List<LineItem> added = new ArrayList<LineItem>(source.rows);
+			for (int r = 0; r < source.rows; r++) {
+				int id = intern(source.files.get(source.fileId[r]));
+				int line = source.lineNumber[r];
+				int col = source.column[r];
+				if (find(id, line, col)<0) {
+					int row = addRow(id, line, source.offset[r], col);
+					String text = source.text(r);
+					addText(row, text, 0, text.length());
+					flags[row] |= source.flags[r] & TRUNCATED;
+					score[row] = source.score[r];
+					added.add(item(row));
+				}
+			}
+			return added;
+		}
+	}
+
+	public synchronized boolean contains(LineItem item) {
+		Integer id = fileIds.get(item.getFile());
+		return id!=null && findSlot(id, item)>=0;
+	}
+
+	/**
+	 * Remove the match on the same line as a given item.
+	 *
+	 * @return true if there was such a match.
+	 */
+	public synchronized boolean remove(LineItem item) {
+		Integer id = fileIds.get(item.getFile());
+		if (id==null) {
+			return false;
+		}
+		int slot = findSlot(id, item);
+		if (slot<0) {
+			return false;
+		}
+		kill(slot);
+		return true;
+	}
+
+	/**
+	 * Remove all matches in the given files.
+	 */
+	public synchronized void removeFiles(Collection<IFile> toRemove) {
+		for (IFile file : toRemove) {
+			Integer id = fileIds.get(file);
+			if (id!=null) {
+				//Collect the lines first, since removing may compact the rows.
+				int[] lines = new int[rows];
+				int[] columns = new int[rows];
+				int count = 0;
+				for (int row = 0; row < rows; row++) {
+					if (fileId[row]==id) {
+						lines[count] = lineNumber[row];
+						columns[count++] = column[row];
+					}
+				}
+				for (int i = 0; i < count; i++) {
+					kill(findSlot(id, lines[i], columns[i]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if the text of the stored match for the given item's line is only part of the line.
+	 */
+	public synchronized boolean isTruncated(LineItem item) {
+		Integer id = fileIds.get(item.getFile());
+		if (id!=null) {
+			int slot = findSlot(id, item);
+			if (slot>=0) {
+				return (flags[table[slot]-1] & TRUNCATED)!=0;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Set the score of the stored match for an item's line, if there is one.
+	 */
+	public synchronized void setScore(LineItem item, double score) {
+		Integer id = fileIds.get(item.getFile());
+		if (id!=null) {
+			int slot = findSlot(id, item);
+			if (slot>=0) {
+				this.score[table[slot]-1] = score;
+			}
+		}
+	}
+
+	/**
+	 * @return The score of the stored match for an item's line, or 0 if it has none.
+	 */
+	public synchronized double getScore(LineItem item) {
+		Integer id = fileIds.get(item.getFile());
+		if (id!=null) {
+			int slot = findSlot(id, item);
+			if (slot>=0) {
+				return score[table[slot]-1];
+			}
+		}
+		return 0;
+	}
+
+	public synchronized int size() {
+		return rows - dead;
+	}
+
+	/**
+	 * @return The match at a given position, in the order they were added.
+	 */
+	public synchronized LineItem get(int index) {
+		if (index<0 || index>=size()) {
+			throw new IndexOutOfBoundsException(""+index);
+		}
+		return item(rowAt(index));
+	}
+
+	/**
+	 * @return The position of the first match that was added or removed since the last call, or -1 if
+	 *    nothing changed. Matches before that position are unchanged. Those after it may have moved.
+	 */
+	public synchronized int takeFirstChange() {
+		int change = firstChange;
+		firstChange = Integer.MAX_VALUE;
+		return change==Integer.MAX_VALUE ? -1 : change;
+	}
+
+	public synchronized void clear() {
+		files.clear();
+		fileIds.clear();
+		rows = 0;
+		dead = 0;
+		textUsed = 0;
+		Arrays.fill(table, 0);
+		Arrays.fill(live, 0);
+		firstChange = 0;
+	}
+
+	public synchronized MatchStore copy() {
+		compact();
+		MatchStore copy = new MatchStore();
+		copy.files.addAll(files);
+		copy.fileIds.putAll(fileIds);
+		copy.rows = rows;
+		copy.fileId = Arrays.copyOf(fileId, rows);
+		copy.lineNumber = Arrays.copyOf(lineNumber, rows);
+		copy.offset = Arrays.copyOf(offset, rows);
+		copy.textStart = Arrays.copyOf(textStart, rows);
+		copy.textLength = Arrays.copyOf(textLength, rows);
+		copy.column = Arrays.copyOf(column, rows);
+		copy.score = Arrays.copyOf(score, rows);
+		copy.flags = Arrays.copyOf(flags, rows);
+		copy.text = Arrays.copyOf(text, textUsed);
+		copy.textUsed = textUsed;
+		copy.table = table.clone();
+		copy.live = Arrays.copyOf(live, rows+1);
+		return copy;
+	}
+
+	/**
+	 * @return The matches as LineItems, in the order they were added.
+	 */
+	public synchronized List<LineItem> toList() {
+		List<LineItem> items = new ArrayList<LineItem>(size());
+		for (int row = 0; row < rows; row++) {
+			if (fileId[row]!=DEAD) {
+				items.add(item(row));
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Iterates the matches as LineItems. The iterator supports remove. Other threads should not change
+	 * the store while it is being iterated.
+	 */
+	@Override
+	public Iterator<LineItem> iterator() {
+		return new Iterator<LineItem>() {
+			private int next = 0;
+			private LineItem last = null;
+
+			@Override
+			public boolean hasNext() {
+				return next<size();
+			}
+
+			@Override
+			public LineItem next() {
+				synchronized (MatchStore.this) {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return last = get(next++);
+				}
+			}
+
+			@Override
+			public void remove() {
+				if (last==null) {
+					throw new IllegalStateException();
+				}
+				if (MatchStore.this.remove(last)) {
+					next--;
+				}
+				last = null;
+			}
+		};
+	}
+
+	private LineItem item(int row) {
+		return new LineItem(files.get(fileId[row]), text(row), lineNumber[row], offset[row]);
+	}
+
+	private String text(int row) {
+		int start = textStart[row];
+		int length = textLength[row];
+		if ((flags[row] & WIDE)==0) {
+			return new String(text, start, length, StandardCharsets.ISO_8859_1);
+		}
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) (((text[start+2*i] & 0xFF)<<8) | (text[start+2*i+1] & 0xFF));
+		}
+		return new String(chars);
+	}
+
+	private void addText(int row, CharSequence line, int start, int end) {
+		boolean wide = false;
+		for (int i = start; i < end && !wide; i++) {
+			wide = line.charAt(i)>0xFF;
+		}
+		int bytes = wide ? 2*(end - start) : end - start;
+		if (textUsed+bytes>text.length) {
+			text = Arrays.copyOf(text, Math.max(grow(text.length), textUsed+bytes));
+		}
+		byte[] text = this.text;
+		int pos = textUsed;
+		if (wide) {
+			for (int i = start; i < end; i++) {
+				char c = line.charAt(i);
+				text[pos++] = (byte) (c>>8);
+				text[pos++] = (byte) c;
+			}
+			flags[row] |= WIDE;
+		} else {
+			for (int i = start; i < end; i++) {
+				text[pos++] = (byte) line.charAt(i);
+			}
+		}
+		textStart[row] = textUsed;
+		textLength[row] = end - start;
+		textUsed = pos;
+	}
+
+	private static int grow(int capacity) {
+		return Math.max(16, capacity + (capacity>>1));
+	}
+
+	private int intern(IFile file) {
+		Integer id = fileIds.get(file);
+		if (id==null) {
+			id = files.size();
+			files.add(file);
+			fileIds.put(file, id);
+		}
+		return id;
+	}
+
+	private int addRow(int id, int line, int lineOffset, int col) {
+		if (rows==fileId.length) {
+			int capacity = grow(rows);
+			fileId = Arrays.copyOf(fileId, capacity);
+			lineNumber = Arrays.copyOf(lineNumber, capacity);
+			offset = Arrays.copyOf(offset, capacity);
+			textStart = Arrays.copyOf(textStart, capacity);
+			textLength = Arrays.copyOf(textLength, capacity);
+			column = Arrays.copyOf(column, capacity);
+			score = Arrays.copyOf(score, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+			live = Arrays.copyOf(live, capacity+1);
+		}
+		firstChange = Math.min(firstChange, size());
+		int row = rows++;
+		//Entry 'rows' of the tree covers this row and the ones before it that are not yet covered
+		// by lower entries.
+		live[rows] = 1 + countLive(row) - countLive(rows - Integer.lowestOneBit(rows));
+		fileId[row] = id;
+		lineNumber[row] = line;
+		offset[row] = lineOffset;
+		column[row] = col;
+		score[row] = 0;
+		flags[row] = 0;
+		if (rows*2>table.length) {
+			rehash(table.length*2);
+		} else {
+			table[emptySlot(id, line, col)] = row+1;
+		}
+		return row;
+	}
+
+	private void kill(int slot) {
+		int row = table[slot]-1;
+		firstChange = Math.min(firstChange, countLive(row));
+		table[slot] = DEAD;
+		fileId[row] = DEAD;
+		dead++;
+		for (int i = row+1; i <= rows; i += Integer.lowestOneBit(i)) {
+			live[i]--;
+		}
+		if (dead>=64 && dead*2>rows) {
+			compact();
+		}
+	}
+
+	/**
+	 * @return The number of live rows before a given row.
+	 */
+	private int countLive(int row) {
+		int count = 0;
+		for (int i = row; i > 0; i -= Integer.lowestOneBit(i)) {
+			count += live[i];
+		}
+		return count;
+	}
+
+	/**
+	 * @return The row holding the match at a given position.
+	 */
+	private int rowAt(int index) {
+		//Find the largest prefix of rows with at most 'index' live rows. The row after it is the one.
+		int row = 0;
+		int remaining = index;
+		for (int step = Integer.highestOneBit(rows); step > 0; step >>= 1) {
+			int next = row + step;
+			if (next<=rows && live[next]<=remaining) {
+				row = next;
+				remaining -= live[next];
+			}
+		}
+		return row;
+	}
+
+	private static int hash(int id, int line, int col) {
+		int h = id*0x9E3779B1 + line*0x85EBCA6B + col*0xC2B2AE35;
+		return h ^ (h>>>16);
+	}
+
+	/**
+	 * @return The slot holding the row for the given line and column, or -1.
+	 */
+	private int findSlot(int id, int line, int col) {
+		int mask = table.length-1;
+		for (int slot = hash(id, line, col) & mask; table[slot]!=0; slot = (slot+1) & mask) {
+			int row = table[slot]-1;
+			if (row>=0 && fileId[row]==id && lineNumber[row]==line && column[row]==col) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The slot holding the row of an item, which is either the only row for its line or
+	 *    a window told apart by its offset. Or -1.
+	 */
+	private int findSlot(int id, LineItem item) {
+		int slot = findSlot(id, item.getLineNumber(), WHOLE_LINE);
+		return slot>=0 ? slot : findSlot(id, item.getLineNumber(), item.getOffset());
+	}
+
+	private int find(int id, int line, int col) {
+		int slot = findSlot(id, line, col);
+		return slot<0 ? -1 : table[slot]-1;
+	}
+
+	private int emptySlot(int id, int line, int col) {
+		int mask = table.length-1;
+		int slot = hash(id, line, col) & mask;
+		while (table[slot]>0) {
+			slot = (slot+1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		for (int row = 0; row < rows; row++) {
+			if (fileId[row]!=DEAD) {
+				table[emptySlot(fileId[row], lineNumber[row], column[row])] = row+1;
+			}
+		}
+	}
+
+	/**
+	 * Get rid of removed rows and their text.
+	 */
+	private void compact() {
+		if (dead==0) {
+			return;
+		}
+		int to = 0;
+		int textTo = 0;
+		for (int row = 0; row < rows; row++) {
+			if (fileId[row]!=DEAD) {
+				int bytes = (flags[row] & WIDE)!=0 ? 2*textLength[row] : textLength[row];
+				System.arraycopy(text, textStart[row], text, textTo, bytes);
+				fileId[to] = fileId[row];
+				lineNumber[to] = lineNumber[row];
+				offset[to] = offset[row];
+				textStart[to] = textTo;
+				textLength[to] = textLength[row];
+				column[to] = column[row];
+				score[to] = score[row];
+				flags[to] = flags[row];
+				textTo += bytes;
+				to++;
+			}
+		}
+		rows = to;
+		dead = 0;
+		textUsed = textTo;
+		rehash(table.length);
+		//Every row is live now.
+		for (int i = 1; i <= rows; i++) {
+			live[i] = Integer.lowestOneBit(i);
+		}
+	}
+
+}
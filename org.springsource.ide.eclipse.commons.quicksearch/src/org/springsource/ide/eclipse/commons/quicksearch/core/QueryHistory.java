@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.springsource.ide.eclipse.commons.quicksearch.core.pathmatch.ResourceMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
+
+/**
+ * Remembers the state of the last few queries of a {@link QuickTextSearcher}, so that going back to one
+ * of them (e.g. by deleting the last few characters typed) shows its results again right away, and the
+ * search continues where it left off.
+ * <p>
+ * Each entry remembers the modification stamps of the files that were visited for its query, so files
+ * changed since can be searched again. Resources added to the workspace while an entry is in the history
+ * are tracked with a resource change listener, since those would otherwise be missed.
+ */
+class QueryHistory implements IResourceChangeListener {
+
+	/**
+	 * An entry that has seen more added resources than this is dropped, searching again from scratch is
+	 * probably cheaper than catching up.
+	 */
+	private static final int MAX_ADDED = 1000;
+
+	static class Entry {
+		final QuickTextQuery query;
+		final ResourceMatcher pathMatcher;
+		final MatchStore matches;
+		final ResourceWalker.Snapshot work;
+
+		/**
+		 * Modification stamps of the files visited for this query (whether they were opened or not).
+		 */
+		final Map<IFile, Long> seen;
+
+		/**
+		 * Resources added to the workspace since the entry was created. Guarded by the history.
+		 */
+		private final List<IResource> added = new ArrayList<IResource>();
+
+		Entry(QuickTextQuery query, ResourceMatcher pathMatcher, MatchStore matches, ResourceWalker.Snapshot work, Map<IFile, Long> seen) {
+			this.query = query;
+			this.pathMatcher = pathMatcher;
+			this.matches = matches;
+			this.work = work;
+			this.seen = seen;
+		}
+
+		/**
+		 * @return The visited files that were changed or deleted since they were visited.
+		 */
+		Set<IFile> getChangedFiles() {
+			Set<IFile> changed = new HashSet<IFile>();
+			for (Map.Entry<IFile, Long> e : seen.entrySet()) {
+				if (e.getKey().getModificationStamp()!=e.getValue()) {
+					changed.add(e.getKey());
+				}
+			}
+			return changed;
+		}
+
+		/**
+		 * @return The resources added to the workspace since this entry was created. Added containers
+		 *    are included, but not their contents.
+		 */
+		List<IResource> getAddedResources() {
+			return added;
+		}
+	}
+
+	private final int size;
+
+	/**
+	 * Most recent first.
+	 */
+	private final LinkedList<Entry> entries = new LinkedList<Entry>();
+
+	private boolean listening = false;
+
+	QueryHistory(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Add an entry, replacing any older entry for the same query.
+	 */
+	synchronized void add(Entry entry) {
+		if (size<=0) {
+			return;
+		}
+		remove(entry.query);
+		entries.addFirst(entry);
+		while (entries.size()>size) {
+			entries.removeLast();
+		}
+		if (!listening) {
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+			listening = true;
+		}
+	}
+
+	/**
+	 * Retrieve (and remove) the entry for a query.
+	 *
+	 * @return The entry or null if there's no entry for the query with the same path matcher.
+	 */
+	synchronized Entry take(QuickTextQuery query, ResourceMatcher pathMatcher) {
+		Entry entry = remove(query);
+		return entry!=null && entry.pathMatcher==pathMatcher ? entry : null;
+	}
+
+	private Entry remove(QuickTextQuery query) {
+		Iterator<Entry> iter = entries.iterator();
+		while (iter.hasNext()) {
+			Entry entry = iter.next();
+			if (entry.query.equalsFilter(query)) {
+				iter.remove();
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Forget all entries and stop listening to resource changes.
+	 */
+	synchronized void clear() {
+		entries.clear();
+		if (listening) {
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+			listening = false;
+		}
+	}
+
+	@Override
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta==null) {
+			return;
+		}
+		final List<IResource> added = new ArrayList<IResource>();
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				@Override
+				public boolean visit(IResourceDelta delta) throws CoreException {
+					if (delta.getKind()==IResourceDelta.ADDED
+							|| (delta.getResource().getType()==IResource.PROJECT && (delta.getFlags() & IResourceDelta.OPEN)!=0)) {
+						//Everything inside will be visited from here.
+						added.add(delta.getResource());
+						return false;
+					}
+					return true;
+				}
+			});
+		} catch (CoreException e) {
+			QuickSearchActivator.log(e);
+		}
+		if (!added.isEmpty()) {
+			synchronized (this) {
+				Iterator<Entry> iter = entries.iterator();
+				while (iter.hasNext()) {
+					Entry entry = iter.next();
+					entry.added.addAll(added);
+					if (entry.added.size()>MAX_ADDED) {
+						iter.remove();
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -10,17 +10,37 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.quicksearch.core;
 
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.eclipse.jface.text.IRegion;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.ByteLiteralMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.FuzzyMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.LiteralMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.RegexLiterals;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.RegexMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.TextMatcher;
 
 
 /**
  * Represents something you can search for with a 'quick search' text searcher.
+ * <p>
+ * By default the pattern is a single wildcard pattern. In {@link Mode#MULTI_TERM} mode a query can
+ * combine several wildcard patterns ('terms'). Terms separated by " &amp; " must all match the same
+ * line. Terms separated by " &amp;&amp; " form separate groups that must each match some line of the
+ * file; lines matching any one of the groups are reported, but only for files that have a line
+ * matching each group. An '&amp;' can be escaped with a backslash.
+ * <p>
+ * Alternatively, the pattern can be a java regular expression. It is then a single term, and the
+ * literals that every match must contain are searched for before the regexp is run. Or it can be
+ * matched approximately, allowing for a few typos.
  *
  * @author Kris De Volder
  */
@@ -43,9 +63,93 @@ public class QuickTextQuery {
 		}
 	}
 
+	/**
+	 * How the pattern is interpreted.
+	 */
+	public enum Mode {
+		/**
+		 * A pattern where '?' matches any char and '*' any string.
+		 */
+		WILDCARD,
+		/**
+		 * Several wildcard patterns, separated by " &amp; " if they must match the same line, or by
+		 * " &amp;&amp; " if they must match the same file.
+		 */
+		MULTI_TERM,
+		/**
+		 * A java regular expression.
+		 */
+		REGEXP,
+		/**
+		 * A literal string, that also matches text with up to one typo per four chars (and at most
+		 * three). See {@link FuzzyMatcher}.
+		 */
+		FUZZY
+	}
+
+	private static final String LINE_AND = " & ";
+	private static final String FILE_AND = " && ";
+
+	/**
+	 * Bounds the work the regexp engine does per char of a line, so that a pattern that backtracks
+	 * catastrophically can't stall the search. Lines where it runs out are treated as not matching.
+	 */
+	private static final int REGEXP_STEPS_PER_CHAR = 1000;
+
 	private boolean caseSensitive;
+	private Mode mode;
+
+	/**
+	 * Why the pattern isn't a valid regexp, or null.
+	 */
+	private String error;
 	private String orgPattern; //Original pattern case preserved even if search is case insensitive.
-	private Pattern pattern;
+
+	/**
+	 * A single wildcard pattern of the query.
+	 */
+	private static class Term {
+
+		/**
+		 * Does the actual matching. Patterns without wildcards use a fast {@link LiteralMatcher}, other
+		 * patterns are compiled into a regular expression.
+		 */
+		TextMatcher matcher;
+
+		/**
+		 * The pattern, as a sequence of chars and wildcards (see {@link #ANY_CHAR} and {@link #ANY_STRING}).
+		 * Escapes are already resolved. Used to compare the structure of queries. Null in other modes.
+		 */
+		int[] tokens;
+
+		/**
+		 * The longest literal segment of the pattern, or "" if it has none.
+		 */
+		String longestLiteral = "";
+	}
+
+	/**
+	 * The groups of terms. All terms of a group must match the same line. In each group the terms
+	 * are ordered by estimated selectivity, most selective (i.e. longest literal) first, so that a line
+	 * is usually rejected by the first term that is tried.
+	 */
+	private Term[][] groups;
+
+	/**
+	 * The literal (i.e. non-wildcard) segments of all the terms. Any file matching the query must
+	 * contain all of these.
+	 */
+	private List<String> literals = new ArrayList<String>();
+
+	private static final int ANY_CHAR = -1; // '?'
+	private static final int ANY_STRING = -2; // '*'
+
+	/**
+	 * Byte matchers for the longest literal, one per charset. Created on demand, when files
+	 * with that charset are searched.
+	 */
+	private final Map<Charset, Optional<ByteLiteralMatcher>> byteMatchers = new ConcurrentHashMap<Charset, Optional<ByteLiteralMatcher>>();
+	private final Map<Charset, Optional<ByteLiteralMatcher>> fileByteMatchers = new ConcurrentHashMap<Charset, Optional<ByteLiteralMatcher>>();
 
 	/**
 	 * A query that matches anything.
@@ -55,38 +159,105 @@ public class QuickTextQuery {
 	}
 
 	public QuickTextQuery(String substring, boolean caseSensitive) {
+		this(substring, caseSensitive, Mode.WILDCARD);
+	}
+
+	public QuickTextQuery(String substring, boolean caseSensitive, Mode mode) {
 		this.orgPattern = substring;
 		this.caseSensitive = caseSensitive;
-		createMatcher(substring, caseSensitive);
+		this.mode = mode;
+		if (mode==Mode.REGEXP) {
+			groups = new Term[][] {{ createRegexpMatcher(substring, caseSensitive) }};
+			return;
+		} else if (mode==Mode.FUZZY) {
+			groups = new Term[][] {{ createFuzzyMatcher(substring, caseSensitive) }};
+			return;
+		}
+		List<List<String>> split = mode==Mode.MULTI_TERM ? split(substring) : Arrays.asList(Arrays.asList(substring));
+		groups = new Term[split.size()][];
+		for (int g = 0; g < groups.length; g++) {
+			List<String> patterns = split.get(g);
+			Term[] terms = new Term[patterns.size()];
+			for (int t = 0; t < terms.length; t++) {
+				terms[t] = createMatcher(patterns.get(t), caseSensitive);
+			}
+			Arrays.sort(terms, (a, b) -> b.longestLiteral.length() - a.longestLiteral.length());
+			groups[g] = terms;
+		}
 	}
 
 	/**
-	 * Compile a pattern string into an RegExp and create a Matcher for that
-	 * regexp. This is so we can 'compile' the pattern once and then keep reusing
-	 * the matcher or compiled pattern.
+	 * Split a pattern into groups of terms at the (unescaped) separators. Empty terms are dropped,
+	 * so a pattern that is being typed doesn't turn into a query that matches everything. If no
+	 * terms are left the whole pattern is the only term.
 	 */
-	private void createMatcher(String patString, boolean caseSensitive) {
+	private static List<List<String>> split(String pattern) {
+		List<List<String>> groups = new ArrayList<List<String>>();
+		List<String> group = new ArrayList<String>();
+		int start = 0;
+		int pos = 0, len = pattern.length();
+		while (pos<=len) {
+			//The end of the pattern ends the last group.
+			boolean endOfGroup = pos==len || pattern.startsWith(FILE_AND, pos);
+			if (endOfGroup || pattern.startsWith(LINE_AND, pos)) {
+				if (pos>start) {
+					group.add(pattern.substring(start, pos));
+				}
+				if (endOfGroup && !group.isEmpty()) {
+					groups.add(group);
+					group = new ArrayList<String>();
+				}
+				pos += endOfGroup ? FILE_AND.length() : LINE_AND.length();
+				start = pos;
+			} else {
+				//Skip the escaped char, it can't start a separator.
+				pos += pattern.charAt(pos)=='\\' && pos+1<len ? 2 : 1;
+			}
+		}
+		if (groups.isEmpty()) {
+			groups.add(Arrays.asList(pattern));
+		}
+		return groups;
+	}
+
+	/**
+	 * Compile a pattern string into a TextMatcher. This is so we can 'compile' the pattern
+	 * once and then keep reusing the matcher.
+	 * <p>
+	 * Patterns that contain no wildcards are matched with a {@link LiteralMatcher}. Other patterns
+	 * are turned into a regexp.
+	 */
+	private Term createMatcher(String patString, boolean caseSensitive) {
+		Term term = new Term();
 		StringBuilder segment = new StringBuilder(); //Accumulates text that needs to be 'quoted'
 		StringBuilder regexp = new StringBuilder(); //Accumulates 'compiled' pattern
+		int[] tokens = new int[patString.length()];
+		int tokenCount = 0;
+		boolean wildcards = false;
 		int pos = 0, len = patString.length();
 		while (pos<len) {
 			char c = patString.charAt(pos++);
 			switch (c) {
 			case '?':
-				appendSegment(segment, regexp);
+				wildcards = true;
+				appendSegment(term, segment, regexp);
 				regexp.append(".");
+				tokens[tokenCount++] = ANY_CHAR;
 				break;
 			case '*':
-				appendSegment(segment, regexp);
+				wildcards = true;
+				appendSegment(term, segment, regexp);
 				regexp.append(".*");
+				tokens[tokenCount++] = ANY_STRING;
 				break;
 			case '\\':
 				System.out.println("pos = "+pos);
 				System.out.println("len = "+len);
 				if (pos<len) {
 					char nextChar = patString.charAt(pos);
-					if (nextChar=='*' || nextChar=='?' || nextChar=='\\') {
+					if (nextChar=='*' || nextChar=='?' || nextChar=='\\' || (nextChar=='&' && mode==Mode.MULTI_TERM)) {
 						segment.append(nextChar);
+						tokens[tokenCount++] = nextChar;
 						pos++;
 						break;
 					}
@@ -94,18 +265,77 @@ public class QuickTextQuery {
 			default:
 				//Char is 'nothing special'. Add it to segment that will be wrapped in 'quotes'
 				segment.append(c);
+				tokens[tokenCount++] = c;
 				break;
 			}
 		}
+		term.tokens = Arrays.copyOf(tokens, tokenCount);
+		if (!wildcards) {
+			//Fast path. No need for a regexp.
+			String literal = segment.toString();
+			appendSegment(term, segment, regexp);
+			term.matcher = new LiteralMatcher(literal, caseSensitive);
+			return term;
+		}
 		//Don't forget to process that last segment.
-		appendSegment(segment, regexp);
+		appendSegment(term, segment, regexp);
+
+		term.matcher = new RegexMatcher(Pattern.compile(regexp.toString(), caseSensitive?0:Pattern.CASE_INSENSITIVE));
+		return term;
+	}
+
+	private Term createRegexpMatcher(String regex, boolean caseSensitive) {
+		Term term = new Term();
+		Pattern pattern;
+		try {
+			pattern = Pattern.compile(regex, caseSensitive?0:Pattern.CASE_INSENSITIVE);
+		} catch (PatternSyntaxException e) {
+			//Can't match anything until the user fixes it.
+			error = e.getDescription();
+			term.matcher = new RegexMatcher(Pattern.compile("(?!)"));
+			return term;
+		}
+		List<String> required = RegexLiterals.requiredLiterals(regex);
+		for (String literal : required) {
+			literals.add(literal);
+			if (literal.length()>term.longestLiteral.length()) {
+				term.longestLiteral = literal;
+			}
+		}
+		term.matcher = new RegexMatcher(pattern, required, REGEXP_STEPS_PER_CHAR);
+		return term;
+	}
+
+	/**
+	 * Number of typos tolerated in a fuzzy pattern of a given length.
+	 */
+	static int maxEdits(int length) {
+		return Math.min(3, length/4);
+	}
 
-		this.pattern = Pattern.compile(regexp.toString(), caseSensitive?0:Pattern.CASE_INSENSITIVE);
-//		this.matcher = pattern.matcher("");
+	private Term createFuzzyMatcher(String pattern, boolean caseSensitive) {
+		Term term = new Term();
+		int maxEdits = maxEdits(pattern.length());
+		if (maxEdits==0 || pattern.length()>FuzzyMatcher.MAX_LENGTH) {
+			//Too short to tolerate typos, or too long for the bit-parallel matcher. Only exact matches.
+			if (!pattern.isEmpty()) {
+				literals.add(pattern);
+			}
+			term.longestLiteral = pattern;
+			term.matcher = new LiteralMatcher(pattern, caseSensitive);
+		} else {
+			//Any of the chars could be a typo, so there is no required literal.
+			term.matcher = new FuzzyMatcher(pattern, caseSensitive, maxEdits);
+		}
+		return term;
 	}
 
-	private void appendSegment(StringBuilder segment, StringBuilder regexp) {
+	private void appendSegment(Term term, StringBuilder segment, StringBuilder regexp) {
 		if (segment.length()>0) {
+			literals.add(segment.toString());
+			if (segment.length()>term.longestLiteral.length()) {
+				term.longestLiteral = segment.toString();
+			}
 			regexp.append(Pattern.quote(segment.toString()));
 			segment.setLength(0); //clear: ready for next segment
 		}
@@ -117,7 +347,7 @@ public class QuickTextQuery {
 	public boolean equalsFilter(QuickTextQuery o) {
 		//TODO: actually for case insensitive matches we could relax this and treat patterns that
 		// differ only in case as the same.
-		return this.caseSensitive == o.caseSensitive && this.orgPattern.equals(o.orgPattern);
+		return this.caseSensitive == o.caseSensitive && this.mode == o.mode && this.orgPattern.equals(o.orgPattern);
 	}
 
 	/**
@@ -128,32 +358,151 @@ public class QuickTextQuery {
 	 * If it is hard or impossible to decide whether other query is a specialisation of this query then this
 	 * method is allowed to 'punt' and just return false. However, the consequence of this is that the query
 	 * will be re-run instead of incrementally updated.
+	 * <p>
+	 * Only wildcard patterns (with one or more terms) are compared, searches in other modes are always re-run.
 	 */
 	public boolean isSubFilter(QuickTextQuery other) {
-		if (this.isTrivial()) {
+		if (this.isTrivial() || !this.isWildcards() || !other.isWildcards()) {
 			return false;
 		}
-		if (this.caseSensitive==other.caseSensitive) {
-			boolean caseSensitive = this.caseSensitive;
-			String otherPat = normalize(other.orgPattern, caseSensitive);
-			String thisPat = normalize(this.orgPattern, caseSensitive);
-			return otherPat.contains(thisPat);
+		if (this.caseSensitive && !other.caseSensitive && hasCase(other.groups)) {
+			//Other query also matches text where the letters have a different case.
+			return false;
+		}
+		//Each line that other reports must also be reported by this.
+		for (Term[] theirs : other.groups) {
+			if (!isCoveredBySome(theirs, this.groups)) {
+				return false;
+			}
+		}
+		//And each file that other accepts must also be accepted by this. With a single group that
+		// follows from the above, since such a file has a matching line.
+		if (this.groups.length>1) {
+			for (Term[] mine : this.groups) {
+				if (!coversSome(mine, other.groups)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean isWildcards() {
+		return mode==Mode.WILDCARD || mode==Mode.MULTI_TERM;
+	}
+
+	private boolean isCoveredBySome(Term[] theirs, Term[][] groups) {
+		for (Term[] mine : groups) {
+			if (covers(mine, theirs)) {
+				return true;
+			}
 		}
 		return false;
 	}
 
+	private boolean coversSome(Term[] mine, Term[][] groups) {
+		for (Term[] theirs : groups) {
+			if (covers(mine, theirs)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines whether any line matching all the terms of 'theirs' also matches all the terms of
+	 * 'mine'. That is the case when each of my terms covers one of theirs.
+	 */
+	private boolean covers(Term[] mine, Term[] theirs) {
+		for (Term m : mine) {
+			boolean covered = false;
+			for (int i = 0; i < theirs.length && !covered; i++) {
+				covered = covers(m, theirs[i]);
+			}
+			if (!covered) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean covers(Term mine, Term theirs) {
+		//A term matches a line if some part of the line matches its pattern. So it covers another
+		// term if, whatever text matches the other, a part of that text matches this one.
+		// That is the case when '*mine*' covers '*theirs*', token by token.
+		int[] m = surround(mine.tokens);
+		int[] t = surround(theirs.tokens);
+		return covers(m, 0, t, 0, new boolean[(m.length+1)*(t.length+1)]);
+	}
+
+	private static int[] surround(int[] tokens) {
+		int[] surrounded = new int[tokens.length+2];
+		surrounded[0] = ANY_STRING;
+		System.arraycopy(tokens, 0, surrounded, 1, tokens.length);
+		surrounded[surrounded.length-1] = ANY_STRING;
+		return surrounded;
+	}
+
 	/**
-	 * Transforms a pattern string so we can use a simple 'substring' test to determine
-	 * whether one pattern is sub-pattern of the other.
+	 * Determines whether the pattern tokens 'mine', from position i, match any text that the pattern
+	 * tokens 'theirs', from position j, matches. This is a conservative check: e.g. it doesn't
+	 * see that '??' covers '*?*?'.
+	 *
+	 * @param failed Remembers the (i, j) pairs already known not to cover, so that patterns with
+	 *      many '*' don't take exponential time.
 	 */
-	private String normalize(String pat, boolean caseSensitive) {
-		if (pat.endsWith("\\")) {
-			pat = pat + "\\";
+	private boolean covers(int[] mine, int i, int[] theirs, int j, boolean[] failed) {
+		int key = i*(theirs.length+1) + j;
+		if (failed[key]) {
+			return false;
 		}
-		if (!caseSensitive) {
-			pat = pat.toLowerCase();
+		boolean covers;
+		if (i==mine.length) {
+			covers = j==theirs.length;
+		} else if (mine[i]==ANY_STRING) {
+			//Either the '*' matches nothing more, or it also matches their next token.
+			covers = covers(mine, i+1, theirs, j, failed)
+					|| (j<theirs.length && covers(mine, i, theirs, j+1, failed));
+		} else if (j==theirs.length || theirs[j]==ANY_STRING) {
+			//Only a '*' can cover a '*'.
+			covers = false;
+		} else if (mine[i]==ANY_CHAR) {
+			covers = covers(mine, i+1, theirs, j+1, failed);
+		} else {
+			covers = theirs[j]!=ANY_CHAR && sameChar(mine[i], theirs[j]) && covers(mine, i+1, theirs, j+1, failed);
+		}
+		if (!covers) {
+			failed[key] = true;
+		}
+		return covers;
+	}
+
+	private boolean sameChar(int a, int b) {
+		return caseSensitive ? a==b : fold(a)==fold(b);
+	}
+
+	/**
+	 * Folds the case of ascii letters only, the same as the matchers do.
+	 */
+	private static int fold(int c) {
+		return c>='A' && c<='Z' ? c + ('a'-'A') : c;
+	}
+
+	/**
+	 * @return true if any of the tokens is a letter that the matchers treat differently in case sensitive
+	 *   and insensitive mode.
+	 */
+	private static boolean hasCase(Term[][] groups) {
+		for (Term[] terms : groups) {
+			for (Term term : terms) {
+				for (int c : term.tokens) {
+					if ((c>='A' && c<='Z') || (c>='a' && c<='z')) {
+						return true;
+					}
+				}
+			}
 		}
-		return pat;
+		return false;
 	}
 
 	/**
@@ -178,11 +527,39 @@ public class QuickTextQuery {
 	 * be useful for efficient processing. In particular to avoid creating
 	 * LineItem instances for non-matching lines.
 	 */
-	public boolean matchItem(String item) {
-		//Alternate implementation. This is thread safe without synchronized,
-		// but it creates some garbage.
-		Matcher matcher = pattern.matcher(item); //Creating garbage here
-		return matcher.find();
+	public boolean matchItem(CharSequence item) {
+		return matchGroup(item, 0)>=0;
+	}
+
+	/**
+	 * @return The number of groups of terms. If there's more than one, a file only has matches if
+	 *    it has a line matching each of the groups.
+	 */
+	public int getGroupCount() {
+		return groups.length;
+	}
+
+	/**
+	 * Find the first group, from a given index, with all its terms matching a line.
+	 *
+	 * @return The index of the group, or -1 if none match.
+	 */
+	public int matchGroup(CharSequence line, int from) {
+		for (int g = from; g < groups.length; g++) {
+			if (matchAll(groups[g], line)) {
+				return g;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean matchAll(Term[] terms, CharSequence line) {
+		for (Term term : terms) {
+			if (!term.matcher.matches(line)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -193,12 +570,12 @@ public class QuickTextQuery {
 	 * of the search.
 	 */
 	public boolean isTrivial() {
-		return "".equals(this.orgPattern);
+		return "".equals(this.orgPattern) || error!=null;
 	}
 
 	@Override
 	public String toString() {
-		return "QTQuery("+orgPattern+", "+(caseSensitive?"caseSens":"caseInSens")+")";
+		return "QTQuery("+orgPattern+", "+(caseSensitive?"caseSens":"caseInSens")+(mode!=Mode.WILDCARD?", "+mode:"")+")";
 	}
 
 //	public synchronized List<TextRange> findAll(String text) {
@@ -216,29 +593,67 @@ public class QuickTextQuery {
 //		}
 //	}
 
+	/**
+	 * Find the matches of all the terms in a text, in order. Overlapping matches of different terms
+	 * are merged.
+	 */
 	public List<TextRange> findAll(String text) {
-		//alternate implementation without 'synchronized' but creates more garbage
 		if (isTrivial()) {
 			return Arrays.asList();
 		} else {
 			List<TextRange> ranges = new ArrayList<QuickTextQuery.TextRange>();
-			Matcher matcher = pattern.matcher(text);
-			while (matcher.find()) {
-				int start = matcher.start();
-				int end = matcher.end();
-				ranges.add(new TextRange(start, end-start));
+			for (Term[] terms : groups) {
+				for (Term term : terms) {
+					findAll(term.matcher, text, ranges);
+				}
+			}
+			if (groups.length==1 && groups[0].length==1) {
+				return ranges;
 			}
-			return ranges;
+			ranges.sort((a, b) -> a.start - b.start);
+			List<TextRange> merged = new ArrayList<QuickTextQuery.TextRange>();
+			for (TextRange r : ranges) {
+				TextRange last = merged.isEmpty() ? null : merged.get(merged.size()-1);
+				if (last!=null && r.start<=last.start+last.len) {
+					int end = Math.max(last.start+last.len, r.start+r.len);
+					merged.set(merged.size()-1, new TextRange(last.start, end-last.start));
+				} else {
+					merged.add(r);
+				}
+			}
+			return merged;
+		}
+	}
+
+	private void findAll(TextMatcher matcher, String text, List<TextRange> ranges) {
+		int from = 0;
+		IRegion match;
+		while (from<=text.length() && (match = matcher.find(text, from))!=null) {
+			int start = match.getOffset();
+			int end = start + match.getLength();
+			ranges.add(new TextRange(start, end-start));
+			//Avoid looping forever on an empty match.
+			from = end>start ? end : end+1;
 		}
 	}
 
-	public TextRange findFirst(String str) {
-		//TODO: more efficient implementation, just search the first one
-		// no need to find all matches then toss away everything except the
-		// first one.
-		List<TextRange> all = findAll(str);
-		if (all!=null && !all.isEmpty()) {
-			return all.get(0);
+	/**
+	 * Find the first match of any of the terms in a text.
+	 */
+	public TextRange findFirst(CharSequence str) {
+		if (!isTrivial()) {
+			IRegion first = null;
+			for (Term[] terms : groups) {
+				for (Term term : terms) {
+					IRegion match = term.matcher.find(str, 0);
+					if (match!=null && (first==null || match.getOffset()<first.getOffset())) {
+						first = match;
+					}
+				}
+			}
+			if (first!=null) {
+				return new TextRange(first.getOffset(), first.getLength());
+			}
 		}
 		return null;
 	}
@@ -251,5 +666,68 @@ public class QuickTextQuery {
 		return caseSensitive;
 	}
 
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return A description of what is wrong with the pattern, if it is an invalid regexp. Otherwise null.
+	 */
+	public String getPatternError() {
+		return error;
+	}
+
+	/**
+	 * Returns literal strings that any text matching this query must contain. This can be
+	 * used to quickly rule out text (or entire files) without running the actual matcher.
+	 * With more than one {@link #getGroupCount() group}, only files are sure to contain all of
+	 * them, not the lines.
+	 * <p>
+	 * Note that, when the query is case insensitive, the text may contain the literals in
+	 * a different case.
+	 */
+	public String[] getRequiredLiterals() {
+		return literals.toArray(new String[literals.size()]);
+	}
+
+	/**
+	 * Returns a matcher that searches raw bytes, in a given charset, for the longest of the
+	 * {@link #getRequiredLiterals() required literals}. Any line of text that matches this
+	 * query contains that literal, so lines that don't contain it can be skipped without decoding
+	 * them.
+	 * <p>
+	 * The charset should be 'ASCII compatible', see {@link ByteLiteralMatcher}.
+	 *
+	 * @return A matcher or null if there is no suitable literal. There is none when the query has
+	 *    more than one {@link #getGroupCount() group}, since lines need only match one of those.
+	 */
+	public ByteLiteralMatcher getByteMatcher(Charset charset) {
+		if (groups.length>1) {
+			return null;
+		}
+		return byteMatchers.computeIfAbsent(charset, cs -> {
+			return Optional.ofNullable(ByteLiteralMatcher.create(groups[0][0].longestLiteral, caseSensitive, cs));
+		}).orElse(null);
+	}
+
+	/**
+	 * Returns a matcher that searches raw bytes for the longest of the required literals of all the
+	 * terms. Any file that has matches for this query contains it, so files that don't can be
+	 * abandoned without decoding them. The longest literal is taken to be the rarest.
+	 *
+	 * @return A matcher or null if there is no suitable literal.
+	 */
+	public ByteLiteralMatcher getFileByteMatcher(Charset charset) {
+		return fileByteMatchers.computeIfAbsent(charset, cs -> {
+			String longest = "";
+			for (String literal : literals) {
+				if (literal.length()>longest.length()) {
+					longest = literal;
+				}
+			}
+			return Optional.ofNullable(ByteLiteralMatcher.create(longest, caseSensitive, cs));
+		}).orElse(null);
+	}
+
 
 }
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.quicksearch.core;
 
+import java.util.List;
 
 /**
  * Plays a similar role than SearchReqeustor in eclipse Searches. I.e. a search requestor
@@ -49,4 +50,33 @@ public class QuickTextSearchRequestor {
 	 * incrementally but needs to be completely restarted.
 	 */
 	public void clear() {}
+
+	/**
+	 * Called with a batch of matches found at once (see {@link BatchingRequestor}). By default, this
+	 * calls {@link #add(LineItem)} for each of them. Requestors that can handle a batch more
+	 * efficiently should override this.
+	 */
+	public void addAll(List<LineItem> matches) {
+		for (LineItem match : matches) {
+			add(match);
+		}
+	}
+
+	/**
+	 * Batch version of {@link #update(LineItem)}.
+	 */
+	public void updateAll(List<LineItem> matches) {
+		for (LineItem match : matches) {
+			update(match);
+		}
+	}
+
+	/**
+	 * Batch version of {@link #revoke(LineItem)}.
+	 */
+	public void revokeAll(List<LineItem> lines) {
+		for (LineItem line : lines) {
+			revoke(line);
+		}
+	}
 }
@@ -10,33 +10,55 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.quicksearch.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery.TextRange;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.BloomFilterTable;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.ContentCache;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.ContentSniffer;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.IndexMaintainer;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.TrigramIndex;
 import org.springsource.ide.eclipse.commons.quicksearch.core.pathmatch.ResourceMatcher;
 import org.springsource.ide.eclipse.commons.quicksearch.core.pathmatch.ResourceMatchers;
 import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PriorityFunction;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.ByteLiteralMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
+import org.springsource.ide.eclipse.commons.quicksearch.util.ByteLineScanner;
 import org.springsource.ide.eclipse.commons.quicksearch.util.JobUtil;
 import org.springsource.ide.eclipse.commons.quicksearch.util.LineReader;
 
 public class QuickTextSearcher {
-	private final QuickTextSearchRequestor requestor;
+	private final BatchingRequestor requestor;
 	private QuickTextQuery query;
 
 	/**
 	 * Keeps track of currently found matches. Items are added as they are found and may also
 	 * be removed when the query changed and they become invalid.
 	 */
-	private Set<LineItem> matches = new HashSet<LineItem>(2000);
+	private final MatchStore matches = new MatchStore();
 
 	/**
 	 * Scheduling rule used by Jobs that work on the matches collection.
@@ -56,11 +78,25 @@ public class QuickTextSearcher {
 	/**
 	 * If number of accumulated results reaches maxResults the search will be suspended.
 	 * <p>
-	 * Note that more results may still arrive beyond the limit since the searcher does not (yet) have the
-	 * capability to suspend/resume a search in the middle of a file.
+	 * A search can be suspended in the middle of a file, so a single file with many matches does
+	 * not push the results far past the limit. Note that with several search threads, each may
+	 * still add one more result before it notices the suspension.
 	 */
 	private int maxResults = 200;
 
+	/**
+	 * Set when results are ranked by relevance, null when they are kept in the order they are found. A
+	 * ranked search doesn't stop at {@link #maxResults}, it keeps the best maxResults matches instead.
+	 */
+	private final ResultRanker ranker;
+
+	/**
+	 * Set when a ranked search dropped matches to stay within {@link #maxResults}. The current matches
+	 * are then only some of the matches in the searched files, so they can't be narrowed down for a
+	 * more specific query, or kept in the history. Asking for more results then searches again.
+	 */
+	private boolean dropped = false;
+
 	/**
 	 * If a line of text is encountered longer than this, the searcher will stop searching
 	 * that file (this rule avoids searching machine generated text files, like minified javascript).
@@ -71,7 +107,7 @@ public class QuickTextSearcher {
 	 * While searching in a file, this field will be set. This can be used to show the name
 	 * of the 'current file' in the progress area of the quicksearch dialog.
 	 */
-	private IFile currentFile = null;
+	private volatile IFile currentFile = null;
 	
 	/**
 	 * Flag to disable incremental filtering logic based on incremental
@@ -80,6 +116,63 @@ public class QuickTextSearcher {
 	private boolean forceRefresh = false;
 	private ResourceMatcher pathMatcher = ResourceMatchers.ANY;
 
+	/**
+	 * The path matcher that was in effect when the current search was (re)started.
+	 */
+	private ResourceMatcher searchedPathMatcher = ResourceMatchers.ANY;
+
+	/**
+	 * Modification stamps of the files visited for the current query. Saved with the query in the history.
+	 */
+	private Map<IFile, Long> seen = new ConcurrentHashMap<IFile, Long>();
+
+	/**
+	 * Number of recent queries kept in the {@link #history}.
+	 */
+	private static final int HISTORY_SIZE = 8;
+
+	/**
+	 * Recent queries, and how far the search for them got. Going back to one of these continues
+	 * the search for it, rather than starting over.
+	 */
+	private final QueryHistory history = new QueryHistory(HISTORY_SIZE);
+
+	/**
+	 * Optional index used to avoid opening files that can't match the query. Null if
+	 * indexing is disabled.
+	 */
+	private final TrigramIndex index;
+	private final IndexMaintainer indexMaintainer;
+
+	/**
+	 * Recently searched file contents, so that a restarted search doesn't need to read them from disk
+	 * again. Null if caching is disabled.
+	 */
+	private final ContentCache contentCache;
+
+	/**
+	 * Bloom filters of searched files, used to skip files that can't match the query without opening
+	 * them. Null if disabled.
+	 */
+	private final BloomFilterTable bloomFilters;
+
+	/**
+	 * Files of at least this many bytes are memory mapped instead of streamed, when they are searched
+	 * as raw bytes. 0 disables memory mapping.
+	 */
+	private final long mmapThreshold;
+
+	/**
+	 * Whether lines longer than MAX_LINE_LEN are searched as a series of overlapping windows, rather
+	 * than ending the search of the file.
+	 */
+	private final boolean longLineWindows;
+
+	/**
+	 * Detects binary files, so they are skipped rather than searched. Null if disabled.
+	 */
+	private final ContentSniffer sniffer;
+
 	/**
 	 * Retrieves the current result limit.
 	 */
@@ -92,9 +185,38 @@ public class QuickTextSearcher {
 	}
 
 	public QuickTextSearcher(QuickTextQuery query, PriorityFunction priorities, int maxLineLen, QuickTextSearchRequestor requestor) {
+		this(query, priorities, maxLineLen, 1, requestor);
+	}
+
+	/**
+	 * Create a searcher that visits files using a given number of threads.
+	 * <p>
+	 * Results are passed on to the requestor in batches, from a separate job (see {@link BatchingRequestor}).
+	 */
+	public QuickTextSearcher(QuickTextQuery query, PriorityFunction priorities, int maxLineLen, int searchThreads, QuickTextSearchRequestor requestor) {
+		this(query, priorities, null, maxLineLen, searchThreads, requestor);
+	}
+
+	/**
+	 * Create a searcher that visits files using a given number of threads.
+	 * <p>
+	 * If ranking is enabled in the preferences, matches in and near the active file are ranked higher.
+	 *
+	 * @param activeFile The file in the active editor, or null.
+	 */
+	public QuickTextSearcher(QuickTextQuery query, PriorityFunction priorities, IFile activeFile, int maxLineLen, int searchThreads, QuickTextSearchRequestor requestor) {
 		this.MAX_LINE_LEN = maxLineLen;
-		this.requestor = requestor;
+		this.requestor = new BatchingRequestor(requestor);
 		this.query = query;
+		this.index = QuickSearchActivator.getDefault().getTrigramIndex();
+		this.indexMaintainer = index!=null ? QuickSearchActivator.getDefault().getIndexMaintainer() : null;
+		this.contentCache = QuickSearchActivator.getDefault().getContentCache();
+		this.bloomFilters = QuickSearchActivator.getDefault().getBloomFilterTable();
+		this.mmapThreshold = QuickSearchActivator.getDefault().getPreferences().getMmapThreshold();
+		this.longLineWindows = QuickSearchActivator.getDefault().getPreferences().isLongLineWindowsEnabled();
+		this.sniffer = QuickSearchActivator.getDefault().getContentSniffer();
+		this.ranker = QuickSearchActivator.getDefault().getPreferences().isRankingEnabled()
+				? new ResultRanker(priorities, activeFile) : null;
 		this.walker = createWalker(new PriorityFunction() {
 			@Override
 			public double priority(IResource r) {
@@ -102,17 +224,31 @@ public class QuickTextSearcher {
 				if (basePriority==PRIORITY_IGNORE) {
 					return basePriority;
 				}
-				if (r.getType()==IResource.FILE && !pathMatcher.matches(r)) {
+				if (r.getType()==IResource.FILE ? !pathMatcher.matches(r) : !pathMatcher.mayMatchBelow(r.getFullPath())) {
 					return PRIORITY_IGNORE;
 				}
 				return basePriority;
 			}
-		});
+			@Override
+			public double priority(IResourceProxy proxy) {
+				double basePriority = priorities.priority(proxy);
+				if (basePriority==PRIORITY_IGNORE) {
+					return basePriority;
+				}
+				//Only files that aren't ignored otherwise need a handle to check their path. Containers
+				// are skipped when nothing inside can match.
+				if (proxy.getType()==IResource.FILE ? !pathMatcher.matches(proxy.requestResource()) : !pathMatcher.mayMatchBelow(proxy.requestFullPath())) {
+					return PRIORITY_IGNORE;
+				}
+				return basePriority;
+			}
+		}, searchThreads);
 	}
 
-	private SearchInFilesWalker createWalker(PriorityFunction priorities) {
+	private SearchInFilesWalker createWalker(PriorityFunction priorities, int searchThreads) {
 		final SearchInFilesWalker job = new SearchInFilesWalker();
 		job.setPriorityFun(priorities);
+		job.setParallelism(searchThreads);
 		job.setRule(matchesRule);
 		job.schedule();
 		return job;
@@ -120,6 +256,41 @@ public class QuickTextSearcher {
 
 	private final class SearchInFilesWalker extends ResourceWalker {
 
+		/**
+		 * Files that may match the current query according to the index. Computed lazily
+		 * (when the first file is visited) because loading the index may take a while.
+		 */
+		private TrigramIndex.Candidates candidates = null;
+		private QuickTextQuery candidatesQuery = null;
+		private final Object candidatesLock = new Object();
+
+		private TrigramIndex.Candidates getCandidates() {
+			synchronized (candidatesLock) {
+				QuickTextQuery q = query;
+				if (candidatesQuery!=q) {
+					candidates = index.candidates(q);
+					candidatesQuery = q;
+				}
+				return candidates;
+			}
+		}
+
+		/**
+		 * Keys to look for in the bloom filters of files, for the current query.
+		 */
+		private int[] bloomKeys = null;
+		private QuickTextQuery bloomKeysQuery = null;
+
+		private int[] getBloomKeys() {
+			synchronized (candidatesLock) {
+				QuickTextQuery q = query;
+				if (bloomKeysQuery!=q) {
+					bloomKeys = BloomFilterTable.keysFor(q);
+					bloomKeysQuery = q;
+				}
+				return bloomKeys;
+			}
+		}
 
 		@Override
 		protected void visit(IFile f, IProgressMonitor mon) {
@@ -127,33 +298,336 @@ public class QuickTextSearcher {
 				return;
 			}
 
+			FileSearch search = (FileSearch) takeCheckpoint(f);
+			//Important to get this before reading the file. If it changes while we read it, it will
+			// just look changed when we come back to this query.
+			long stamp = search!=null ? search.stamp : f.getModificationStamp();
+			TrigramIndex.Indexer indexer = null;
+			if (search==null && index!=null) {
+				if (index.isIndexed(f)) {
+					TrigramIndex.Candidates candidates = getCandidates();
+					if (candidates!=null && !candidates.mayContain(f)) {
+						seen.put(f, stamp);
+						return;
+					}
+				} else if (!indexMaintainer.isStale(f)) {
+					//Stale files are about to be indexed by the maintainer, no need to do it twice.
+					indexer = index.startFile(f);
+				}
+			}
+			boolean filtered = false;
+			if (search==null && bloomFilters!=null && bloomFilters.hasFilter(f)) {
+				if (!bloomFilters.mayContain(f, getBloomKeys())) {
+					seen.put(f, stamp);
+					return;
+				}
+				filtered = true;
+			}
 
-			LineReader lr = null;
 			currentFile = f;
+			boolean finished = true;
 			try {
-				lr = new LineReader(new InputStreamReader(f.getContents(true), f.getCharset()), MAX_LINE_LEN);
-				String line = null;
-				int lineIndex = 1;
-				while ((line = lr.readLine()) != null) {
-					int offset = lr.getLastLineOffset();
-					if (checkCanceled(mon)) {
+				if (search==null) {
+					search = startSearch(f, indexer, filtered, mon);
+					if (search==null) {
+						return; //Nothing to search.
+					}
+					search.stamp = stamp;
+				}
+				finished = search.run(mon);
+			} catch (Exception e) {
+			} finally {
+				currentFile = null;
+				if (finished) {
+					seen.put(f, stamp);
+				}
+				if (search!=null) {
+					if (finished) {
+						search.close();
+					} else {
+						saveCheckpoint(f, search);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return The search for the file, or null if the file looks binary or can't have matches.
+		 */
+		private FileSearch startSearch(IFile f, TrigramIndex.Indexer indexer, boolean filtered, IProgressMonitor mon) throws Exception {
+			Charset charset = Charset.forName(f.getCharset());
+			//Only peek at the cache before sniffing, so a binary file isn't read whole and cached.
+			long stamp = f.getModificationStamp();
+			byte[] contents = contentCache!=null ? contentCache.get(f.getFullPath(), stamp) : null;
+			if (sniffer!=null && sniffer.isBinary(f, charset, contents)) {
+				return null;
+			}
+			if (contents==null && contentCache!=null) {
+				contents = contentCache.load(f, stamp);
+			}
+			if (indexer==null && query.getGroupCount()>1 && ByteLineScanner.isSupported(charset)) {
+				//Lines are matched one group at a time, but the file must contain the rarest literal of
+				// all of them. Look for that first, without decoding, and abandon the file if it's not there.
+				ByteLiteralMatcher rarest = query.getFileByteMatcher(charset);
+				if (rarest!=null) {
+					ByteLineScanner scanner = openScanner(f, contents, charset);
+					try {
+						if (!scanner.find(rarest, mon)) {
+							return null;
+						}
+					} finally {
+						scanner.close();
+					}
+				}
+			}
+			if (indexer==null && ByteLineScanner.isSupported(charset)) {
+				//Indexing needs all the text, so we can only search the bytes when not indexing.
+				ByteLiteralMatcher literal = query.getByteMatcher(charset);
+				if (literal!=null) {
+					ByteLineScanner scanner = openScanner(f, contents, charset);
+					FileSearch search = new FileSearch(f, scanner, charset, literal, filtered);
+					if (bloomFilters!=null && !filtered) {
+						search.bloom = bloomFilters.startFile(f);
+						scanner.setContentListener(search.bloom);
+					}
+					return search;
+				}
+			}
+			InputStream input = contents!=null ? new ByteArrayInputStream(contents) : f.getContents(true);
+			LineReader reader = new LineReader(new InputStreamReader(input, charset), MAX_LINE_LEN);
+			reader.setLongLineWindows(longLineWindows);
+			return new FileSearch(f, reader, indexer, filtered);
+		}
+
+		/**
+		 * @param contents The contents of the file if they are at hand, otherwise null.
+		 */
+		private ByteLineScanner openScanner(IFile f, byte[] contents, Charset charset) throws CoreException {
+			ByteLineScanner scanner = contents!=null
+					? new ByteLineScanner(ByteBuffer.wrap(contents), charset, MAX_LINE_LEN)
+					: ByteLineScanner.open(f, charset, MAX_LINE_LEN, mmapThreshold);
+			scanner.setLongLineWindows(longLineWindows);
+			return scanner;
+		}
+
+		/**
+		 * The state of the search in a single file. When the walker is suspended part way through a
+		 * file, this is kept as the file's checkpoint. It holds on to the open scanner or reader, and
+		 * with it the byte/char offset, line number and decoder state, so the search can later continue
+		 * exactly where it stopped.
+		 */
+		private final class FileSearch implements Closeable {
+
+			private final IFile file;
+
+			/**
+			 * Set when searching the raw bytes for a literal that all matches must contain. Only lines
+			 * containing that literal are decoded and matched against the query.
+			 */
+			private final ByteLineScanner scanner;
+			private final Charset charset;
+			private ByteLiteralMatcher literal;
+
+			/**
+			 * Set when decoding and matching every line.
+			 */
+			private final LineReader reader;
+			private final TrigramIndex.Indexer indexer;
+
+			/**
+			 * Builds a bloom filter from the bytes read by the scanner, if the file doesn't have one yet.
+			 */
+			private BloomFilterTable.Builder bloom = null;
+
+			/**
+			 * Whether the file passed its bloom filter. Used to keep track of the filter's false
+			 * positive rate.
+			 */
+			private final boolean filtered;
+			private boolean found = false;
+
+			/**
+			 * Modification stamp of the file when we started searching it.
+			 */
+			private long stamp;
+
+			/**
+			 * When the query has more than one group of terms, the file only has matches if it has a
+			 * line matching each group. Until then, matching lines are kept here rather than reported.
+			 * Null once all groups were found, or if the query has only one group.
+			 * <p>
+			 * The groups are those of the query the search was started with. The searcher doesn't
+			 * continue from a checkpoint when the new or old query has more than one group.
+			 */
+			private boolean[] groupsFound = null;
+			private int groupsMissing = 0;
+			private List<PendingLine> pending = null;
+
+			/**
+			 * Line number and end offset of the last matching window onto a long line. Windows overlap,
+			 * so hits in the next window that lie within this one were already seen.
+			 */
+			private int windowLine = -1;
+			private int windowEnd = 0;
+
+			FileSearch(IFile file, ByteLineScanner scanner, Charset charset, ByteLiteralMatcher literal, boolean filtered) {
+				this.file = file;
+				this.scanner = scanner;
+				this.charset = charset;
+				this.literal = literal;
+				this.reader = null;
+				this.indexer = null;
+				this.filtered = filtered;
+				initGroups();
+			}
+
+			FileSearch(IFile file, LineReader reader, TrigramIndex.Indexer indexer, boolean filtered) {
+				this.file = file;
+				this.scanner = null;
+				this.charset = null;
+				this.reader = reader;
+				this.indexer = indexer;
+				this.filtered = filtered;
+				initGroups();
+			}
+
+			private void initGroups() {
+				int groups = query.getGroupCount();
+				if (groups>1) {
+					groupsFound = new boolean[groups];
+					groupsMissing = groups;
+					pending = new ArrayList<PendingLine>();
+				}
+			}
+
+			/**
+			 * Called for each line matching the query. Reports the line, or keeps it until the file is
+			 * known to match every group of the query.
+			 */
+			private void matched(CharSequence line, int lineNumber, int lineOffset, boolean partial) {
+				int overlap = 0;
+				if (partial) {
+					if (lineNumber==windowLine) {
+						overlap = Math.max(0, windowEnd - lineOffset);
+					}
+					windowLine = lineNumber;
+					windowEnd = lineOffset + line.length();
+				}
+				if (pending!=null) {
+					for (int g = query.matchGroup(line, 0); g>=0; g = query.matchGroup(line, g+1)) {
+						if (!groupsFound[g]) {
+							groupsFound[g] = true;
+							groupsMissing--;
+						}
+					}
+					if (groupsMissing>0) {
+						pending.add(new PendingLine(line.toString(), lineNumber, lineOffset, partial, overlap));
 						return;
 					}
+					for (PendingLine p : pending) {
+						add(file, p.text, p.lineNumber, p.lineOffset, p.partial, p.overlap);
+					}
+					pending = null;
+				}
+				found = true;
+				add(file, line, lineNumber, lineOffset, partial, overlap);
+			}
+
+			/**
+			 * Search from the current position.
+			 *
+			 * @return false if the walker was suspended before reaching the end of the file.
+			 */
+			boolean run(IProgressMonitor mon) throws Exception {
+				return scanner!=null ? searchBytes(mon) : searchChars(mon);
+			}
 
-					boolean found = query.matchItem(line);
-					if (found) {
-						LineItem lineItem = new LineItem(f, line, lineIndex, offset);
-						add(lineItem);
+			private boolean searchBytes(IProgressMonitor mon) throws Exception {
+				//The query may have become more specific since we were suspended. Any line matching it
+				// still contains the old literal, so the old one is fine if there's no new one.
+				ByteLiteralMatcher current = query.getByteMatcher(charset);
+				if (current!=null) {
+					literal = current;
+				}
+				while (scanner.find(literal, mon)) {
+					if (checkCanceled(mon)) {
+						return true;
+					}
+					String line = scanner.getLine();
+					if (query.matchItem(line)) {
+						matched(line, scanner.getLineNumber(), scanner.getLastLineOffset(), scanner.isPartialLine());
+					}
+					if (isSuspended()) {
+						return false;
+					}
+				}
+				if (!checkCanceled(mon)) {
+					//All bytes were read, so the filter is complete.
+					if (bloom!=null) {
+						bloom.commit();
 					}
+					searchedFiltered();
+				}
+				return true;
+			}
 
-					lineIndex++;
+			private void searchedFiltered() {
+				if (filtered) {
+					bloomFilters.searched(found);
 				}
-			} catch (Exception e) {
-			} finally {
-				currentFile = null;
-				if (lr != null) {
-					lr.close();
+			}
+
+			private boolean searchChars(IProgressMonitor mon) throws Exception {
+				CharSequence line = null;
+				while ((line = reader.nextLine()) != null) {
+					if (checkCanceled(mon)) {
+						return true;
+					}
+
+					if (query.matchItem(line)) {
+						matched(line, reader.getLineNumber(), reader.getLastLineOffset(), reader.isPartialLine());
+					}
+					if (indexer!=null) {
+						indexer.addLine(line);
+					}
+					if (isSuspended()) {
+						return false;
+					}
 				}
+				if (indexer!=null) {
+					//Only when the whole file was read. Otherwise the index would be missing some trigrams.
+					indexer.commit();
+				}
+				searchedFiltered();
+				return true;
+			}
+
+			@Override
+			public void close() {
+				if (scanner!=null) {
+					scanner.close();
+				}
+				if (reader!=null) {
+					reader.close();
+				}
+			}
+		}
+
+		/**
+		 * A matching line that isn't reported yet.
+		 */
+		private final class PendingLine {
+			final String text;
+			final int lineNumber;
+			final int lineOffset;
+			final boolean partial;
+			final int overlap;
+			PendingLine(String text, int lineNumber, int lineOffset, boolean partial, int overlap) {
+				this.text = text;
+				this.lineNumber = lineNumber;
+				this.lineOffset = lineOffset;
+				this.partial = partial;
+				this.overlap = overlap;
 			}
 		}
 
@@ -181,8 +655,9 @@ public class QuickTextSearcher {
 
 		@Override
 		public void resume() {
-			//Only resume if we don't already exceed the maxResult limit.
-			if (matches.size()<maxResults) {
+			//Only resume if we don't already exceed the maxResult limit. A ranked search keeps going
+			// until all files are searched.
+			if (ranker!=null || matches.size()<maxResults) {
 				super.resume();
 			}
 		}
@@ -192,8 +667,7 @@ public class QuickTextSearcher {
 		}
 
 		public void requestMoreResults() {
-			int currentSize = matches.size();
-			maxResults = Math.max(maxResults, currentSize + currentSize/10);
+			growMaxResults();
 			resume();
 		}
 
@@ -220,9 +694,18 @@ public class QuickTextSearcher {
 			QuickTextQuery nq = newQuery; //Copy into local variable to avoid
 										  // problems if another thread changes newQuery while we
 										  // are still mucking with it.
-			if (!forceRefresh && query.isSubFilter(nq)) {
+			boolean incremental = !forceRefresh && !dropped && query.isSubFilter(nq);
+			if (!forceRefresh && !dropped) {
+				saveHistory(incremental);
+			}
+			if (incremental) {
+				//Files searched part way hold on to which of the groups were found. That is only of
+				// use when neither query has more than one group.
+				boolean restartCheckpointed = query.getGroupCount()>1 || nq.getGroupCount()>1;
+				query = nq;
+				performIncrementalUpdate(monitor, restartCheckpointed);
+			} else if (!forceRefresh && performRestore(nq)) {
 				query = nq;
-				performIncrementalUpdate(monitor);
 			} else {
 				query = nq;
 				forceRefresh = false;
@@ -231,25 +714,136 @@ public class QuickTextSearcher {
 			return monitor.isCanceled()?Status.CANCEL_STATUS:Status.OK_STATUS;
 		}
 
-		private void performIncrementalUpdate(IProgressMonitor mon) {
+		/**
+		 * @param restartCheckpointed Whether files that were searched part way should be searched
+		 *     again from the start, rather than continue from their checkpoint.
+		 */
+		private void performIncrementalUpdate(IProgressMonitor mon, boolean restartCheckpointed) {
+			Set<IFile> restarted = Collections.emptySet();
+			if (restartCheckpointed) {
+				//The files are still in the walker's queue.
+				restarted = walker.getCheckpointedFiles();
+				walker.discardCheckpoints();
+			}
 			Iterator<LineItem> items = matches.iterator();
 			while (items.hasNext() && !mon.isCanceled()) {
 
 				LineItem item = items.next();
-				if (query.matchItem(item)) {
+				if (restarted.contains(item.getFile())) {
+					items.remove();
+					requestor.revoke(item);
+				} else if (query.matchItem(item)) {
 					//Match still valid but may need updating highlighted text in the UI:
 					requestor.update(item);
 				} else {
+					if (matches.isTruncated(item)) {
+						//The rest of the line may still match.
+						walker.revisit(item.getFile());
+					}
 					items.remove();
 					requestor.revoke(item);
 				}
 			}
+			if (query.getGroupCount()>1 && !mon.isCanceled()) {
+				removeIncompleteFiles();
+			}
+			rescore();
 			if (!mon.isCanceled()) {
 				//Resume searching remaining files, if any.
 				walker.resume();
 			}
 		}
 
+		/**
+		 * Remove the matches of files that no longer have a match for every group of the query. Any
+		 * line of such a file that matches one of the groups also matched the old query, so it is
+		 * among the matches already. Unless it is only part of a truncated match, in which case the
+		 * file is searched again.
+		 */
+		private void removeIncompleteFiles() {
+			int groups = query.getGroupCount();
+			Map<IFile, boolean[]> groupsFound = new HashMap<IFile, boolean[]>();
+			Set<IFile> truncated = new HashSet<IFile>();
+			for (LineItem item : matches) {
+				boolean[] found = groupsFound.computeIfAbsent(item.getFile(), f -> new boolean[groups]);
+				String text = item.getText();
+				for (int g = query.matchGroup(text, 0); g>=0; g = query.matchGroup(text, g+1)) {
+					found[g] = true;
+				}
+				if (matches.isTruncated(item)) {
+					truncated.add(item.getFile());
+				}
+			}
+			Iterator<LineItem> items = matches.iterator();
+			while (items.hasNext()) {
+				LineItem item = items.next();
+				boolean[] found = groupsFound.get(item.getFile());
+				boolean complete = true;
+				for (boolean f : found) {
+					complete &= f;
+				}
+				if (!complete) {
+					items.remove();
+					requestor.revoke(item);
+					if (truncated.remove(item.getFile())) {
+						walker.revisit(item.getFile());
+					}
+				}
+			}
+		}
+
+		/**
+		 * Remember the current query and how far the search for it got, so we can come back to it.
+		 *
+		 * @param keepSearching Whether the search will carry on from the current state, in which case
+		 *      the history needs its own copy of it.
+		 */
+		private void saveHistory(boolean keepSearching) {
+			if (walker==null || query.isTrivial()) {
+				return;
+			}
+			//Files suspended part way through will be searched again from the start, so forget what
+			// was found in them so far.
+			MatchStore saved = matches.copy();
+			saved.removeFiles(walker.getCheckpointedFiles());
+			Map<IFile, Long> savedSeen = keepSearching ? new HashMap<IFile, Long>(seen) : seen;
+			history.add(new QueryHistory.Entry(query, searchedPathMatcher, saved, walker.getSnapshot(), savedSeen));
+		}
+
+		/**
+		 * Go back to the state of a query from the history, if it is there. Results from files that
+		 * changed since are dropped, and those files are searched again.
+		 *
+		 * @return false if the query isn't in the history.
+		 */
+		private boolean performRestore(QuickTextQuery nq) {
+			QueryHistory.Entry entry = history.take(nq, pathMatcher);
+			if (entry==null || walker==null) {
+				return false;
+			}
+			Set<IFile> changed = entry.getChangedFiles();
+			matches.clear();
+			requestor.clear();
+			walker.cancel();
+			entry.matches.removeFiles(changed);
+			for (LineItem item : matches.addAll(entry.matches)) {
+				requestor.add(item);
+			}
+			seen = new ConcurrentHashMap<IFile, Long>(entry.seen);
+			List<IResource> extra = new ArrayList<IResource>(entry.getAddedResources());
+			for (IFile f : changed) {
+				seen.remove(f);
+				if (f.isAccessible()) {
+					extra.add(f);
+				}
+			}
+			rescore();
+			searchedPathMatcher = entry.pathMatcher;
+			walker.restore(entry.work, extra);
+			walker.resume();
+			return true;
+		}
+
 		private void performRestart(IProgressMonitor mon) {
 			//walker may be null if dialog got closed already before we managed to
 			// 'performRestart'.
@@ -258,6 +852,9 @@ public class QuickTextSearcher {
 				//know walker is not currently executing. so walker cancel should be instantenous
 				matches.clear();
 				requestor.clear();
+				rescore();
+				seen = new ConcurrentHashMap<IFile, Long>();
+				searchedPathMatcher = pathMatcher;
 				walker.cancel();
 				if (!query.isTrivial()) {
 					walker.init(); //Reinitialize the walker work queue to its starting state
@@ -268,13 +865,77 @@ public class QuickTextSearcher {
 
 	}
 
-	private void add(LineItem line) {
-		if (matches.add(line)) {
-			requestor.add(line);
-			if (matches.size() >= maxResults) {
-				walker.suspend();
+	/**
+	 * Rank the current matches for the current query from scratch.
+	 */
+	private void rescore() {
+		if (ranker!=null) {
+			synchronized (matches) {
+				ranker.rescore(query, matches);
+				dropped = false;
+			}
+		}
+	}
+
+	/**
+	 * @param partial Whether the line is only a window onto a very long line.
+	 * @param overlap Number of chars at the start of the window that were also in the previous window
+	 *    of the same line. Hits within those were already reported (or passed over) with that window.
+	 */
+	private void add(IFile file, CharSequence line, int lineNumber, int lineOffset, boolean partial, int overlap) {
+		//Only long lines are cut down to a window around the match.
+		int matchStart = 0;
+		if (overlap>0) {
+			matchStart = -1;
+			for (TextRange range : query.findAll(line.toString())) {
+				if (range.getOffset()+range.getLength()>overlap) {
+					matchStart = range.getOffset();
+					break;
+				}
+			}
+			if (matchStart<0) {
+				return;
+			}
+		} else if (line.length()>MatchStore.MAX_SNIPPET_LENGTH) {
+			TextRange range = query.findFirst(line);
+			if (range!=null) {
+				matchStart = range.getOffset();
+			}
+		}
+		double score = ranker!=null ? ranker.score(query, file, line) : 0;
+		LineItem item;
+		LineItem worst = null;
+		//Synchronized because, with a parallel walker, several files are searched at once.
+		synchronized (matches) {
+			if (ranker==null) {
+				item = matches.add(file, line, lineNumber, lineOffset, matchStart, partial);
+				if (item!=null && matches.size() >= maxResults) {
+					walker.suspend();
+				}
+			} else {
+				if (matches.size() >= maxResults && !ranker.beatsWorst(score)) {
+					dropped = true;
+					return;
+				}
+				item = matches.add(file, line, lineNumber, lineOffset, matchStart, partial);
+				if (item!=null) {
+					matches.setScore(item, score);
+					ranker.add(item, score);
+					if (matches.size() > maxResults) {
+						worst = ranker.removeWorst();
+						matches.remove(worst);
+						dropped = true;
+					}
+				}
 			}
 		}
+		//Outside the lock, since the requestor may block for a while when it falls behind.
+		if (item!=null) {
+			requestor.add(item);
+		}
+		if (worst!=null) {
+			requestor.revoke(worst);
+		}
 	}
 
 	public void setQuery(QuickTextQuery newQuery, boolean force) {
@@ -282,7 +943,10 @@ public class QuickTextSearcher {
 			return;
 		}
 		this.newQuery = newQuery;
-		this.forceRefresh = true;
+		if (force) {
+			//Otherwise the update job decides whether the new query can reuse the current matches.
+			this.forceRefresh = true;
+		}
 		scheduleIncrementalUpdate();
 	}
 	
@@ -321,18 +985,65 @@ public class QuickTextSearcher {
 	}
 
 	public void requestMoreResults() {
-		if (walker!=null && !walker.isDone()) {
+		if (walker==null) {
+			return;
+		}
+		boolean restart;
+		synchronized (matches) {
+			restart = dropped;
+		}
+		if (restart) {
+			//The dropped matches are in files that were searched already, so searching on won't bring
+			// them back. Search again from the start, keeping more of them this time.
+			growMaxResults();
+			setQuery(getQuery(), true);
+		} else if (!walker.isDone()) {
 			walker.requestMoreResults();
 		}
 	}
 
+	private void growMaxResults() {
+		int currentSize = matches.size();
+		maxResults = Math.max(maxResults, currentSize + currentSize/10);
+	}
+
 	public void cancel() {
+		history.clear();
+		requestor.dispose();
 		if (walker!=null) {
 			walker.cancel();
+			walker.discardCheckpoints();
 			walker = null;
 		}
 	}
 
+	/**
+	 * @return The matches found so far. This is the searcher's own store, so it stays up-to-date as
+	 *    matches are added and revoked. It should not be modified.
+	 */
+	public MatchStore getMatches() {
+		return matches;
+	}
+
+	/**
+	 * @return Whether matches are ranked by relevance, see {@link #getRankedMatches()}.
+	 */
+	public boolean isRanked() {
+		return ranker!=null;
+	}
+
+	/**
+	 * @return The matches found so far, best first, or null if matches aren't ranked.
+	 */
+	public LineItem[] getRankedMatches() {
+		if (ranker==null) {
+			return null;
+		}
+		synchronized (matches) {
+			return ranker.getRanked();
+		}
+	}
+
 	public IFile getCurrentFile() {
 		return currentFile;
 	}
@@ -10,11 +10,26 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.quicksearch.core;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
@@ -31,12 +46,24 @@ import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
  * to the resources to decide the ordering and completely ignore some resources.
  * <p>
  * The walker can also be paused and resumed.
+ * <p>
+ * Files can be visited by more than one thread at the same time (see {@link #setParallelism(int)}).
+ * All workers pull their work from the same priority queue, so higher priority resources
+ * are still visited first.
+ * <p>
+ * A subclass that is suspended part way through a file can save a checkpoint for the file
+ * (see {@link #saveCheckpoint(IFile, Closeable)}). The file is then visited again when the walker is
+ * resumed, and the visit can continue from the checkpoint.
+ * <p>
+ * Containers are expanded with an {@link IResourceProxyVisitor}, so that the priority function can
+ * ignore members by their name or derived flag before a handle is created for them (see
+ * {@link PriorityFunction#priority(IResourceProxy)}).
  * 
  * @author Kris De Volder
  */
 public abstract class ResourceWalker extends Job {
 	
-	private class QItem implements Comparable<QItem> {
+	private static class QItem implements Comparable<QItem> {
 		public final double priority;
 		public final IResource resource;
 		
@@ -50,40 +77,102 @@ public abstract class ResourceWalker extends Job {
 		}
 	}
 
+	/**
+	 * A sensible default for the number of threads used to visit files. We leave some room
+	 * for the UI and other jobs.
+	 */
+	public static final int DEFAULT_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors()/2);
+
+	/**
+	 * Pool of threads shared by all walkers to run 'helper' workers. The Job's own thread is
+	 * always used as one of the workers so a walker with parallelism 1 never uses this pool.
+	 * Idle threads are discarded by the pool automatically.
+	 */
+	private static final ExecutorService HELPERS = Executors.newCachedThreadPool(runnable -> {
+		Thread t = new Thread(runnable, "QuickSearch Worker");
+		t.setDaemon(true);
+		return t;
+	});
+
 	public ResourceWalker() {
 		super("QuickSearch");
 		init();
 	}
 
 	protected void init() {
-		queue = new PriorityQueue<ResourceWalker.QItem>();
-		queue.add(new QItem(0, ResourcesPlugin.getWorkspace().getRoot()));
+		List<Closeable> discarded;
+		synchronized (lock) {
+			queue = new PriorityQueue<ResourceWalker.QItem>();
+			queue.add(new QItem(0, ResourcesPlugin.getWorkspace().getRoot()));
+			busy = 0;
+			discarded = removeCheckpoints();
+		}
+		close(discarded);
 	}
 
+	/**
+	 * Protects the queue and the count of busy workers.
+	 */
+	private final Object lock = new Object();
+
 	/**
 	 * Queue of work to do. When all work is done this will be set to null. So it
 	 * can also be used to determine 'done' status. 
 	 */
-	private PriorityQueue<QItem> queue = null;
+	private volatile PriorityQueue<QItem> queue = null;
 	
 	/**
 	 * Setting this to true will cause the ResourceWalker to stop walking. If the walker is running
 	 * as a scheduled job, then this Job will terminate. However it is possible to 'resume' the
 	 * later since pending list of workitems will be retained. 
 	 */
-	private boolean suspend = false;
+	private volatile boolean suspend = false;
+
+	/**
+	 * Number of workers currently processing an item taken from the queue. When the queue is empty
+	 * but some workers are still busy, more work may yet be added by them (i.e. when they are
+	 * expanding a container).
+	 */
+	private int busy = 0;
+
+	/**
+	 * Checkpoints for files that were suspended part way through. Each of these files is also
+	 * in the queue.
+	 */
+	private final Map<IFile, Closeable> checkpoints = new HashMap<IFile, Closeable>();
+
+	/**
+	 * Number of threads used to process work items.
+	 */
+	private int parallelism = 1;
 
 	private PriorityFunction prioritFun = new DefaultPriorityFunction();
+
+	/**
+	 * Whether containers are expanded with a proxy visitor rather than {@link IContainer#members()}.
+	 */
+	private boolean proxyTraversal = true;
 	
 	public boolean isDone() {
 		return queue==null;
 	}
+
+	/**
+	 * @return true if the walker was asked to stop. A long running visit can check this and save a
+	 *    checkpoint to stop early.
+	 */
+	protected boolean isSuspended() {
+		return suspend;
+	}
 	
 	/**
 	 * Request that the walker stops walking at the next reasonable opportunity.
 	 */
 	public void suspend() {
-		this.suspend = true;
+		synchronized (lock) {
+			this.suspend = true;
+			lock.notifyAll(); //Wake up idle workers so they can stop as well.
+		}
 	}
 	
 	/**
@@ -106,36 +195,82 @@ public abstract class ResourceWalker extends Job {
 	
 	public IStatus run(IProgressMonitor monitor) {
 		//TODO: progress reporting?
-		while (!suspend && queue!=null) {
-			if (monitor.isCanceled()) {
-				queue = null;
-			} else {
-				IResource r = getWork();
-				if (r!=null) {
-					if (r instanceof IFile) {
-						IFile f = (IFile) r;
-						visit(f, monitor);
-					} else if (r instanceof IContainer) {
-						IContainer f = (IContainer) r;
-						if (f.isAccessible()) {
-							try {
+		List<Future<?>> helpers = new ArrayList<Future<?>>();
+		for (int i = 1; i < parallelism; i++) {
+			helpers.add(HELPERS.submit(() -> work(monitor)));
+		}
+		work(monitor);
+		//Wait for helpers. The Job must not finish before them since other jobs sharing our scheduling
+		// rule rely on the walker not running when they do.
+		for (Future<?> helper : helpers) {
+			try {
+				helper.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				QuickSearchActivator.log(e.getCause());
+			}
+		}
+		if (monitor.isCanceled()) {
+			return Status.CANCEL_STATUS;
+		} else {
+			return Status.OK_STATUS;
+		}
+	}
+
+	/**
+	 * The loop executed by each of the workers. Keeps taking work from the queue until the walker
+	 * is suspended, canceled or there's no more work.
+	 */
+	private void work(IProgressMonitor monitor) {
+		IResource r;
+		while ((r = getWork(monitor))!=null) {
+			try {
+				if (r instanceof IFile) {
+					IFile f = (IFile) r;
+					visit(f, monitor);
+				} else if (r instanceof IContainer) {
+					IContainer f = (IContainer) r;
+					if (f.isAccessible()) {
+						try {
+							if (proxyTraversal) {
+								//Not DEPTH_ONE: for the workspace root that only visits the root itself. The
+								// visitor doesn't go below the members anyway.
+								f.accept(new MemberVisitor(), IResource.DEPTH_INFINITE, IResource.NONE);
+							} else {
 								for (IResource child : f.members()) {
 									enqueue(child);
 								}
-							} catch (CoreException e) {
-								QuickSearchActivator.log(e);
 							}
+						} catch (CoreException e) {
+							QuickSearchActivator.log(e);
 						}
 					}
-				} else {
-					queue = null;
 				}
+			} finally {
+				doneWork();
 			}
 		}
-		if (monitor.isCanceled()) {
-			return Status.CANCEL_STATUS;
-		} else {
-			return Status.OK_STATUS;
+	}
+
+	/**
+	 * Adds the members of a container to the work queue. The container itself is visited first, and
+	 * skipped.
+	 */
+	private final class MemberVisitor implements IResourceProxyVisitor {
+		private boolean container = true;
+
+		@Override
+		public boolean visit(IResourceProxy proxy) {
+			if (container) {
+				container = false;
+				return true;
+			}
+			double p = priority(proxy);
+			if (p!=PriorityFunction.PRIORITY_IGNORE) {
+				enqueue(p, proxy.requestResource());
+			}
+			return false;
 		}
 	}
 
@@ -143,18 +278,172 @@ public abstract class ResourceWalker extends Job {
 	 * Add a resource to the work queue taking account the priority of the resource.
 	 */
 	private void enqueue(IResource child) {
-		PriorityQueue<QItem> q = queue;
-		if (q!=null) {
-			double p = priority(child);
-			if (p==PriorityFunction.PRIORITY_IGNORE) {
-				return;
+		double p = priority(child);
+		if (p==PriorityFunction.PRIORITY_IGNORE) {
+			return;
+		}
+		enqueue(p, child);
+	}
+
+	private void enqueue(double p, IResource child) {
+		synchronized (lock) {
+			if (queue!=null) {
+				queue.add(new QItem(p, child));
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Visit a resource (again), even if it was visited already. If the walker was done, it will
+	 * have work to do again. Like {@link #init()}, this doesn't resume the walker.
+	 */
+	public void revisit(IResource r) {
+		double p = priority(r);
+		if (p==PriorityFunction.PRIORITY_IGNORE) {
+			return;
+		}
+		synchronized (lock) {
+			if (queue==null) {
+				queue = new PriorityQueue<QItem>();
 			}
-			q.add(new QItem(p, child));
+			queue.add(new QItem(p, r));
+			lock.notifyAll();
 		}
 	}
 
 	protected abstract void visit(IFile r, IProgressMonitor m);
+
+	/**
+	 * Called by {@link #visit(IFile, IProgressMonitor)} to stop visiting a file before reaching its end.
+	 * The file is put back in the work queue, and the checkpoint is handed back by
+	 * {@link #takeCheckpoint(IFile)} when the file is visited again.
+	 * <p>
+	 * The walker owns the checkpoint from then on, and closes it if the walker is reinitialized or
+	 * canceled before the file is visited again.
+	 */
+	protected void saveCheckpoint(IFile file, Closeable checkpoint) {
+		double p = priority(file);
+		synchronized (lock) {
+			if (queue!=null && p!=PriorityFunction.PRIORITY_IGNORE) {
+				checkpoints.put(file, checkpoint);
+				queue.add(new QItem(p, file));
+				lock.notifyAll();
+				return;
+			}
+		}
+		close(checkpoint);
+	}
+
+	/**
+	 * Retrieves (and removes) the checkpoint saved for a file, if any.
+	 *
+	 * @return The checkpoint or null if the file should be visited from the start.
+	 */
+	protected Closeable takeCheckpoint(IFile file) {
+		synchronized (lock) {
+			return checkpoints.remove(file);
+		}
+	}
+
+	/**
+	 * Close and forget all saved checkpoints. This should be called when a walker is disposed of
+	 * without walking to the end, since checkpoints may hold on to open files.
+	 */
+	public void discardCheckpoints() {
+		List<Closeable> discarded;
+		synchronized (lock) {
+			discarded = removeCheckpoints();
+		}
+		close(discarded);
+	}
+
+	private List<Closeable> removeCheckpoints() {
+		List<Closeable> removed = new ArrayList<Closeable>(checkpoints.values());
+		checkpoints.clear();
+		return removed;
+	}
+
+	private static void close(List<Closeable> checkpoints) {
+		for (Closeable checkpoint : checkpoints) {
+			close(checkpoint);
+		}
+	}
+
+	private static void close(Closeable checkpoint) {
+		try {
+			checkpoint.close();
+		} catch (IOException e) {
+			//Ignore.
+		}
+	}
 	
+	/**
+	 * A copy of the work a walker has left to do. See {@link #getSnapshot()}.
+	 */
+	public static class Snapshot {
+		private final List<QItem> items;
+
+		private Snapshot(List<QItem> items) {
+			this.items = items;
+		}
+
+		/**
+		 * @return The number of resources still to be visited, not counting the contents of containers.
+		 */
+		public int size() {
+			return items==null ? 0 : items.size();
+		}
+	}
+
+	/**
+	 * Take a copy of the remaining work, so that the walk can be continued later from the same point
+	 * with {@link #restore(Snapshot, Collection)}. This should only be called while the walker is not
+	 * running.
+	 * <p>
+	 * Checkpoints are not part of the snapshot. Files with a checkpoint will be visited from the start
+	 * when the snapshot is restored.
+	 */
+	public Snapshot getSnapshot() {
+		synchronized (lock) {
+			return new Snapshot(queue==null ? null : new ArrayList<QItem>(queue));
+		}
+	}
+
+	/**
+	 * @return The files that were suspended part way through, and will be continued from a checkpoint.
+	 */
+	protected Set<IFile> getCheckpointedFiles() {
+		synchronized (lock) {
+			return new HashSet<IFile>(checkpoints.keySet());
+		}
+	}
+
+	/**
+	 * Replace the remaining work with a snapshot taken earlier, plus some extra resources to visit.
+	 * Any saved checkpoints are discarded. This should only be called while the walker is not
+	 * running. Like {@link #init()}, it doesn't resume the walker.
+	 */
+	public void restore(Snapshot snapshot, Collection<? extends IResource> extra) {
+		List<Closeable> discarded;
+		synchronized (lock) {
+			PriorityQueue<QItem> restored = new PriorityQueue<QItem>();
+			if (snapshot.items!=null) {
+				restored.addAll(snapshot.items);
+			}
+			for (IResource r : extra) {
+				double p = priority(r);
+				if (p!=PriorityFunction.PRIORITY_IGNORE) {
+					restored.add(new QItem(p, r));
+				}
+			}
+			queue = restored.isEmpty() ? null : restored;
+			busy = 0;
+			discarded = removeCheckpoints();
+		}
+		close(discarded);
+	}
+
 	/**
 	 * Assigns a priority to a given resource. This priority will affect the order in which 
 	 * resources get visited. Resources to be visited are tracked in a priority queue and
@@ -174,6 +463,10 @@ public abstract class ResourceWalker extends Job {
 		return prioritFun.priority(r);
 	}
 
+	final double priority(IResourceProxy proxy) {
+		return prioritFun.priority(proxy);
+	}
+
 	/**
 	 * Set the priority function to use to determine walking order. For the function to
 	 * take effect, it should be set before walking has started as the function is 
@@ -186,13 +479,74 @@ public abstract class ResourceWalker extends Job {
 		Assert.isNotNull(f, "PriorityFunction should never be null");
 		this.prioritFun = f;
 	}
-	
-	private IResource getWork() {
-		PriorityQueue<QItem> q = queue;
-		if (q!=null && !q.isEmpty()) {
-			return q.remove().resource;
+
+	/**
+	 * Set the number of threads used to visit resources. Takes effect the next time
+	 * the walker is (re)started or resumed.
+	 * <p>
+	 * Note that when parallelism is larger than 1, the {@link #visit(IFile, IProgressMonitor)}
+	 * method will be called concurrently from different threads.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Choose how containers are expanded: with a proxy visitor (the default) or with
+	 * {@link IContainer#members()}, which creates a handle for every member before asking the
+	 * priority function about it. Both visit resources in the same order.
+	 */
+	public void setProxyTraversal(boolean proxyTraversal) {
+		this.proxyTraversal = proxyTraversal;
+	}
+
+	/**
+	 * Take the highest priority item from the queue. If the queue is temporarily empty, because
+	 * other workers are still busy (and may add more work), then this waits for them.
+	 * 
+	 * @return A resource to process or null if the worker should stop.
+	 */
+	private IResource getWork(IProgressMonitor monitor) {
+		synchronized (lock) {
+			while (true) {
+				if (suspend || queue==null) {
+					return null;
+				}
+				if (monitor.isCanceled()) {
+					queue = null;
+					close(removeCheckpoints());
+					lock.notifyAll();
+					return null;
+				}
+				if (!queue.isEmpty()) {
+					busy++;
+					return queue.remove().resource;
+				}
+				if (busy==0) {
+					//Nothing left and no-one can add more work.
+					queue = null;
+					lock.notifyAll();
+					return null;
+				}
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+		}
+	}
+
+	private void doneWork() {
+		synchronized (lock) {
+			busy--;
+			lock.notifyAll();
 		}
-		return null;
 	}
 
 	
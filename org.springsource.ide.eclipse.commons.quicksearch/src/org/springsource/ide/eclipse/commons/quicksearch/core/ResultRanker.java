@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core;
+
+import java.util.Arrays;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IPath;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery.TextRange;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PriorityFunction;
+
+/**
+ * Scores matches by relevance and keeps track of the best K of them, so that a ranked search can keep
+ * scanning after it found K matches without keeping more than K. The score of a match adds up:
+ * <ul>
+ *   <li>the priority of its file, as given by the {@link PriorityFunction} that orders the search,</li>
+ *   <li>whether the line contains the query in the exact case, for case insensitive queries,</li>
+ *   <li>whether the match is a whole word,</li>
+ *   <li>how close to the start of the line the match is,</li>
+ *   <li>how close the file is to the file in the active editor.</li>
+ * </ul>
+ * The ranked matches are kept in a min-heap, so the worst one can be found and dropped in O(log K) time when
+ * a better one comes along. Matches with the same score are ranked in the order they were added.
+ * <p>
+ * This class is not thread safe. The searcher only uses it while holding the lock on its matches.
+ */
+public class ResultRanker {
+
+	private static final double PRIORITY_WEIGHT = 10;
+	private static final double EXACT_CASE_WEIGHT = 4;
+	private static final double WHOLE_WORD_WEIGHT = 3;
+	private static final double POSITION_WEIGHT = 2;
+	private static final double SAME_FILE_WEIGHT = 6;
+	private static final double SAME_FOLDER_WEIGHT = 4;
+	private static final double SAME_PROJECT_WEIGHT = 2;
+
+	/**
+	 * File priorities are capped at this, so that {@link PriorityFunction#PRIORITY_HIGHEST} doesn't
+	 * drown out everything else.
+	 */
+	private static final double MAX_PRIORITY = 3*PriorityFunction.PRIORITY_INTERESTING;
+
+	private final PriorityFunction priorities;
+	private final IPath activePath;
+
+	//The heap. The worst match is at index 0.
+	private LineItem[] items = new LineItem[16];
+	private double[] scores = new double[16];
+	private long[] order = new long[16];
+	private int size = 0;
+	private long added = 0;
+
+	/**
+	 * @param activeFile The file in the active editor, or null.
+	 */
+	public ResultRanker(PriorityFunction priorities, IFile activeFile) {
+		this.priorities = priorities;
+		this.activePath = activeFile!=null ? activeFile.getFullPath() : null;
+	}
+
+	/**
+	 * Compute the score of a line that matches a query.
+	 */
+	public double score(QuickTextQuery query, IFile file, CharSequence line) {
+		double score = 0;
+		double priority = priorities.priority(file);
+		if (priority>PriorityFunction.PRIORITY_DEFAULT) {
+			score += PRIORITY_WEIGHT * Math.min(priority, MAX_PRIORITY) / PriorityFunction.PRIORITY_INTERESTING;
+		}
+		if (!query.isCaseSensitive() && containsExactCase(query, line)) {
+			score += EXACT_CASE_WEIGHT;
+		}
+		TextRange match = query.findFirst(line);
+		if (match!=null) {
+			int start = match.getOffset();
+			int end = start + match.getLength();
+			if (isWordBoundary(line, start) && isWordBoundary(line, end)) {
+				score += WHOLE_WORD_WEIGHT;
+			}
+			int indent = 0;
+			while (indent<start && Character.isWhitespace(line.charAt(indent))) {
+				indent++;
+			}
+			score += POSITION_WEIGHT / (1 + (start-indent)/40.0);
+		}
+		if (activePath!=null) {
+			IPath path = file.getFullPath();
+			int common = path.matchingFirstSegments(activePath);
+			if (common==path.segmentCount() && common==activePath.segmentCount()) {
+				score += SAME_FILE_WEIGHT;
+			} else if (common==path.segmentCount()-1 && common==activePath.segmentCount()-1) {
+				score += SAME_FOLDER_WEIGHT;
+			} else if (common>=1) {
+				score += SAME_PROJECT_WEIGHT;
+			}
+		}
+		return score;
+	}
+
+	private static boolean containsExactCase(QuickTextQuery query, CharSequence line) {
+		String[] literals = query.getRequiredLiterals();
+		if (literals.length==0) {
+			return false;
+		}
+		String text = line.toString();
+		for (String literal : literals) {
+			if (!text.contains(literal)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the chars on either side of a position aren't both part of the same identifier.
+	 */
+	private static boolean isWordBoundary(CharSequence line, int pos) {
+		return pos==0 || pos==line.length()
+				|| !Character.isJavaIdentifierPart(line.charAt(pos-1))
+				|| !Character.isJavaIdentifierPart(line.charAt(pos));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Whether a match with the given score would rank above the worst ranked match, if any.
+	 */
+	public boolean beatsWorst(double score) {
+		return size==0 || score>scores[0];
+	}
+
+	public void add(LineItem item, double score) {
+		if (size==items.length) {
+			int capacity = size + (size>>1);
+			items = Arrays.copyOf(items, capacity);
+			scores = Arrays.copyOf(scores, capacity);
+			order = Arrays.copyOf(order, capacity);
+		}
+		set(size, item, score, added++);
+		siftUp(size++);
+	}
+
+	/**
+	 * Remove the worst ranked match.
+	 *
+	 * @return The match that was removed, or null if there were none.
+	 */
+	public LineItem removeWorst() {
+		if (size==0) {
+			return null;
+		}
+		LineItem worst = items[0];
+		size--;
+		set(0, items[size], scores[size], order[size]);
+		items[size] = null;
+		siftDown(0);
+		return worst;
+	}
+
+	public void clear() {
+		Arrays.fill(items, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Rank a set of matches from scratch, e.g. after the query changed. Matches that have their whole line
+	 * are scored again for the query. The text of a truncated match is only part of the line that was
+	 * scored when it was found, which would score differently, so it keeps the score stored with it.
+	 */
+	public void rescore(QuickTextQuery query, MatchStore matches) {
+		clear();
+		for (LineItem item : matches) {
+			double score;
+			if (matches.isTruncated(item)) {
+				score = matches.getScore(item);
+			} else {
+				score = score(query, item.getFile(), item.getText());
+				matches.setScore(item, score);
+			}
+			add(item, score);
+		}
+	}
+
+	/**
+	 * @return The ranked matches, best first.
+	 */
+	public LineItem[] getRanked() {
+		Integer[] byRank = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			byRank[i] = i;
+		}
+		Arrays.sort(byRank, (a, b) -> worse(b, a) ? -1 : worse(a, b) ? 1 : 0);
+		LineItem[] ranked = new LineItem[size];
+		for (int i = 0; i < size; i++) {
+			ranked[i] = items[byRank[i]];
+		}
+		return ranked;
+	}
+
+	/**
+	 * @return Whether the match at index a ranks below the one at index b.
+	 */
+	private boolean worse(int a, int b) {
+		return scores[a]<scores[b] || (scores[a]==scores[b] && order[a]>order[b]);
+	}
+
+	private void set(int i, LineItem item, double score, long order) {
+		this.items[i] = item;
+		this.scores[i] = score;
+		this.order[i] = order;
+	}
+
+	private void swap(int i, int j) {
+		LineItem item = items[i];
+		double score = scores[i];
+		long order = this.order[i];
+		set(i, items[j], scores[j], this.order[j]);
+		set(j, item, score, order);
+	}
+
+	private void siftUp(int i) {
+		while (i>0) {
+			int parent = (i-1)>>1;
+			if (!worse(i, parent)) {
+				return;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int child = 2*i+1;
+			if (child>=size) {
+				return;
+			}
+			if (child+1<size && worse(child+1, child)) {
+				child++;
+			}
+			if (!worse(child, i)) {
+				return;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+}
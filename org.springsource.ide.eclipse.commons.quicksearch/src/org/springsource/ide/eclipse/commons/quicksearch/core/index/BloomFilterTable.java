@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.util.ByteLineScanner;
+
+/**
+ * A small Bloom filter per file, recording which byte trigrams occur in it. This is a lighter alternative
+ * to the {@link TrigramIndex}: it only lives in memory and takes at most 1 KB per file, usually much less,
+ * but it still lets the searcher skip files that can't contain the current query without opening them.
+ * <p>
+ * Filters are built from the raw bytes of a file while it is being searched and are only valid for the
+ * modification stamp the file had at that time. ASCII letters are folded to lower case, so the same filter
+ * works for case sensitive and case insensitive queries. Only trigrams of three ASCII characters are taken
+ * from the query. Those are encoded the same way in all charsets that can be searched as bytes, and both
+ * matchers only fold the case of ASCII letters.
+ * <p>
+ * A filter starts at {@link #MAX_BITS} bits and is folded in half while it stays at most half full, so
+ * files with only a few distinct trigrams use less memory. At half full, a single trigram that isn't in
+ * the file passes the filter one time in eight. {@link #MAX_BITS} is enough for about 1900 distinct
+ * trigrams at that rate, which covers most source files. Filters of large files that end up (nearly) full
+ * are not kept at all, since they would never rule anything out.
+ */
+public class BloomFilterTable implements IndexMaintainer.Participant {
+
+	private static final boolean DEBUG = false;
+
+	private static void debug(String string) {
+		if (DEBUG) {
+			System.out.println(string);
+		}
+	}
+
+	static final int MAX_BITS = 8192;
+	private static final int MIN_BITS = 64;
+
+	/**
+	 * Number of bits set per trigram.
+	 */
+	private static final int HASHES = 3;
+
+	private static final byte[] ASCII_LOWER = new byte[256];
+	static {
+		for (int b = 0; b < 256; b++) {
+			ASCII_LOWER[b] = (byte) ((b>='A' && b<='Z') ? b + ('a'-'A') : b);
+		}
+	}
+
+	private static class Filter {
+		final long stamp;
+		final long[] bits;
+		Filter(long stamp, long[] bits) {
+			this.stamp = stamp;
+			this.bits = bits;
+		}
+		boolean mayContain(int[] keys) {
+			int mask = bits.length*64 - 1;
+			for (int key : keys) {
+				int h1 = key * 0x9E3779B1;
+				int h2 = Integer.rotateLeft(key * 0x85EBCA6B, 16) | 1;
+				for (int i = 0; i < HASHES; i++) {
+					int bit = (h1 + i*h2) & mask;
+					if ((bits[bit>>>6] & (1L<<bit))==0) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	}
+
+	private final Map<String, Filter> filters = new HashMap<String, Filter>();
+
+	//Statistics, for debugging.
+	private long skipped = 0; //Files ruled out by their filter.
+	private long matched = 0; //Files that passed their filter and had matches.
+	private long falsePositives = 0; //Files that passed their filter, but had no matches.
+
+	private static String pathOf(IFile file) {
+		return file.getFullPath().toString();
+	}
+
+	/**
+	 * Compute the trigram keys to look for in the filters for a given query.
+	 *
+	 * @return The keys, which may be empty if the query has no suitable literals. Any text matching
+	 *   the query contains all of these.
+	 */
+	public static int[] keysFor(QuickTextQuery query) {
+		int[] keys = new int[0];
+		int count = 0;
+		for (String literal : query.getRequiredLiterals()) {
+			for (int i = 0; i+2 < literal.length(); i++) {
+				char a = literal.charAt(i), b = literal.charAt(i+1), c = literal.charAt(i+2);
+				if (a<0x80 && b<0x80 && c<0x80) {
+					if (count==keys.length) {
+						keys = Arrays.copyOf(keys, Math.max(8, count*2));
+					}
+					keys[count++] = key(ASCII_LOWER[a], ASCII_LOWER[b], ASCII_LOWER[c]);
+				}
+			}
+		}
+		return Arrays.copyOf(keys, count);
+	}
+
+	private static int key(byte a, byte b, byte c) {
+		return ((a & 0xFF)<<16) | ((b & 0xFF)<<8) | (c & 0xFF);
+	}
+
+	/**
+	 * @return true if there is a filter for the current contents of the file.
+	 */
+	public synchronized boolean hasFilter(IFile file) {
+		Filter f = filters.get(pathOf(file));
+		return f!=null && f.stamp==file.getModificationStamp();
+	}
+
+	/**
+	 * @return false if the file definitely does not contain text matching a query with the given keys.
+	 */
+	public synchronized boolean mayContain(IFile file, int[] keys) {
+		if (keys.length==0) {
+			return true;
+		}
+		Filter f = filters.get(pathOf(file));
+		if (f==null || f.stamp!=file.getModificationStamp() || f.mayContain(keys)) {
+			return true;
+		}
+		skipped++;
+		return false;
+	}
+
+	/**
+	 * Record whether a file that passed its filter actually had matches. Only used for
+	 * statistics.
+	 */
+	public synchronized void searched(boolean found) {
+		if (found) {
+			matched++;
+		} else {
+			falsePositives++;
+		}
+		if (DEBUG && (matched+falsePositives)%1000==0) {
+			debug(toString());
+		}
+	}
+
+	/**
+	 * Start building a filter for a file. All bytes of the file should be fed to the builder, in order,
+	 * before committing it.
+	 */
+	public Builder startFile(IFile file) {
+		return new Builder(file);
+	}
+
+	public class Builder implements ByteLineScanner.ContentListener {
+
+		private final IFile file;
+		private final long stamp;
+		private final long[] bits = new long[MAX_BITS/64];
+		private int last = 0; //Last two (folded) bytes seen, in the low 16 bits.
+		private int count = 0; //Number of bytes seen, up to 2.
+
+		private Builder(IFile file) {
+			this.file = file;
+			//Important to get this before we start reading the contents. If the file changes
+			//while we are reading it, then the filter will just look 'stale'.
+			this.stamp = file.getModificationStamp();
+		}
+
+		@Override
+		public void bytesRead(byte[] bytes, int offset, int length) {
+			final long[] bits = this.bits;
+			final int mask = MAX_BITS - 1;
+			int last = this.last;
+			int end = offset + length;
+			int i = offset;
+			//The first two bytes of the file don't complete a trigram.
+			for (; count<2 && i<end; i++, count++) {
+				last = ((last<<8) | (ASCII_LOWER[bytes[i] & 0xFF] & 0xFF)) & 0xFFFF;
+			}
+			for (; i < end; i++) {
+				int key = (last<<8) | (ASCII_LOWER[bytes[i] & 0xFF] & 0xFF);
+				last = key & 0xFFFF;
+				int h1 = key * 0x9E3779B1;
+				int h2 = Integer.rotateLeft(key * 0x85EBCA6B, 16) | 1;
+				for (int h = 0; h < HASHES; h++) {
+					int bit = (h1 + h*h2) & mask;
+					bits[bit>>>6] |= 1L<<bit;
+				}
+			}
+			this.last = last;
+		}
+
+		/**
+		 * Add the filter to the table. Should only be called when all bytes of the file were added.
+		 */
+		public void commit() {
+			long[] folded = bits;
+			int setBits = bitCount(folded);
+			if (setBits*10 > MAX_BITS*9) {
+				//Too full to ever rule anything out.
+				putFilter(file, null);
+				return;
+			}
+			//Fold while the result is at most half full. Since bit indexes are hash & (size-1),
+			// or-ing the two halves gives exactly the filter we'd have built at half the size.
+			while (folded.length*64 > MIN_BITS) {
+				int half = folded.length/2;
+				long[] smaller = new long[half];
+				for (int i = 0; i < half; i++) {
+					smaller[i] = folded[i] | folded[i+half];
+				}
+				if (bitCount(smaller)*2 > half*64) {
+					break;
+				}
+				folded = smaller;
+			}
+			putFilter(file, new Filter(stamp, folded));
+		}
+	}
+
+	private static int bitCount(long[] bits) {
+		int count = 0;
+		for (long word : bits) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	private synchronized void putFilter(IFile file, Filter filter) {
+		if (filter==null) {
+			filters.remove(pathOf(file));
+		} else {
+			filters.put(pathOf(file), filter);
+		}
+	}
+
+	public synchronized int getFileCount() {
+		return filters.size();
+	}
+
+	/**
+	 * @return The approximate memory used by the filters themselves, in bytes.
+	 */
+	public synchronized long getFilterBytes() {
+		long bytes = 0;
+		for (Filter f : filters.values()) {
+			bytes += f.bits.length*8;
+		}
+		return bytes;
+	}
+
+	@Override
+	public synchronized void fileChanged(IFile file, IProgressMonitor mon) {
+		filters.remove(pathOf(file));
+	}
+
+	@Override
+	public synchronized void removed(IPath fullPath) {
+		String path = fullPath.toString();
+		String prefix = path.endsWith("/") ? path : path + "/";
+		Iterator<String> paths = filters.keySet().iterator();
+		while (paths.hasNext()) {
+			String p = paths.next();
+			if (p.equals(path) || p.startsWith(prefix)) {
+				paths.remove();
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		long negatives = skipped + falsePositives;
+		return "BloomFilterTable("+filters.size()+" files, "+getFilterBytes()/1024+" KB, skipped: "+skipped
+				+", matched: "+matched+", false positives: "+falsePositives
+				+", false positive rate: "+(negatives==0 ? "-" : (falsePositives*100/negatives)+"%")+")";
+	}
+
+}
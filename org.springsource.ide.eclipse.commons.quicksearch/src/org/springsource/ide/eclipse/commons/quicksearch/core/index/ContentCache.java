@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * A bounded cache of the raw contents of recently searched files. When a query is broadened (e.g. on
+ * backspace) the searcher has to restart, and this lets it rescan recently searched files from memory
+ * instead of reading them from disk again.
+ * <p>
+ * Entries are keyed by the file's full path and are only valid for the modification stamp the file had
+ * when it was read. The least recently used entries are evicted when the total size exceeds the
+ * memory budget. Files larger than a fraction of the budget are never cached, so a single large file
+ * can't flush everything else.
+ * <p>
+ * Raw bytes are cached rather than decoded text. They take about half the memory for mostly-ASCII
+ * text, and work for searching bytes as well as chars.
+ */
+public class ContentCache implements IndexMaintainer.Participant {
+
+	private static final boolean DEBUG = false;
+
+	private static void debug(String string) {
+		if (DEBUG) {
+			System.out.println(string);
+		}
+	}
+
+	/**
+	 * A single file may use at most this fraction of the budget.
+	 */
+	private static final int MAX_ENTRY_FRACTION = 16;
+
+	private static class CacheEntry {
+		final long stamp;
+		final byte[] contents;
+		CacheEntry(long stamp, byte[] contents) {
+			this.stamp = stamp;
+			this.contents = contents;
+		}
+	}
+
+	private final LinkedHashMap<IPath, CacheEntry> entries = new LinkedHashMap<IPath, CacheEntry>(256, 0.75f, true);
+
+	private long budget;
+	private long size = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param budget Maximum total size of cached contents in bytes.
+	 */
+	public ContentCache(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Change the memory budget. Entries are evicted right away if the cache is over the new budget.
+	 */
+	public synchronized void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	public synchronized long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return The cached contents of a file, or null if the contents are not cached for the given
+	 *    modification stamp.
+	 */
+	public synchronized byte[] get(IPath path, long stamp) {
+		CacheEntry e = entries.get(path);
+		if (e!=null && e.stamp==stamp) {
+			hits++;
+			return e.contents;
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Add the contents of a file to the cache, replacing older contents of the same file. Contents
+	 * larger than the maximum entry size are not cached.
+	 */
+	public synchronized void put(IPath path, long stamp, byte[] contents) {
+		CacheEntry old = entries.remove(path);
+		if (old!=null) {
+			size -= old.contents.length;
+		}
+		if (contents.length<=getMaxEntrySize()) {
+			entries.put(path, new CacheEntry(stamp, contents));
+			size += contents.length;
+			evict();
+		}
+	}
+
+	/**
+	 * Get the contents of a file, from the cache if possible. Otherwise the file is read and added to the
+	 * cache, unless it is too large to be cached.
+	 *
+	 * @return The contents, or null if the file is too large to be cached. The caller should then read
+	 *    the file itself.
+	 */
+	public byte[] getContents(IFile file) throws CoreException, IOException {
+		//Important to get this before reading the contents. If the file changes while we are reading it,
+		// the entry will just look stale.
+		long stamp = file.getModificationStamp();
+		byte[] contents = get(file.getFullPath(), stamp);
+		if (contents!=null) {
+			return contents;
+		}
+		return load(file, stamp);
+	}
+
+	/**
+	 * Read the contents of a file that was not found in the cache by {@link #get(IPath, long)}, and
+	 * add them to the cache, unless the file is too large to be cached.
+	 *
+	 * @param stamp The modification stamp of the file, taken before it was looked up in the cache.
+	 * @return The contents, or null if the file is too large to be cached.
+	 */
+	public byte[] load(IFile file, long stamp) throws CoreException, IOException {
+		byte[] contents;
+		int maxSize = (int) Math.min(getMaxEntrySize(), Integer.MAX_VALUE - 8);
+		IPath location = file.getLocation();
+		if (location!=null) {
+			File localFile = location.toFile();
+			if (localFile.length()>maxSize) {
+				return null;
+			}
+		}
+		contents = read(file, maxSize);
+		if (contents!=null) {
+			put(file.getFullPath(), stamp, contents);
+		}
+		return contents;
+	}
+
+	/**
+	 * Read all the bytes of a file, unless it has more than a given number of bytes.
+	 */
+	private static byte[] read(IFile file, int maxSize) throws CoreException, IOException {
+		InputStream in = file.getContents(true);
+		try {
+			byte[] buf = new byte[Math.min(maxSize + 1, 8*1024)];
+			int len = 0;
+			int read;
+			while ((read = in.read(buf, len, buf.length - len))>=0) {
+				len += read;
+				if (len>maxSize) {
+					return null;
+				}
+				if (len==buf.length) {
+					buf = Arrays.copyOf(buf, Math.min(maxSize + 1, buf.length*2));
+				}
+			}
+			return len==buf.length ? buf : Arrays.copyOf(buf, len);
+		} finally {
+			in.close();
+		}
+	}
+
+	private long getMaxEntrySize() {
+		return budget/MAX_ENTRY_FRACTION;
+	}
+
+	private void evict() {
+		long evicted = evictions;
+		Iterator<CacheEntry> lru = entries.values().iterator();
+		while (size>budget && lru.hasNext()) {
+			size -= lru.next().contents.length;
+			lru.remove();
+			evictions++;
+		}
+		if (evictions>evicted) {
+			debug(toString());
+		}
+	}
+
+	@Override
+	public synchronized void fileChanged(IFile file, IProgressMonitor mon) {
+		//The old contents are no longer useful, may as well free up the memory now.
+		CacheEntry e = entries.remove(file.getFullPath());
+		if (e!=null) {
+			size -= e.contents.length;
+		}
+	}
+
+	@Override
+	public synchronized void removed(IPath fullPath) {
+		Iterator<Entry<IPath, CacheEntry>> iter = entries.entrySet().iterator();
+		while (iter.hasNext()) {
+			Entry<IPath, CacheEntry> e = iter.next();
+			if (fullPath.isPrefixOf(e.getKey())) {
+				size -= e.getValue().contents.length;
+				iter.remove();
+			}
+		}
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ContentCache("+entries.size()+" files, "+size/1024+" of "+budget/1024+" KB, hits: "+hits
+				+", misses: "+misses+", evictions: "+evictions+")";
+	}
+
+}
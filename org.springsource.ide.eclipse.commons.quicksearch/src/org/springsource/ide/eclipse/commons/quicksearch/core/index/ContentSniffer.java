@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Detects binary files by looking at the first few KB of their contents, so the searcher can skip
+ * them without decoding and scanning them whole. This catches binaries that the ignored extensions
+ * miss, like files without an extension or with an unusual one.
+ * <p>
+ * A file looks binary if the start of it has a NUL byte, or if more than one in ten bytes are control
+ * characters or (for UTF-8 files) not part of a valid UTF-8 sequence. Files in UTF-16 or UTF-32 are
+ * never considered binary, since NUL bytes are normal in those.
+ * <p>
+ * Verdicts are kept per file and are only valid for the modification stamp the file had when it was
+ * inspected, so each version of a file is inspected at most once.
+ */
+public class ContentSniffer implements IndexMaintainer.Participant {
+
+	/**
+	 * Number of bytes at the start of a file that are inspected.
+	 */
+	public static final int SNIFF_LENGTH = 4*1024;
+
+	private static class Verdict {
+		final long stamp;
+		final boolean binary;
+		Verdict(long stamp, boolean binary) {
+			this.stamp = stamp;
+			this.binary = binary;
+		}
+	}
+
+	private final Map<IPath, Verdict> verdicts = new HashMap<IPath, Verdict>();
+
+	//Statistics, for debugging.
+	private long sniffed = 0;
+	private long binaries = 0;
+
+	/**
+	 * Determine whether a file looks binary, using the cached verdict for its current modification
+	 * stamp if there is one.
+	 *
+	 * @param contents All bytes of the file if these are at hand already, otherwise null and the start
+	 *    of the file is read.
+	 */
+	public boolean isBinary(IFile file, Charset charset, byte[] contents) throws CoreException, IOException {
+		//Important to get this before reading the contents. If the file changes while we are reading it,
+		// the verdict will just look stale.
+		long stamp = file.getModificationStamp();
+		IPath path = file.getFullPath();
+		synchronized (this) {
+			Verdict v = verdicts.get(path);
+			if (v!=null && v.stamp==stamp) {
+				return v.binary;
+			}
+		}
+		boolean binary;
+		if (contents!=null) {
+			binary = looksBinary(contents, 0, Math.min(contents.length, SNIFF_LENGTH), charset);
+		} else {
+			byte[] buf = new byte[SNIFF_LENGTH];
+			binary = looksBinary(buf, 0, readStart(file, buf), charset);
+		}
+		synchronized (this) {
+			verdicts.put(path, new Verdict(stamp, binary));
+			sniffed++;
+			if (binary) {
+				binaries++;
+			}
+		}
+		return binary;
+	}
+
+	/**
+	 * Read the start of a file into a buffer.
+	 *
+	 * @return The number of bytes read, less than the length of the buffer only if the file is shorter.
+	 */
+	private static int readStart(IFile file, byte[] buf) throws CoreException, IOException {
+		InputStream in = file.getContents(true);
+		try {
+			int len = 0;
+			int read;
+			while (len<buf.length && (read = in.read(buf, len, buf.length - len))>=0) {
+				len += read;
+			}
+			return len;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Determine whether some bytes from the start of a file look like binary data, rather than text in
+	 * a given charset.
+	 */
+	public static boolean looksBinary(byte[] bytes, int offset, int length, Charset charset) {
+		String name = charset.name();
+		if (name.startsWith("UTF-16") || name.startsWith("UTF-32")) {
+			return false;
+		}
+		boolean utf8 = "UTF-8".equals(name);
+		int suspicious = 0;
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			int b = bytes[i] & 0xFF;
+			if (b<0x20) {
+				if (b==0) {
+					return true;
+				}
+				if (b!='\t' && b!='\n' && b!='\r' && b!='\f' && b!=0x1B) {
+					suspicious++;
+				}
+			} else if (b>=0x80 && utf8) {
+				int continuations = b<0xC2 ? -1 : b<0xE0 ? 1 : b<0xF0 ? 2 : b<0xF5 ? 3 : -1;
+				if (continuations<0) {
+					suspicious++;
+				} else if (i+continuations>=end) {
+					break; //Cut off by the end of the inspected bytes.
+				} else {
+					int j = i+1;
+					while (j<=i+continuations && (bytes[j] & 0xC0)==0x80) {
+						j++;
+					}
+					if (j<=i+continuations) {
+						suspicious++;
+					} else {
+						i += continuations;
+					}
+				}
+			}
+		}
+		return suspicious*10 > length;
+	}
+
+	public synchronized int getFileCount() {
+		return verdicts.size();
+	}
+
+	@Override
+	public synchronized void fileChanged(IFile file, IProgressMonitor mon) {
+		//The file will be inspected again when it is next searched.
+		verdicts.remove(file.getFullPath());
+	}
+
+	@Override
+	public synchronized void removed(IPath fullPath) {
+		Iterator<IPath> paths = verdicts.keySet().iterator();
+		while (paths.hasNext()) {
+			if (fullPath.isPrefixOf(paths.next())) {
+				paths.remove();
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ContentSniffer("+verdicts.size()+" files, sniffed: "+sniffed+", binary: "+binaries+")";
+	}
+
+}
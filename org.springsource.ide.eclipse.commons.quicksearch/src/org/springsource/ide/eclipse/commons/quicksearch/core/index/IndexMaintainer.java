@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.DefaultPriorityFunction;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PriorityFunction;
+import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
+
+/**
+ * Keeps the data quick search stores about workspace files (such as the {@link TrigramIndex}) up-to-date
+ * as the workspace changes, so that it doesn't have to be rebuilt after every build or 'git pull'.
+ * <p>
+ * Resource deltas are only recorded by the listener. The actual work is done by a background job that
+ * runs shortly after the first change, so that bursts of changes are coalesced into a single batch.
+ * Only files that were added, changed or removed are passed on to the {@link Participant}s.
+ * <p>
+ * Project open/close/delete and added linked folders are treated as a change to the whole container.
+ */
+public class IndexMaintainer implements IResourceChangeListener {
+
+	private static final boolean DEBUG = false;
+
+	private static void debug(String string) {
+		if (DEBUG) {
+			System.out.println(string);
+		}
+	}
+
+	/**
+	 * How long to wait for more changes before processing a batch of changes (in milliseconds).
+	 */
+	private static final long COALESCE_DELAY = 500;
+
+	/**
+	 * Something that wants to be told about changed files.
+	 */
+	public interface Participant {
+
+		/**
+		 * Called from the maintenance job for every file that was added or whose contents changed.
+		 */
+		void fileChanged(IFile file, IProgressMonitor mon);
+
+		/**
+		 * Called from the maintenance job when a resource is gone or can no longer be accessed. The resource
+		 * may be a container (e.g. a closed project), in which case this applies to everything inside it.
+		 */
+		void removed(IPath fullPath);
+	}
+
+	private enum Change {
+		/** A file was added or changed */
+		FILE,
+		/** Everything under a container was added or changed */
+		CONTAINER,
+		/** A resource and everything under it is gone */
+		REMOVED
+	}
+
+	private final List<Participant> participants = new CopyOnWriteArrayList<Participant>();
+
+	/**
+	 * Changes waiting to be processed, in the order they happened. A path is moved to the end when it
+	 * changes again, so the last change to a path always wins. Protected by 'this'.
+	 */
+	private LinkedHashMap<IPath, Change> pending = new LinkedHashMap<IPath, Change>();
+
+	/**
+	 * The batch the job is currently working on, or null. Protected by 'this'.
+	 */
+	private Map<IPath, Change> processing = null;
+
+	private final Job job = new Job("Updating quick search index") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			return processPending(monitor);
+		}
+	};
+
+	public IndexMaintainer() {
+		job.setSystem(true);
+		job.setPriority(Job.DECORATE);
+	}
+
+	/**
+	 * Creates the function used to decide which files are worth processing. Called once per batch,
+	 * so that it reflects the current preferences.
+	 */
+	protected PriorityFunction createFilter() {
+		DefaultPriorityFunction filter = new DefaultPriorityFunction();
+		filter.configure(QuickSearchActivator.getDefault().getPreferences());
+		return filter;
+	}
+
+	public void addParticipant(Participant participant) {
+		participants.add(participant);
+	}
+
+	/**
+	 * Stop passing on changes to a participant. Changes that are being passed on already may still reach it.
+	 */
+	public void removeParticipant(Participant participant) {
+		participants.remove(participant);
+	}
+
+	/**
+	 * Start listening to workspace changes.
+	 */
+	public void start() {
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(this,
+				IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+	}
+
+	/**
+	 * Stop listening to workspace changes and wait for the job to stop. Pending changes are dropped.
+	 * Participants are expected to cope with that (e.g. by checking modification stamps).
+	 */
+	public void stop() {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+		synchronized (this) {
+			pending.clear();
+		}
+		job.cancel();
+		try {
+			job.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return true if all workspace changes seen so far have been processed.
+	 */
+	public synchronized boolean isReady() {
+		return pending.isEmpty() && processing==null;
+	}
+
+	/**
+	 * @return true if there are unprocessed changes to a file, or to a container the file is in. The data
+	 *    the participants have about such a file is out of date, and will be updated soon.
+	 */
+	public synchronized boolean isStale(IFile file) {
+		if (isReady()) {
+			return false;
+		}
+		for (IPath path = file.getFullPath(); path.segmentCount()>0; path = path.removeLastSegments(1)) {
+			if (pending.containsKey(path) || (processing!=null && processing.containsKey(path))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void resourceChanged(IResourceChangeEvent event) {
+		switch (event.getType()) {
+		case IResourceChangeEvent.PRE_CLOSE:
+		case IResourceChangeEvent.PRE_DELETE:
+			record(event.getResource().getFullPath(), Change.REMOVED);
+			break;
+		case IResourceChangeEvent.POST_CHANGE:
+			try {
+				event.getDelta().accept(deltaVisitor);
+			} catch (CoreException e) {
+				QuickSearchActivator.log(e);
+			}
+			break;
+		}
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return;
+			}
+		}
+		//Has no effect if the job is already waiting to run. Events arriving until it runs join the same batch.
+		job.schedule(COALESCE_DELAY);
+	}
+
+	private final IResourceDeltaVisitor deltaVisitor = new IResourceDeltaVisitor() {
+		@Override
+		public boolean visit(IResourceDelta delta) throws CoreException {
+			IResource r = delta.getResource();
+			int kind = delta.getKind();
+			int flags = delta.getFlags();
+			switch (r.getType()) {
+			case IResource.ROOT:
+				return true;
+			case IResource.FILE:
+				if (kind==IResourceDelta.REMOVED) {
+					record(r.getFullPath(), Change.REMOVED);
+				} else if (kind==IResourceDelta.ADDED || (flags & (IResourceDelta.CONTENT | IResourceDelta.REPLACED
+						| IResourceDelta.ENCODING | IResourceDelta.LOCAL_CHANGED))!=0) {
+					record(r.getFullPath(), Change.FILE);
+				}
+				return false;
+			default:
+				if (kind==IResourceDelta.REMOVED) {
+					record(r.getFullPath(), Change.REMOVED);
+					return false;
+				}
+				if (r.getType()==IResource.PROJECT && (flags & IResourceDelta.OPEN)!=0) {
+					record(r.getFullPath(), ((IProject) r).isOpen() ? Change.CONTAINER : Change.REMOVED);
+					return false;
+				}
+				if (kind==IResourceDelta.ADDED || (flags & (IResourceDelta.REPLACED | IResourceDelta.LOCAL_CHANGED))!=0) {
+					//New (linked) folder or project, or a linked folder that now points somewhere else.
+					record(r.getFullPath(), Change.CONTAINER);
+					return false;
+				}
+				return true;
+			}
+		}
+	};
+
+	private synchronized void record(IPath path, Change change) {
+		pending.remove(path);
+		pending.put(path, change);
+	}
+
+	private IStatus processPending(IProgressMonitor mon) {
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return Status.OK_STATUS;
+			}
+			processing = pending;
+			pending = new LinkedHashMap<IPath, Change>();
+		}
+		long start = System.currentTimeMillis();
+		int files = 0;
+		try {
+			Batch batch = new Batch(createFilter(), mon);
+			Iterator<Entry<IPath, Change>> changes = processing.entrySet().iterator();
+			while (changes.hasNext()) {
+				if (mon.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+				Entry<IPath, Change> change;
+				synchronized (this) {
+					change = changes.next();
+				}
+				try {
+					files += batch.process(change.getKey(), change.getValue());
+				} catch (CoreException e) {
+					QuickSearchActivator.log(e);
+				}
+				synchronized (this) {
+					changes.remove();
+				}
+			}
+		} catch (OperationCanceledException e) {
+			return Status.CANCEL_STATUS;
+		} finally {
+			synchronized (this) {
+				processing = null;
+			}
+			long duration = System.currentTimeMillis() - start;
+			debug("IndexMaintainer: processed "+files+" files in "+duration+" ms ("
+					+(files*1000L/Math.max(1, duration))+" files/s)");
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Processes a single batch of changes.
+	 */
+	private class Batch {
+
+		private final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		private final PriorityFunction filter;
+		private final IProgressMonitor mon;
+
+		/**
+		 * Containers whose contents are ignored by the filter, either directly or because one of their
+		 * parents is.
+		 */
+		private final Map<IContainer, Boolean> ignoredContainers = new HashMap<IContainer, Boolean>();
+
+		Batch(PriorityFunction filter, IProgressMonitor mon) {
+			this.filter = filter;
+			this.mon = mon;
+		}
+
+		/**
+		 * @return The number of files passed on to the participants.
+		 */
+		int process(IPath path, Change change) throws CoreException {
+			switch (change) {
+			case REMOVED:
+				removed(path);
+				IResource again = root.findMember(path);
+				if (again==null || !again.isAccessible()) {
+					return 0;
+				}
+				//Back already, e.g. a project that was closed and opened again in one operation. The
+				// delta for that has no changes, so the whole thing has to be crawled again.
+				return process(path, again.getType()==IResource.FILE ? Change.FILE : Change.CONTAINER);
+			case FILE:
+				IFile file = root.getFile(path);
+				if (!file.exists()) {
+					removed(path);
+				} else if (file.isAccessible() && !isIgnored(file)) {
+					fileChanged(file);
+					return 1;
+				}
+				return 0;
+			default:
+				IResource container = root.findMember(path);
+				if (!(container instanceof IContainer)) {
+					removed(path);
+					return 0;
+				}
+				if (isIgnored(container)) {
+					return 0;
+				}
+				final List<IFile> files = new ArrayList<IFile>();
+				container.accept(new IResourceProxyVisitor() {
+					@Override
+					public boolean visit(IResourceProxy proxy) throws CoreException {
+						if (mon.isCanceled()) {
+							throw new OperationCanceledException();
+						}
+						if (filter.priority(proxy)==PriorityFunction.PRIORITY_IGNORE) {
+							return false;
+						}
+						if (proxy.getType()==IResource.FILE) {
+							files.add((IFile) proxy.requestResource());
+						}
+						return true;
+					}
+				}, IResource.NONE);
+				for (IFile f : files) {
+					if (mon.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+					fileChanged(f);
+				}
+				return files.size();
+			}
+		}
+
+		private void fileChanged(IFile file) {
+			for (Participant p : participants) {
+				p.fileChanged(file, mon);
+			}
+		}
+
+		private void removed(IPath path) {
+			for (Participant p : participants) {
+				p.removed(path);
+			}
+		}
+
+		private boolean isIgnored(IResource r) {
+			if (r.getType()==IResource.ROOT) {
+				return false;
+			}
+			if (filter.priority(r)==PriorityFunction.PRIORITY_IGNORE) {
+				return true;
+			}
+			IContainer parent = r.getParent();
+			Boolean ignored = ignoredContainers.get(parent);
+			if (ignored==null) {
+				ignored = isIgnored(parent);
+				ignoredContainers.put(parent, ignored);
+			}
+			return ignored;
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A growable list of primitive ints. Used for posting lists so we don't
+ * have to box every file id.
+ */
+class IntList {
+
+	private int[] data;
+	private int size = 0;
+
+	public IntList() {
+		this(4);
+	}
+
+	public IntList(int initialCapacity) {
+		data = new int[Math.max(1, initialCapacity)];
+	}
+
+	public void add(int value) {
+		if (size==data.length) {
+			data = Arrays.copyOf(data, size*2);
+		}
+		data[size++] = value;
+	}
+
+	public int get(int i) {
+		return data[i];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Remove the values that are not in a set, keeping the others in order. Shrinks the list if most of
+	 * it was removed.
+	 */
+	public void retain(BitSet keep) {
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			if (keep.get(data[i])) {
+				data[kept++] = data[i];
+			}
+		}
+		size = kept;
+		if (size < data.length/4) {
+			data = Arrays.copyOf(data, Math.max(1, size));
+		}
+	}
+
+}
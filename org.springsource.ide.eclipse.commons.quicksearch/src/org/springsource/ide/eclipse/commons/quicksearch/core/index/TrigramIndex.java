@@ -0,0 +1,514 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.core.preferences.QuickSearchPreferences;
+import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
+import org.springsource.ide.eclipse.commons.quicksearch.util.LineReader;
+
+/**
+ * An index that maps trigrams (sequences of 3 consecutive characters on a line) onto the files
+ * containing them. It is used by the QuickTextSearcher to avoid opening files that can not
+ * possibly contain a match for the current query.
+ * <p>
+ * The index is filled up as a side effect of searching: every file that is searched completely
+ * gets (re)indexed. A file is only considered 'indexed' if its modification stamp is the same as when
+ * it was indexed. So the index never causes a file that has changed to be skipped.
+ * <p>
+ * When registered with an {@link IndexMaintainer}, files are also (re)indexed in the background as they
+ * are added or changed, and forgotten when they are removed.
+ * <p>
+ * Trigrams are indexed in lower case, so the same index works for case sensitive and case insensitive
+ * queries. To keep things compact, trigrams are hashed onto an int. Hash collisions can only cause
+ * files to be searched unnecessarily, they never cause matches to be missed.
+ * <p>
+ * When a file is reindexed it gets a new id and its old id becomes 'dead'. Once there are more dead
+ * ids than live ones, they are purged from the posting lists. Ids are not renumbered in memory, so
+ * {@link Candidates} taken before stay valid. Ids are compacted when the index is saved.
+ */
+public class TrigramIndex implements IndexMaintainer.Participant {
+
+	private static final boolean DEBUG = false;
+
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * Dead ids are not purged while there are fewer than this, so a small index isn't purged over
+	 * and over.
+	 */
+	private static final int MIN_DEAD_TO_PURGE = 1000;
+
+	private static void debug(String string) {
+		if (DEBUG) {
+			System.out.println(string);
+		}
+	}
+
+	private static class FileEntry {
+		final int id;
+		final long stamp;
+		FileEntry(int id, long stamp) {
+			this.id = id;
+			this.stamp = stamp;
+		}
+	}
+
+	/**
+	 * Where the index is persisted. May be null, in which case the index only lives in memory.
+	 */
+	private final File store;
+	private boolean loaded = false;
+
+	private Map<String, FileEntry> files = new HashMap<String, FileEntry>();
+	private Map<Integer, IntList> postings = new HashMap<Integer, IntList>();
+	private int nextId = 0;
+	private int deadCount = 0; //Ids of files that were reindexed or removed, still in the postings.
+
+	public TrigramIndex(File store) {
+		this.store = store;
+	}
+
+	/**
+	 * Computes the key for a trigram. Characters are assumed to be already converted to lower case.
+	 */
+	static int key(char a, char b, char c) {
+		if (a<0x400 && b<0x400 && c<0x400) {
+			//Most common case, these fit exactly into 30 bits.
+			return (a<<20) | (b<<10) | c;
+		}
+		int h = (a*31 + b)*31 + c;
+		return 0x40000000 | (h & 0x3FFFFFFF);
+	}
+
+	private static String pathOf(IFile file) {
+		return file.getFullPath().toString();
+	}
+
+	/**
+	 * @return true if the index contains up-to-date information about the file.
+	 */
+	public synchronized boolean isIndexed(IFile file) {
+		ensureLoaded();
+		FileEntry e = files.get(pathOf(file));
+		return e!=null && e.stamp==file.getModificationStamp();
+	}
+
+	/**
+	 * Forget about a file. E.g. because the file got deleted.
+	 */
+	public synchronized void remove(String fullPath) {
+		ensureLoaded();
+		if (files.remove(fullPath)!=null) {
+			died(1);
+		}
+	}
+
+	@Override
+	public synchronized void removed(IPath fullPath) {
+		ensureLoaded();
+		String path = fullPath.toString();
+		String prefix = path.endsWith("/") ? path : path + "/";
+		Iterator<String> paths = files.keySet().iterator();
+		int removed = 0;
+		while (paths.hasNext()) {
+			String p = paths.next();
+			if (p.equals(path) || p.startsWith(prefix)) {
+				paths.remove();
+				removed++;
+			}
+		}
+		died(removed);
+	}
+
+	/**
+	 * Account for ids that became dead, and purge them from the postings when they outnumber the live ones.
+	 */
+	private void died(int count) {
+		deadCount += count;
+		if (deadCount>=MIN_DEAD_TO_PURGE && deadCount>files.size()) {
+			purgeDeadIds();
+		}
+	}
+
+	private void purgeDeadIds() {
+		long start = System.currentTimeMillis();
+		BitSet live = new BitSet(nextId);
+		for (FileEntry e : files.values()) {
+			live.set(e.id);
+		}
+		Iterator<IntList> lists = postings.values().iterator();
+		while (lists.hasNext()) {
+			IntList list = lists.next();
+			list.retain(live);
+			if (list.size()==0) {
+				lists.remove();
+			}
+		}
+		debug("TrigramIndex: purged "+deadCount+" dead ids in "+(System.currentTimeMillis()-start)+" ms");
+		deadCount = 0;
+	}
+
+	@Override
+	public void fileChanged(IFile file, IProgressMonitor mon) {
+		if (isIndexed(file)) {
+			return;
+		}
+		Indexer indexer = startFile(file);
+		try {
+			QuickSearchPreferences prefs = QuickSearchActivator.getDefault().getPreferences();
+			LineReader reader = new LineReader(new InputStreamReader(file.getContents(true), file.getCharset()), prefs.getMaxLineLen());
+			//Overlapping windows still contain every trigram of the line.
+			reader.setLongLineWindows(prefs.isLongLineWindowsEnabled());
+			try {
+				CharSequence line;
+				while ((line = reader.nextLine())!=null) {
+					if (mon.isCanceled()) {
+						return;
+					}
+					indexer.addLine(line);
+				}
+			} finally {
+				reader.close();
+			}
+			indexer.commit();
+		} catch (IOException e) {
+			//Lines too long to search, and not searched in windows. The searcher will also give up on this file.
+		} catch (CoreException e) {
+			//Gone already, or out of sync with the file system. Will be indexed when it is next searched.
+		}
+	}
+
+	public synchronized int getFileCount() {
+		ensureLoaded();
+		return files.size();
+	}
+
+	/**
+	 * @return The number of ids of reindexed or removed files that are still in the postings.
+	 */
+	public synchronized int getDeadCount() {
+		return deadCount;
+	}
+
+	/**
+	 * Compute the set of files that may contain matches for a given query.
+	 *
+	 * @return Candidates or null if the index can't be used to narrow down the search
+	 *     (i.e. the query has no literals of at least 3 characters).
+	 */
+	public synchronized Candidates candidates(QuickTextQuery query) {
+		int[] keys = queryKeys(query);
+		if (keys.length==0) {
+			return null;
+		}
+		ensureLoaded();
+		//Intersect starting with the shortest list. The result can only get smaller.
+		IntList[] lists = new IntList[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			lists[i] = postings.get(keys[i]);
+			if (lists[i]==null) {
+				//No file has this trigram.
+				return new Candidates(this, new BitSet(), nextId);
+			}
+		}
+		Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+		BitSet ids = toBitSet(lists[0]);
+		for (int i = 1; i < lists.length && !ids.isEmpty(); i++) {
+			ids.and(toBitSet(lists[i]));
+		}
+		debug("TrigramIndex: "+ids.cardinality()+" candidates for "+query);
+		return new Candidates(this, ids, nextId);
+	}
+
+	private static BitSet toBitSet(IntList list) {
+		BitSet bits = new BitSet();
+		for (int i = 0; i < list.size(); i++) {
+			bits.set(list.get(i));
+		}
+		return bits;
+	}
+
+	/**
+	 * Computes the trigram keys that any file containing a match for the query must have.
+	 */
+	private static int[] queryKeys(QuickTextQuery query) {
+		IntList keys = new IntList();
+		for (String literal : query.getRequiredLiterals()) {
+			//Note: not using String.toLowerCase because it is locale sensitive and may change the
+			// length of the String. Must lower case the same way as the Indexer does.
+			for (int i = 0; i+2 < literal.length(); i++) {
+				keys.add(key(
+						Character.toLowerCase(literal.charAt(i)),
+						Character.toLowerCase(literal.charAt(i+1)),
+						Character.toLowerCase(literal.charAt(i+2))
+				));
+			}
+		}
+		int[] result = new int[keys.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = keys.get(i);
+		}
+		return result;
+	}
+
+	private synchronized boolean mayContain(IFile file, Candidates candidates) {
+		FileEntry e = files.get(pathOf(file));
+		if (e==null || e.stamp!=file.getModificationStamp() || e.id>=candidates.limit) {
+			//We don't know anything (reliable) about this file.
+			return true;
+		}
+		return candidates.ids.get(e.id);
+	}
+
+	private synchronized void commit(IFile file, long stamp, IntList keys) {
+		ensureLoaded();
+		int id = nextId++;
+		int[] sorted = new int[keys.size()];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = keys.get(i);
+		}
+		Arrays.sort(sorted);
+		for (int i = 0; i < sorted.length; i++) {
+			if (i==0 || sorted[i]!=sorted[i-1]) {
+				IntList list = postings.get(sorted[i]);
+				if (list==null) {
+					postings.put(sorted[i], list = new IntList());
+				}
+				list.add(id);
+			}
+		}
+		if (files.put(pathOf(file), new FileEntry(id, stamp))!=null) {
+			died(1);
+		}
+	}
+
+	/**
+	 * Start indexing a file. Lines of the file should then be fed to the returned indexer
+	 * and when all lines have been fed, the indexer should be committed. An indexer that
+	 * isn't committed has no effect on the index.
+	 */
+	public Indexer startFile(IFile file) {
+		return new Indexer(file);
+	}
+
+	/**
+	 * Accumulates the trigrams of a single file.
+	 */
+	public class Indexer {
+
+		private static final int DEDUP_THRESHOLD = 64*1024;
+
+		private final IFile file;
+		private final long stamp;
+		private IntList keys = new IntList(1024);
+
+		private Indexer(IFile file) {
+			this.file = file;
+			//Important to get this before we start reading the contents. If the file changes
+			//while we are reading it, then it will just look 'stale' to the index.
+			this.stamp = file.getModificationStamp();
+		}
+
+		public void addLine(CharSequence line) {
+			int len = line.length();
+			if (len<3) {
+				return;
+			}
+			char a = Character.toLowerCase(line.charAt(0));
+			char b = Character.toLowerCase(line.charAt(1));
+			for (int i = 2; i < len; i++) {
+				char c = Character.toLowerCase(line.charAt(i));
+				keys.add(key(a, b, c));
+				a = b;
+				b = c;
+			}
+			if (keys.size()>DEDUP_THRESHOLD) {
+				dedup();
+			}
+		}
+
+		private void dedup() {
+			int[] sorted = new int[keys.size()];
+			for (int i = 0; i < sorted.length; i++) {
+				sorted[i] = keys.get(i);
+			}
+			Arrays.sort(sorted);
+			IntList unique = new IntList(Math.max(1024, sorted.length/2));
+			for (int i = 0; i < sorted.length; i++) {
+				if (i==0 || sorted[i]!=sorted[i-1]) {
+					unique.add(sorted[i]);
+				}
+			}
+			keys = unique;
+		}
+
+		public void commit() {
+			TrigramIndex.this.commit(file, stamp, keys);
+		}
+	}
+
+	/**
+	 * The set of files that may contain matches for a query. This is a snapshot computed when
+	 * the query is set. Files indexed after the snapshot was taken are treated as 'unknown'.
+	 */
+	public static class Candidates {
+		private final TrigramIndex index;
+		private final BitSet ids;
+		private final int limit;
+
+		private Candidates(TrigramIndex index, BitSet ids, int limit) {
+			this.index = index;
+			this.ids = ids;
+			this.limit = limit;
+		}
+
+		/**
+		 * @return false if the file definitely does not contain any matches.
+		 */
+		public boolean mayContain(IFile file) {
+			return index.mayContain(file, this);
+		}
+	}
+
+	private void ensureLoaded() {
+		if (!loaded) {
+			loaded = true;
+			if (store!=null && store.isFile()) {
+				try {
+					load();
+				} catch (Exception e) {
+					//Corrupt or incompatible index. Not a big deal, start over.
+					QuickSearchActivator.log(e);
+					files = new HashMap<String, FileEntry>();
+					postings = new HashMap<Integer, IntList>();
+					nextId = 0;
+					deadCount = 0;
+				}
+			}
+		}
+	}
+
+	private void load() throws IOException {
+		long start = System.currentTimeMillis();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(store)));
+		try {
+			if (in.readInt()!=FORMAT_VERSION) {
+				return;
+			}
+			int fileCount = in.readInt();
+			for (int i = 0; i < fileCount; i++) {
+				String path = in.readUTF();
+				long stamp = in.readLong();
+				files.put(path, new FileEntry(i, stamp));
+			}
+			nextId = fileCount;
+			int trigramCount = in.readInt();
+			for (int i = 0; i < trigramCount; i++) {
+				int key = in.readInt();
+				int n = in.readInt();
+				IntList list = new IntList(n);
+				for (int j = 0; j < n; j++) {
+					list.add(in.readInt());
+				}
+				postings.put(key, list);
+			}
+		} finally {
+			in.close();
+		}
+		debug("TrigramIndex: loaded "+files.size()+" files in "+(System.currentTimeMillis()-start)+" ms");
+	}
+
+	/**
+	 * Write the index to its store. Dead file ids are purged from the saved copy only, the
+	 * in-memory index is left unchanged so that existing {@link Candidates} remain valid.
+	 */
+	public synchronized void save() throws IOException {
+		if (store==null || !loaded) {
+			//Nothing changed if it was never loaded.
+			return;
+		}
+		//Compact ids: live files get numbered 0..n-1 (in the order of their old ids, so that
+		// posting lists stay sorted).
+		int[] remap = new int[nextId];
+		Arrays.fill(remap, -1);
+		String[] paths = new String[nextId];
+		long[] stamps = new long[nextId];
+		for (Entry<String, FileEntry> e : files.entrySet()) {
+			paths[e.getValue().id] = e.getKey();
+			stamps[e.getValue().id] = e.getValue().stamp;
+		}
+		int live = 0;
+		for (int id = 0; id < nextId; id++) {
+			if (paths[id]!=null) {
+				remap[id] = live++;
+			}
+		}
+		store.getParentFile().mkdirs();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(store)));
+		try {
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(live);
+			for (int id = 0; id < nextId; id++) {
+				if (paths[id]!=null) {
+					out.writeUTF(paths[id]);
+					out.writeLong(stamps[id]);
+				}
+			}
+			Map<Integer, IntList> compacted = new HashMap<Integer, IntList>(postings.size());
+			for (Entry<Integer, IntList> e : postings.entrySet()) {
+				IntList old = e.getValue();
+				IntList list = new IntList(old.size());
+				for (int i = 0; i < old.size(); i++) {
+					int id = remap[old.get(i)];
+					if (id>=0) {
+						list.add(id);
+					}
+				}
+				if (list.size()>0) {
+					compacted.put(e.getKey(), list);
+				}
+			}
+			out.writeInt(compacted.size());
+			for (Entry<Integer, IntList> e : compacted.entrySet()) {
+				IntList list = e.getValue();
+				out.writeInt(e.getKey());
+				out.writeInt(list.size());
+				for (int i = 0; i < list.size(); i++) {
+					out.writeInt(list.get(i));
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+}
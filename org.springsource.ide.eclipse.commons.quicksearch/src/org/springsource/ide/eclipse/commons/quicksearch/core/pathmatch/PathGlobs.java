@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.pathmatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * A set of path globs, in the style of .gitignore patterns, compiled into a single automaton that reads a
+ * path one segment at a time:
+ * <ul>
+ *   <li>A glob without a '/' (other than a trailing one) matches a resource with a matching name at any
+ *   depth. Other globs are matched against the full path, with or without a leading '/'.</li>
+ *   <li>Within a segment, '*' matches any chars, '?' matches one char and '[...]' matches a char from a set.
+ *   A '**' segment matches any number of segments.</li>
+ *   <li>A glob with a trailing '/' only matches containers.</li>
+ *   <li>Anything inside a matching container matches as well. A trailing '/**' only matches what is inside.</li>
+ * </ul>
+ * Because the automaton reads the segments of a container's path the same way, it can also tell when
+ * nothing inside a container can match, see {@link #mayMatchBelow(IPath)}.
+ */
+public class PathGlobs {
+
+	private static final String ANY_SEGMENTS = "**";
+
+	/**
+	 * The glob for each state, or null for an accepting state. The states of each pattern are numbered
+	 * consecutively, with the accepting state last.
+	 */
+	private final String[] segments;
+
+	/**
+	 * For accepting states, whether the pattern only matches containers.
+	 */
+	private final boolean[] containersOnly;
+
+	/**
+	 * The states at the start, before reading any segments.
+	 */
+	private final long[] start;
+
+	private final List<String> patterns;
+
+	/**
+	 * Compile some globs. Blank globs are skipped.
+	 */
+	public PathGlobs(String... globs) {
+		List<String> segments = new ArrayList<String>();
+		List<Boolean> containersOnly = new ArrayList<Boolean>();
+		List<Integer> starts = new ArrayList<Integer>();
+		this.patterns = new ArrayList<String>();
+		for (String glob : globs) {
+			String pattern = glob.trim();
+			boolean containers = pattern.endsWith("/");
+			while (pattern.endsWith("/")) {
+				pattern = pattern.substring(0, pattern.length()-1);
+			}
+			boolean anchored = pattern.indexOf('/')>=0;
+			List<String> parts = new ArrayList<String>();
+			if (!anchored) {
+				parts.add(ANY_SEGMENTS);
+			}
+			for (String part : pattern.split("/")) {
+				if (!part.isEmpty()) {
+					parts.add(part);
+				}
+			}
+			if (parts.isEmpty() || (parts.size()==1 && !anchored)) {
+				continue;
+			}
+			int last = parts.size()-1;
+			if (parts.get(last).equals(ANY_SEGMENTS)) {
+				//Only what is inside. That is, anything matching one more segment, and its contents.
+				parts.set(last, "*");
+			}
+			patterns.add(glob.trim());
+			starts.add(segments.size());
+			for (String part : parts) {
+				segments.add(part);
+				containersOnly.add(false);
+			}
+			segments.add(null);
+			containersOnly.add(containers);
+		}
+		this.segments = segments.toArray(new String[segments.size()]);
+		this.containersOnly = new boolean[segments.size()];
+		for (int i = 0; i < this.containersOnly.length; i++) {
+			this.containersOnly[i] = containersOnly.get(i);
+		}
+		this.start = newSet();
+		for (int s : starts) {
+			add(start, s);
+		}
+	}
+
+	/**
+	 * @return true if there are no globs, so nothing matches.
+	 */
+	public boolean isEmpty() {
+		return patterns.isEmpty();
+	}
+
+	/**
+	 * @param container Whether the path is that of a container (or of a file).
+	 */
+	public boolean matches(IPath path, boolean container) {
+		long[] states = start;
+		int count = path.segmentCount();
+		for (int i = 0; i < count; i++) {
+			states = step(states, path.segment(i));
+			if (states==null) {
+				return false;
+			}
+			if (accepts(states, container || i<count-1)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return false if nothing inside the container with the given path can match. This is conservative,
+	 *     so it may return true even if nothing inside actually matches.
+	 */
+	public boolean mayMatchBelow(IPath containerPath) {
+		long[] states = start;
+		int count = containerPath.segmentCount();
+		for (int i = 0; i < count; i++) {
+			states = step(states, containerPath.segment(i));
+			if (states==null) {
+				return false;
+			}
+			if (accepts(states, true)) {
+				return true;
+			}
+		}
+		return !isEmpty();
+	}
+
+	/**
+	 * Read one more segment.
+	 *
+	 * @return The states after reading the segment, or null if there are none.
+	 */
+	private long[] step(long[] states, String segment) {
+		long[] next = null;
+		for (int w = 0; w < states.length; w++) {
+			long word = states[w];
+			while (word!=0) {
+				int state = (w<<6) + Long.numberOfTrailingZeros(word);
+				word &= word-1;
+				String glob = segments[state];
+				int target;
+				if (glob==null) {
+					//Anything inside a match matches.
+					target = state;
+				} else if (glob.equals(ANY_SEGMENTS)) {
+					//Stays, and the closure also includes the next state.
+					target = state;
+				} else if (matchesSegment(glob, segment)) {
+					target = state+1;
+				} else {
+					continue;
+				}
+				if (next==null) {
+					next = newSet();
+				}
+				add(next, target);
+			}
+		}
+		return next;
+	}
+
+	private long[] newSet() {
+		return new long[(segments.length+63)>>>6];
+	}
+
+	/**
+	 * Add a state to a set, together with the states that can be reached from it without reading a
+	 * segment.
+	 */
+	private void add(long[] set, int state) {
+		while (true) {
+			set[state>>>6] |= 1L<<state;
+			if (!ANY_SEGMENTS.equals(segments[state])) {
+				return;
+			}
+			state++;
+		}
+	}
+
+	/**
+	 * @param container Whether the segments read so far are the path of a container.
+	 */
+	private boolean accepts(long[] states, boolean container) {
+		for (int w = 0; w < states.length; w++) {
+			long word = states[w];
+			while (word!=0) {
+				int state = (w<<6) + Long.numberOfTrailingZeros(word);
+				word &= word-1;
+				if (segments[state]==null && (container || !containersOnly[state])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Match a single segment against a glob with '*', '?', '[...]' and '\' escapes.
+	 */
+	static boolean matchesSegment(String glob, String segment) {
+		int g = 0, s = 0;
+		int starGlob = -1, starSegment = -1;
+		while (s<segment.length()) {
+			if (g<glob.length()) {
+				if (glob.charAt(g)=='*') {
+					starGlob = ++g;
+					starSegment = s;
+					continue;
+				}
+				int next = matchChar(glob, g, segment.charAt(s));
+				if (next>=0) {
+					g = next;
+					s++;
+					continue;
+				}
+			}
+			if (starGlob<0) {
+				return false;
+			}
+			//Let the last '*' take one more char.
+			g = starGlob;
+			s = ++starSegment;
+		}
+		while (g<glob.length() && glob.charAt(g)=='*') {
+			g++;
+		}
+		return g==glob.length();
+	}
+
+	/**
+	 * Match a char against the element of a glob at a given position.
+	 *
+	 * @return The position of the next element of the glob, or -1 if the char doesn't match.
+	 */
+	private static int matchChar(String glob, int g, char c) {
+		char p = glob.charAt(g);
+		if (p=='?') {
+			return g+1;
+		}
+		if (p=='\\' && g+1<glob.length()) {
+			return glob.charAt(g+1)==c ? g+2 : -1;
+		}
+		if (p=='[') {
+			int i = g+1;
+			boolean negated = i<glob.length() && (glob.charAt(i)=='!' || glob.charAt(i)=='^');
+			if (negated) {
+				i++;
+			}
+			int first = i;
+			boolean found = false;
+			while (i<glob.length() && (glob.charAt(i)!=']' || i==first)) {
+				char lo = glob.charAt(i);
+				char hi = lo;
+				if (i+2<glob.length() && glob.charAt(i+1)=='-' && glob.charAt(i+2)!=']') {
+					hi = glob.charAt(i+2);
+					i += 2;
+				}
+				found |= lo<=c && c<=hi;
+				i++;
+			}
+			if (i<glob.length()) {
+				return found!=negated ? i+1 : -1;
+			}
+			//No closing bracket, so it is just a '['.
+		}
+		return p==c ? g+1 : -1;
+	}
+
+	@Override
+	public String toString() {
+		return patterns.toString();
+	}
+
+}
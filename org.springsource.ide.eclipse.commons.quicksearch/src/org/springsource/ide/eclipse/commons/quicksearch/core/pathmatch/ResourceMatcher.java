@@ -11,9 +11,18 @@
 package org.springsource.ide.eclipse.commons.quicksearch.core.pathmatch;
 
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
 
 public interface ResourceMatcher {
 	
 	boolean matches(IResource resource);
 
+	/**
+	 * @return false if no file inside the container with the given path can match, so the
+	 *    container can be skipped entirely.
+	 */
+	default boolean mayMatchBelow(IPath containerPath) {
+		return true;
+	}
+
 }
@@ -11,11 +11,8 @@
 package org.springsource.ide.eclipse.commons.quicksearch.core.pathmatch;
 
 import org.eclipse.core.resources.IResource;
-import org.eclipse.jgit.errors.InvalidPatternException;
-import org.eclipse.jgit.ignore.internal.IMatcher;
-import org.eclipse.jgit.ignore.internal.PathMatcher;
+import org.eclipse.core.runtime.IPath;
 
-@SuppressWarnings("restriction")
 public class ResourceMatchers {
 	
 	public static ResourceMatcher ANY = new ResourceMatcher() {
@@ -29,70 +26,32 @@ public class ResourceMatchers {
 		}
 	};
 
+	/**
+	 * Create a matcher for a comma separated list of path globs, see {@link PathGlobs}. All globs
+	 * are compiled together, so a path is matched against all of them at once.
+	 */
 	public static ResourceMatcher commaSeparatedPaths(String text) {
-		text = text.trim();
-		if (text.isEmpty()) {
+		PathGlobs globs = new PathGlobs(text.split(","));
+		if (globs.isEmpty()) {
 			return ANY;
 		}
-		String[] paths = text.split(",");
-		if (paths.length==1) {
-			return path(paths[0]);
-		} else {
-			ResourceMatcher[] matchers = new ResourceMatcher[paths.length];
-			for (int i = 0; i < matchers.length; i++) {
-				matchers[i] = path(paths[i]);
-			}
-			return either(matchers);
-		}
-	}
-
-	private static ResourceMatcher either(ResourceMatcher... matchers) {
 		return new ResourceMatcher() {
-			
+
 			@Override
 			public String toString() {
-				StringBuilder buf = new StringBuilder("ResourceMatcher(");
-				for (int i = 0; i < matchers.length; i++) {
-					if (i>0) {
-						buf.append(", ");
-					}
-					buf.append(matchers[i]);
-				}
-				buf.append(")");
-				return buf.toString();
+				return "ResourceMatcher"+globs;
 			}
-			
+
 			@Override
 			public boolean matches(IResource resource) {
-				for (ResourceMatcher m : matchers) {
-					if (m.matches(resource)) {
-						return true;
-					}
-				}
-				return false;
+				return globs.matches(resource.getFullPath(), resource.getType()!=IResource.FILE);
 			}
-		};
-	}
 
-	private static ResourceMatcher path(String path) {
-		try {
-			IMatcher matcher = PathMatcher.createPathMatcher(path, '/', false);
-			return new ResourceMatcher() {
-				
-				@Override
-				public String toString() {
-					return path;
-				}
-				
-				@Override
-				public boolean matches(IResource resource) {
-					return matcher.matches(resource.getFullPath().toString(), resource.getType()==IResource.FOLDER, false);
-				}
-			};
-			
-		} catch (InvalidPatternException e) {
-			return ANY;
-		}
+			@Override
+			public boolean mayMatchBelow(IPath containerPath) {
+				return globs.mayMatchBelow(containerPath);
+			}
+		};
 	}
 
 }
@@ -13,8 +13,10 @@ package org.springsource.ide.eclipse.commons.quicksearch.core.preferences;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.springsource.ide.eclipse.commons.quicksearch.core.ResourceWalker;
 import org.springsource.ide.eclipse.commons.quicksearch.core.priority.DefaultPriorityFunction;
 import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
 import org.springsource.ide.eclipse.commons.quicksearch.util.LineReader;
@@ -31,6 +33,20 @@ public class QuickSearchPreferences {
 	public static final String IGNORED_NAMES = "ignored.names";
 	public static final String IGNORED_PREFIXES = "ignored.prefixes";
 	public static final String MAX_LINE_LEN = "LineReader.MAX_LINE_LEN";
+	public static final String SEARCH_THREADS = "ResourceWalker.SEARCH_THREADS";
+	public static final String INDEX_ENABLED = "TrigramIndex.ENABLED";
+	public static final String MMAP_THRESHOLD_KB = "ByteLineScanner.MMAP_THRESHOLD_KB";
+	public static final String CONTENT_CACHE_MB = "ContentCache.BUDGET_MB";
+	public static final String BLOOM_FILTERS_ENABLED = "BloomFilterTable.ENABLED";
+	public static final String RANKING_ENABLED = "ResultRanker.ENABLED";
+	public static final String LONG_LINE_WINDOWS = "LineReader.LONG_LINE_WINDOWS";
+	public static final String BINARY_SNIFFING_ENABLED = "ContentSniffer.ENABLED";
+
+	/**
+	 * Default size (in KB) above which files are memory mapped. Memory mapping is disabled by default on
+	 * Windows, where a mapped file can not be deleted or overwritten until the mapping is garbage collected.
+	 */
+	public static final int DEFAULT_MMAP_THRESHOLD_KB = Platform.OS_WIN32.equals(Platform.getOS()) ? 0 : 1024;
 	private static boolean initializedDefaults;
 
 	private IPreferenceStore store;
@@ -56,6 +72,44 @@ public class QuickSearchPreferences {
 		return store.getInt(MAX_LINE_LEN);
 	}
 
+	public int getSearchThreads() {
+		return Math.max(1, store.getInt(SEARCH_THREADS));
+	}
+
+	public boolean isIndexEnabled() {
+		return store.getBoolean(INDEX_ENABLED);
+	}
+
+	/**
+	 * @return Size in bytes above which files are memory mapped, or 0 if memory mapping is disabled.
+	 */
+	public long getMmapThreshold() {
+		return Math.max(0, store.getInt(MMAP_THRESHOLD_KB)) * 1024L;
+	}
+
+	/**
+	 * @return Memory budget for caching file contents in bytes, or 0 if caching is disabled.
+	 */
+	public long getContentCacheBudget() {
+		return Math.max(0, store.getInt(CONTENT_CACHE_MB)) * 1024L * 1024L;
+	}
+
+	public boolean isBloomFiltersEnabled() {
+		return store.getBoolean(BLOOM_FILTERS_ENABLED);
+	}
+
+	public boolean isRankingEnabled() {
+		return store.getBoolean(RANKING_ENABLED);
+	}
+
+	public boolean isLongLineWindowsEnabled() {
+		return store.getBoolean(LONG_LINE_WINDOWS);
+	}
+
+	public boolean isBinarySniffingEnabled() {
+		return store.getBoolean(BINARY_SNIFFING_ENABLED);
+	}
+
 	private String[] getAndParseStringList(String key) {
 		String raw = store.getString(key);
 		if (raw!=null) {
@@ -88,6 +142,14 @@ public class QuickSearchPreferences {
 			initializedDefaults = true;
 			IPreferenceStore store = QuickSearchActivator.getDefault().getPreferenceStore();
 			store.setDefault(QuickSearchPreferences.MAX_LINE_LEN, LineReader.DEFAULT_MAX_LINE_LENGTH);
+			store.setDefault(QuickSearchPreferences.SEARCH_THREADS, ResourceWalker.DEFAULT_PARALLELISM);
+			store.setDefault(QuickSearchPreferences.INDEX_ENABLED, false);
+			store.setDefault(QuickSearchPreferences.MMAP_THRESHOLD_KB, DEFAULT_MMAP_THRESHOLD_KB);
+			store.setDefault(QuickSearchPreferences.CONTENT_CACHE_MB, 32);
+			store.setDefault(QuickSearchPreferences.BLOOM_FILTERS_ENABLED, true);
+			store.setDefault(QuickSearchPreferences.RANKING_ENABLED, false);
+			store.setDefault(QuickSearchPreferences.LONG_LINE_WINDOWS, true);
+			store.setDefault(QuickSearchPreferences.BINARY_SNIFFING_ENABLED, true);
 			
 			DefaultPriorityFunction dpf =  new DefaultPriorityFunction();
 			store.setDefault(QuickSearchPreferences.IGNORED_EXTENSIONS, encode(dpf.ignoredExtensions));
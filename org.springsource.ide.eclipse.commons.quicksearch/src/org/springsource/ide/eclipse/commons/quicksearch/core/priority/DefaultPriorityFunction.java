@@ -17,7 +17,9 @@ import java.util.Set;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
 import org.springsource.ide.eclipse.commons.quicksearch.core.preferences.QuickSearchPreferences;
 
 /**
@@ -62,6 +64,17 @@ public class DefaultPriorityFunction extends PriorityFunction {
 	public String[] ignoredNames = {
 		"bin", "target", "build"
 	};
+
+	/**
+	 * If true, extensions are ignored regardless of their case.
+	 */
+	public boolean ignoreExtensionCase = false;
+
+	/**
+	 * The lists of ignored extensions, prefixes and names compiled into a single matcher. Rebuilt when
+	 * any of the lists is replaced.
+	 */
+	private NameMatcher nameMatcher = null;
 	
 	public Set<IResource> ignoredResources = null;
 
@@ -74,20 +87,27 @@ public class DefaultPriorityFunction extends PriorityFunction {
 			if (ignoredResources!=null && ignoredResources.contains(r)) {
 				return PRIORITY_IGNORE;
 			}
-			String name = r.getName();
-			for (String ext : ignoredExtensions) {
-				if (name.endsWith(ext)) {
-					return PRIORITY_IGNORE;
-				}
+			if (isIgnoredName(r.getName())) {
+				return PRIORITY_IGNORE;
 			}
-			for (String pre : ignoredPrefixes) {
-				if (name.startsWith(pre)) {
-					return PRIORITY_IGNORE;
-				}
+			return PRIORITY_DEFAULT;
+		}
+		return PRIORITY_IGNORE;
+	}
+
+	@Override
+	public double priority(IResourceProxy proxy) {
+		//Same checks as for a resource, but the cheapest first, and without creating a handle.
+		if (proxy.isAccessible() && !isIgnoredName(proxy.getName())) {
+			if (ignoreDerived && proxy.isDerived()) {
+				return PRIORITY_IGNORE;
 			}
-			for (String n : ignoredNames) {
-				if (name.equals(n)) {
-					return PRIORITY_IGNORE;
+			if (ignoredResources!=null && !ignoredResources.isEmpty()) {
+				IPath path = proxy.requestFullPath();
+				for (IResource ignored : ignoredResources) {
+					if (ignored.getType()==proxy.getType() && ignored.getFullPath().equals(path)) {
+						return PRIORITY_IGNORE;
+					}
 				}
 			}
 			return PRIORITY_DEFAULT;
@@ -95,6 +115,18 @@ public class DefaultPriorityFunction extends PriorityFunction {
 		return PRIORITY_IGNORE;
 	}
 
+	private boolean isIgnoredName(String name) {
+		return getNameMatcher().matches(name);
+	}
+
+	private NameMatcher getNameMatcher() {
+		NameMatcher matcher = nameMatcher;
+		if (matcher==null || !matcher.isFor(ignoredExtensions, ignoredPrefixes, ignoredNames, ignoreExtensionCase)) {
+			nameMatcher = matcher = new NameMatcher(ignoredExtensions, ignoredPrefixes, ignoredNames, ignoreExtensionCase);
+		}
+		return matcher;
+	}
+
 	/**
 	 * Initialise some configurable settings from an instance of QuickSearchPreferences
 	 */
@@ -111,6 +143,8 @@ public class DefaultPriorityFunction extends PriorityFunction {
 		if (pref!=null) {
 			this.ignoredPrefixes = pref;
 		}
+		//Compile the lists now, rather than when the first resource is visited.
+		getNameMatcher();
 		computeIgnoredFolders();
 	}
 
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.priority;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Matches resource names against lists of ignored extensions, prefixes and names, without looping over the
+ * lists. Extensions are kept in a trie of their reversed chars, so that all of them are checked in a single
+ * pass from the end of a name. Prefixes are kept in a trie as well, and names in a hash set.
+ * <p>
+ * Instances are immutable once created, so they can be shared between threads.
+ */
+public class NameMatcher {
+
+	private static final char[] NO_KEYS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static final class Node {
+		private char[] keys = NO_KEYS;
+		private Node[] children = NO_CHILDREN;
+
+		/**
+		 * Set if the chars leading to this node are one of the strings in the trie.
+		 */
+		private boolean terminal = false;
+
+		Node child(char c) {
+			char[] keys = this.keys;
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i]==c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		Node addChild(char c) {
+			Node child = child(c);
+			if (child==null) {
+				int n = keys.length;
+				keys = Arrays.copyOf(keys, n+1);
+				children = Arrays.copyOf(children, n+1);
+				keys[n] = c;
+				children[n] = child = new Node();
+			}
+			return child;
+		}
+	}
+
+	private final String[] extensions;
+	private final String[] prefixes;
+	private final String[] names;
+	private final boolean extensionsIgnoreCase;
+
+	private final Node suffixTrie = new Node();
+	private final Node prefixTrie = new Node();
+	private final Set<String> nameSet;
+
+	/**
+	 * @param extensions Names ending with one of these are matched.
+	 * @param prefixes Names starting with one of these are matched.
+	 * @param names Names equal to one of these are matched.
+	 * @param extensionsIgnoreCase Whether extensions are matched regardless of case.
+	 */
+	public NameMatcher(String[] extensions, String[] prefixes, String[] names, boolean extensionsIgnoreCase) {
+		this.extensions = extensions;
+		this.prefixes = prefixes;
+		this.names = names;
+		this.extensionsIgnoreCase = extensionsIgnoreCase;
+		for (String ext : extensions) {
+			Node node = suffixTrie;
+			for (int i = ext.length()-1; i >= 0; i--) {
+				node = node.addChild(fold(ext.charAt(i)));
+			}
+			node.terminal = true;
+		}
+		for (String pre : prefixes) {
+			Node node = prefixTrie;
+			for (int i = 0; i < pre.length(); i++) {
+				node = node.addChild(pre.charAt(i));
+			}
+			node.terminal = true;
+		}
+		this.nameSet = new HashSet<String>(Arrays.asList(names));
+	}
+
+	private char fold(char c) {
+		return extensionsIgnoreCase ? Character.toLowerCase(c) : c;
+	}
+
+	/**
+	 * @return Whether this matcher was created from the given lists (the same arrays, not just equal
+	 *    ones) and option.
+	 */
+	public boolean isFor(String[] extensions, String[] prefixes, String[] names, boolean extensionsIgnoreCase) {
+		return this.extensions==extensions && this.prefixes==prefixes && this.names==names
+				&& this.extensionsIgnoreCase==extensionsIgnoreCase;
+	}
+
+	/**
+	 * @return true if the name ends with one of the extensions, starts with one of the prefixes, or equals
+	 *    one of the names.
+	 */
+	public boolean matches(String name) {
+		Node node = suffixTrie;
+		for (int i = name.length()-1; !node.terminal; i--) {
+			if (i<0 || (node = node.child(fold(name.charAt(i))))==null) {
+				break;
+			}
+		}
+		if (node!=null && node.terminal) {
+			return true;
+		}
+		node = prefixTrie;
+		for (int i = 0; !node.terminal; i++) {
+			if (i>=name.length() || (node = node.child(name.charAt(i)))==null) {
+				break;
+			}
+		}
+		if (node!=null && node.terminal) {
+			return true;
+		}
+		return nameSet.contains(name);
+	}
+
+}
@@ -11,10 +11,12 @@
 package org.springsource.ide.eclipse.commons.quicksearch.core.priority;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
@@ -23,10 +25,13 @@ import org.eclipse.core.runtime.Path;
  * A PrioriTree is an implementation of PriorityFunction that is based on assigning specific priorities
  * to a finite set of paths. The paths are kept in a tree-like structure internally so that
  * assigning a priority to a given path also implicitly forces all the children leading to that
- * path to have a priority that is at least as high as that of the path itself.
- * 
- * TODO: The priority function produced by this tree would probably be better if it also raised/affected
- * the priority of nodes in a subtree of a node, but not by as much as the node itself.
+ * path to have a priority that is at least as high as that of the path itself. The descendants of
+ * a path can be given a priority of their own, lower than that of the path (see
+ * {@link #setPriority(IPath, double, double)}).
+ * <p>
+ * Looking up a priority walks the segments of a path by index, so it doesn't allocate. Nodes that no
+ * longer make a difference, because their parent's priority for its children was raised to theirs,
+ * are removed from the tree.
  * 
  * @author Kris De Volder
  */
@@ -107,14 +112,36 @@ public class PrioriTree extends DefaultPriorityFunction {
 	 * be retained in the tree node for that path.
 	 */
 	public void setPriority(IPath path, double priority) {
+		setPriority(path, priority, priority);
+	}
+
+	/**
+	 * Set the priority for a given path, and a separate priority for all of its descendants. This can
+	 * be used to make the contents of a folder more interesting, but not as interesting as the folder
+	 * itself. As with {@link #setPriority(IPath, double)}, the ancestors of the path are raised
+	 * to the priority of the path, and priorities are never reduced.
+	 *
+	 * @param subtreePriority Priority for the descendants of the path. If this is higher than
+	 *     'priority', 'priority' is used instead, because the descendants can't be reached before
+	 *     the path itself.
+	 */
+	public void setPriority(IPath path, double priority, double subtreePriority) {
+		setPriority(path, 0, priority, Math.min(priority, subtreePriority));
+	}
+
+	private void setPriority(IPath path, int segment, double priority, double subtreePriority) {
 		this.priority = Math.max(this.priority, priority); //Use Math.max, never reduce priorities!
-		if (path.segmentCount()>0) {
+		if (segment<path.segmentCount()) {
 			// path leads to a child node
-			PrioriTree child = ensureChild(path.segment(0));
-			child.setPriority(path.removeFirstSegments(1), priority);
+			String name = path.segment(segment);
+			PrioriTree child = ensureChild(name);
+			child.setPriority(path, segment+1, priority, subtreePriority);
+			if (child.isRedundant(this)) {
+				removeChild(name);
+			}
 		} else {
 			// path ends here
-			setChildPriority(priority);
+			setChildPriority(subtreePriority);
 		}
 	}
 
@@ -125,16 +152,37 @@ public class PrioriTree extends DefaultPriorityFunction {
 			// to be raised.
 			this.childPriority = newChildPriority;
 			if (children!=null) {
-				for (PrioriTree child : children.values()) {
-					//TODO: remove children that became redundant because the increase of childPriority in parent
-					// makes them have no observable effect.
-					//Currently this cleanup is not happening. This is inefficient but not incorrect.
+				Iterator<PrioriTree> iter = children.values().iterator();
+				while (iter.hasNext()) {
+					PrioriTree child = iter.next();
 					child.priority = Math.max(child.priority, newChildPriority);
 					child.setChildPriority(newChildPriority);
+					if (child.isRedundant(this)) {
+						iter.remove();
+					}
+				}
+				if (children.isEmpty()) {
+					children = null;
 				}
 			}
 		}
 	}
+
+	/**
+	 * @return true if removing this node from its parent doesn't change the priority of any path. The
+	 *    lookup of this node's path, or of any path below it, then ends in the parent and gets the
+	 *    parent's priority for children.
+	 */
+	private boolean isRedundant(PrioriTree parent) {
+		return children==null && priority==parent.childPriority && childPriority==parent.childPriority;
+	}
+
+	private void removeChild(String segment) {
+		children.remove(segment);
+		if (children.isEmpty()) {
+			children = null;
+		}
+	}
 	
 	/**
 	 * Ensure that this node has a child for a given segment string. If no node exists yet, create it.
@@ -160,7 +208,20 @@ public class PrioriTree extends DefaultPriorityFunction {
 			//Ignored paths shouldn't be changed ... ever.
 			return PRIORITY_IGNORE;
 		}
-		IPath path = r.getFullPath();
+		return priority(r.getFullPath());
+	}
+
+	@Override
+	public double priority(IResourceProxy proxy) {
+		double result = super.priority(proxy);
+		if (result==PRIORITY_IGNORE) {
+			return PRIORITY_IGNORE;
+		}
+		return priority(proxy.requestFullPath());
+	}
+
+	private double priority(IPath path) {
+		double result;
 		PrioriTree node = this.lookup(path);
 		if (node.level == path.segmentCount()) {
 			//exact node found
@@ -169,25 +230,43 @@ public class PrioriTree extends DefaultPriorityFunction {
 			//ancestor node found
 			result = node.childPriority;
 		}
-		debug("Priority for "+r.getFullPath() + " = " + result);
+		if (DEBUG) {
+			//Guarded, since this is called for every resource a walker enqueues.
+			debug("Priority for "+path + " = " + result);
+		}
 		return result;
 	}
 
 
 	/**
 	 * Locate tree node corresponding to a given path.
-	 * @param fullPath
-	 * @return The node or null if no corresponding node exists in the tree.
+	 * @param path
+	 * @return The node for the path, or the deepest node for one of its ancestors if there is no such node.
 	 */
 	private PrioriTree lookup(IPath path) {
-		PrioriTree found = null;
-		if (path.segmentCount()>0) {
-			PrioriTree child = getChild(path.segment(0));
-			if (child!=null) {
-				found = child.lookup(path.removeFirstSegments(1));
+		PrioriTree node = this;
+		int segments = path.segmentCount();
+		for (int i = 0; i < segments; i++) {
+			PrioriTree child = node.getChild(path.segment(i));
+			if (child==null) {
+				break;
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	/**
+	 * @return The number of nodes in the tree. For testing and debugging purposes.
+	 */
+	public int getNodeCount() {
+		int count = 1;
+		if (children!=null) {
+			for (PrioriTree child : children.values()) {
+				count += child.getNodeCount();
 			}
 		}
-		return found==null?this:found;
+		return count;
 	}
 
 	/**
@@ -11,6 +11,8 @@
 package org.springsource.ide.eclipse.commons.quicksearch.core.priority;
 
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
 
 /**
  * An instance implementing this interface can optionally be provided to influence
@@ -52,4 +54,17 @@ public abstract class PriorityFunction {
 	
 	
 	public abstract double priority(IResource r);
+
+	/**
+	 * Assign a priority to a resource seen through a proxy, while visiting the members of a container
+	 * (see {@link IResource#accept(IResourceProxyVisitor, int, int)}). This should return the same as
+	 * {@link #priority(IResource)} for the proxy's resource.
+	 * <p>
+	 * The default implementation creates a handle for the resource. Functions that can tell from the
+	 * name, type, path or derived flag of a resource that it is ignored should override this, so that
+	 * no handles are created for ignored resources.
+	 */
+	public double priority(IResourceProxy proxy) {
+		return priority(proxy.requestResource());
+	}
 }
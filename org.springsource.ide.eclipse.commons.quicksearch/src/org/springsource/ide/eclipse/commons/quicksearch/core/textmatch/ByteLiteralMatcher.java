@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.textmatch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Searches for the encoded bytes of a literal string in raw (undecoded) bytes, using the
+ * Boyer-Moore-Horspool algorithm.
+ * <p>
+ * This only makes sense for 'ASCII compatible' charsets, where the bytes used to encode ASCII
+ * characters never occur as part of the encoding of other characters (e.g. UTF-8 and ISO-8859-1).
+ * For such charsets case insensitive matching can be done by folding ASCII letters only, which is
+ * the same as what {@link LiteralMatcher} does.
+ */
+public class ByteLiteralMatcher {
+
+	private static final byte[] ASCII_LOWER = new byte[256];
+	private static final byte[] IDENTITY = new byte[256];
+	static {
+		for (int b = 0; b < 256; b++) {
+			IDENTITY[b] = (byte) b;
+			ASCII_LOWER[b] = (byte) ((b>='A' && b<='Z') ? b + ('a'-'A') : b);
+		}
+	}
+
+	private final byte[] pattern;
+	private final byte[] fold;
+	private final int[] shift = new int[256];
+
+	/**
+	 * Create a matcher for a given literal.
+	 *
+	 * @return A matcher, or null if the literal can not be represented in the charset.
+	 */
+	public static ByteLiteralMatcher create(String literal, boolean caseSensitive, Charset charset) {
+		if (literal.isEmpty() || !charset.newEncoder().canEncode(literal)) {
+			return null;
+		}
+		return new ByteLiteralMatcher(literal.getBytes(charset), caseSensitive);
+	}
+
+	private ByteLiteralMatcher(byte[] bytes, boolean caseSensitive) {
+		this.fold = caseSensitive ? IDENTITY : ASCII_LOWER;
+		this.pattern = new byte[bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			pattern[i] = fold[bytes[i] & 0xFF];
+		}
+		int last = pattern.length - 1;
+		for (int i = 0; i < shift.length; i++) {
+			shift[i] = pattern.length;
+		}
+		for (int i = 0; i < last; i++) {
+			shift[pattern[i] & 0xFF] = last - i;
+		}
+	}
+
+	/**
+	 * Search a region of a buffer. The buffer's position and limit are ignored and left unchanged.
+	 *
+	 * @return The absolute index of the first match in the region [from, to) or -1 if there's no match.
+	 */
+	public int indexOf(ByteBuffer buf, int from, int to) {
+		final byte[] pattern = this.pattern;
+		final byte[] fold = this.fold;
+		final int last = pattern.length - 1;
+		final byte lastByte = pattern[last];
+		int i = from + last;
+		while (i < to) {
+			byte b = fold[buf.get(i) & 0xFF];
+			if (b==lastByte) {
+				int start = i - last;
+				int j = last - 1;
+				while (j>=0 && fold[buf.get(start+j) & 0xFF]==pattern[j]) {
+					j--;
+				}
+				if (j<0) {
+					return start;
+				}
+			}
+			i += shift[b & 0xFF];
+		}
+		return -1;
+	}
+
+	public int length() {
+		return pattern.length;
+	}
+
+}
@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.textmatch;
+
+import java.util.Arrays;
+
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+
+/**
+ * TextMatcher that finds approximate occurrences of a string: substrings of the text that can be
+ * turned into the pattern with at most a given number of edits (inserted, deleted or replaced chars).
+ * <p>
+ * Uses Myers' bit-parallel algorithm, which keeps a column of the edit distance matrix in two 64 bit
+ * words and updates it with a handful of bit operations per char of the text. So the pattern can be
+ * at most {@link #MAX_LENGTH} chars long, and searching is linear in the length of the text.
+ * <p>
+ * Most text doesn't come close to matching, and is rejected much faster by a filter: if the pattern
+ * is cut into maxEdits+1 pieces, every match contains at least one of those pieces unchanged, since
+ * each edit can only spoil one piece. All pieces are searched for at once, in a single
+ * Boyer-Moore-Horspool pass, and only text that contains one of them is matched with the
+ * bit-parallel algorithm.
+ * <p>
+ * Case insensitive matching folds only ASCII letters, like {@link LiteralMatcher}.
+ */
+public class FuzzyMatcher implements TextMatcher {
+
+	/**
+	 * The longest pattern that fits into a word.
+	 */
+	public static final int MAX_LENGTH = 64;
+
+	private final String pattern;
+	private final boolean caseSensitive;
+
+	/**
+	 * Case folding table for ASCII chars, shared with {@link LiteralMatcher}.
+	 */
+	private final char[] fold;
+	private final int maxEdits;
+
+	/**
+	 * Positions of the chars in the pattern, e.g. bit i of peq['a'] is set if the i-th char of the
+	 * pattern is 'a'. ASCII chars are looked up in a table, other chars (which should be rare) in a
+	 * short list.
+	 */
+	private final Peq forward;
+
+	/**
+	 * The same for the reversed pattern, used to find where a match starts.
+	 */
+	private final Peq backward;
+
+	private final long high;
+
+	/**
+	 * Pieces of the pattern, already folded, that any match contains at least one of. They are all
+	 * cut to the same length, so they can share a shift table. Null if there are too many edits
+	 * allowed to cut the pattern into that many pieces.
+	 */
+	private final char[][] pieces;
+
+	/**
+	 * Horspool shift table for the pieces, indexed by the low byte of a char, like in {@link LiteralMatcher}.
+	 */
+	private final int[] shift;
+
+	/**
+	 * Whether some piece ends with a char with a given low byte. Only then do we check for the pieces.
+	 */
+	private final boolean[] pieceEnd;
+
+	/**
+	 * @param maxEdits The number of edits allowed. Should be less than the length of the pattern,
+	 *     or everything matches.
+	 */
+	public FuzzyMatcher(String pattern, boolean caseSensitive, int maxEdits) {
+		if (pattern.isEmpty() || pattern.length()>MAX_LENGTH) {
+			throw new IllegalArgumentException("Pattern length must be between 1 and "+MAX_LENGTH+": "+pattern);
+		}
+		this.pattern = pattern;
+		this.caseSensitive = caseSensitive;
+		this.fold = caseSensitive ? LiteralMatcher.IDENTITY : LiteralMatcher.ASCII_LOWER;
+		this.maxEdits = maxEdits;
+		this.forward = new Peq(pattern, false, caseSensitive);
+		this.backward = new Peq(pattern, true, caseSensitive);
+		this.high = 1L << (pattern.length()-1);
+		int m = pattern.length();
+		int count = maxEdits+1;
+		if (count>m) {
+			this.pieces = null;
+			this.shift = null;
+			this.pieceEnd = null;
+			return;
+		}
+		int pieceLength = m/count;
+		this.pieces = new char[count][pieceLength];
+		this.shift = new int[256];
+		this.pieceEnd = new boolean[256];
+		Arrays.fill(shift, pieceLength);
+		for (int p = 0; p < count; p++) {
+			int start = p*m/count;
+			for (int i = 0; i < pieceLength; i++) {
+				char c = fold(pattern.charAt(start+i));
+				pieces[p][i] = c;
+				if (i<pieceLength-1) {
+					shift[c & 0xFF] = Math.min(shift[c & 0xFF], pieceLength-1-i);
+				} else {
+					pieceEnd[c & 0xFF] = true;
+				}
+			}
+		}
+	}
+
+	private char fold(char c) {
+		return c < 128 ? fold[c] : c;
+	}
+
+	@Override
+	public boolean matches(CharSequence text) {
+		return mayMatch(text, 0) && findEnd(text, 0)>=0;
+	}
+
+	@Override
+	public IRegion find(CharSequence text, int from) {
+		from = Math.max(from, 0);
+		if (!mayMatch(text, from)) {
+			return null;
+		}
+		int end = findEnd(text, from);
+		if (end<0) {
+			return null;
+		}
+		int start = findStart(text, from, end);
+		return new Region(start, end-start);
+	}
+
+	/**
+	 * @return false if there can't be a match starting at or after a given position.
+	 */
+	private boolean mayMatch(CharSequence text, int from) {
+		if (pieces==null) {
+			return true;
+		}
+		final int last = pieces[0].length - 1;
+		final int end = text.length();
+		int i = from + last; //Position in text aligned with the last char of the pieces.
+		while (i < end) {
+			char c = fold(text.charAt(i));
+			if (pieceEnd[c & 0xFF]) {
+				int start = i - last;
+				for (char[] piece : pieces) {
+					int j = last;
+					while (j>=0 && fold(text.charAt(start+j))==piece[j]) {
+						j--;
+					}
+					if (j<0) {
+						return true;
+					}
+				}
+			}
+			i += shift[c & 0xFF];
+		}
+		return false;
+	}
+
+	/**
+	 * Find the end of the first approximate match. If the distance keeps dropping after the first
+	 * position where it is good enough, the match is extended while it does, so that e.g. the whole of
+	 * an exact occurrence is matched.
+	 *
+	 * @return The end (exclusive) of the match or -1.
+	 */
+	private int findEnd(CharSequence text, int from) {
+		final int m = pattern.length();
+		final int len = text.length();
+		if (len-from < m-maxEdits) {
+			return -1;
+		}
+		final long[] ascii = forward.ascii;
+		final int top = m-1;
+		long pv = -1L;
+		long mv = 0L;
+		int score = m;
+		int found = -1;
+		for (int j = from; j < len; j++) {
+			char c = text.charAt(j);
+			long eq = c<128 ? ascii[c] : forward.getOther(c);
+			long xv = eq | mv;
+			long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+			//Branch free, the sign of the change is hard to predict.
+			score += (int) ((ph & high) >>> top) - (int) ((mh & high) >>> top);
+			//Searching: a match can start anywhere, so the top row of the matrix stays 0.
+			ph <<= 1;
+			mh <<= 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+			if (found>=0) {
+				if (score>=found) {
+					return j;
+				}
+				found = score;
+			} else if (score<=maxEdits) {
+				found = score;
+			}
+		}
+		return found>=0 ? len : -1;
+	}
+
+	/**
+	 * Find the best start for a match ending at a given position. This computes the edit distance of
+	 * the pattern and the text before the end, going backwards over at most length+maxEdits chars.
+	 */
+	private int findStart(CharSequence text, int from, int end) {
+		final int m = pattern.length();
+		final int limit = Math.max(from, end-m-maxEdits);
+		long pv = -1L;
+		long mv = 0L;
+		int score = m;
+		int best = m+1;
+		int start = end;
+		for (int j = end-1; j >= limit; j--) {
+			long eq = backward.get(text.charAt(j));
+			long xv = eq | mv;
+			long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+			if ((ph & high)!=0) {
+				score++;
+			} else if ((mh & high)!=0) {
+				score--;
+			}
+			//The match must end exactly at 'end', so the top row counts the chars skipped there.
+			ph = (ph << 1) | 1L;
+			mh <<= 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+			if (score<best) {
+				best = score;
+				start = j;
+			}
+		}
+		return start;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	public int getMaxEdits() {
+		return maxEdits;
+	}
+
+	@Override
+	public String toString() {
+		return "FuzzyMatcher("+pattern+", "+(caseSensitive?"caseSens":"caseInSens")+", "+maxEdits+")";
+	}
+
+	/**
+	 * The 'pattern equality' bit masks of a pattern.
+	 */
+	private static class Peq {
+
+		/**
+		 * Indexed by ASCII char. When ignoring case, upper and lower case letters have the same mask.
+		 */
+		final long[] ascii = new long[128];
+		private final char[] otherChars;
+		private final long[] otherMasks;
+		private final boolean caseSensitive;
+
+		Peq(String pattern, boolean reversed, boolean caseSensitive) {
+			this.caseSensitive = caseSensitive;
+			int m = pattern.length();
+			char[] chars = new char[m];
+			long[] masks = new long[m];
+			int others = 0;
+			for (int i = 0; i < m; i++) {
+				char c = fold(pattern.charAt(reversed ? m-1-i : i));
+				long bit = 1L << i;
+				if (c<128) {
+					ascii[c] |= bit;
+					if (!caseSensitive && c>='a' && c<='z') {
+						ascii[c - ('a'-'A')] |= bit;
+					}
+				} else {
+					int k = 0;
+					while (k<others && chars[k]!=c) {
+						k++;
+					}
+					if (k==others) {
+						chars[others++] = c;
+					}
+					masks[k] |= bit;
+				}
+			}
+			this.otherChars = Arrays.copyOf(chars, others);
+			this.otherMasks = Arrays.copyOf(masks, others);
+		}
+
+		long get(char c) {
+			return c<128 ? ascii[c] : getOther(c);
+		}
+
+		long getOther(char c) {
+			for (int k = 0; k < otherChars.length; k++) {
+				if (otherChars[k]==c) {
+					return otherMasks[k];
+				}
+			}
+			return 0L;
+		}
+
+		private char fold(char c) {
+			return !caseSensitive && c>='A' && c<='Z' ? (char)(c + ('a'-'A')) : c;
+		}
+	}
+
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.textmatch;
+
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+
+/**
+ * TextMatcher that searches for a literal string using the Boyer-Moore-Horspool algorithm.
+ * <p>
+ * Case insensitive matching folds only ASCII letters. This is the same as what
+ * {@link java.util.regex.Pattern#CASE_INSENSITIVE} does, so the results are identical to
+ * matching the (quoted) literal with a regular expression.
+ */
+public class LiteralMatcher implements TextMatcher {
+
+	/**
+	 * Maps every ASCII char onto its lower case version. When matching case insensitively, chars in
+	 * both the pattern and the text are 'folded' with this table before comparing them.
+	 */
+	static final char[] ASCII_LOWER = new char[128];
+	static {
+		for (char c = 0; c < ASCII_LOWER.length; c++) {
+			ASCII_LOWER[c] = (c>='A' && c<='Z') ? (char)(c + ('a'-'A')) : c;
+		}
+	}
+
+	/**
+	 * Identity map, used when matching case sensitively so we don't need to test the case sensitive
+	 * flag in the inner loop.
+	 */
+	static final char[] IDENTITY = new char[128];
+	static {
+		for (char c = 0; c < IDENTITY.length; c++) {
+			IDENTITY[c] = c;
+		}
+	}
+
+	private final String literal;
+	private final boolean caseSensitive;
+
+	/**
+	 * The literal, already folded.
+	 */
+	private final char[] pattern;
+	private final char[] fold;
+
+	/**
+	 * Horspool 'bad character' shift table. Indexed by the low byte of a char, so chars that
+	 * share the same low byte share an entry (it keeps the smallest shift of any of them, so
+	 * this is always safe).
+	 */
+	private final int[] shift = new int[256];
+
+	public LiteralMatcher(String literal, boolean caseSensitive) {
+		this.literal = literal;
+		this.caseSensitive = caseSensitive;
+		this.fold = caseSensitive ? IDENTITY : ASCII_LOWER;
+		this.pattern = new char[literal.length()];
+		for (int i = 0; i < pattern.length; i++) {
+			pattern[i] = fold(literal.charAt(i));
+		}
+		int last = pattern.length - 1;
+		for (int i = 0; i < shift.length; i++) {
+			shift[i] = pattern.length;
+		}
+		for (int i = 0; i < last; i++) {
+			shift[pattern[i] & 0xFF] = last - i;
+		}
+	}
+
+	private char fold(char c) {
+		return c < 128 ? fold[c] : c;
+	}
+
+	/**
+	 * @return the position of the first occurrence of the literal in the text at or after the
+	 *   'from' position; or -1 if there is no such occurrence.
+	 */
+	public int indexOf(CharSequence text, int from) {
+		final char[] pattern = this.pattern;
+		final int last = pattern.length - 1;
+		final int end = text.length();
+		if (last<0) {
+			return from<=end ? Math.max(from, 0) : -1;
+		}
+		final char lastChar = pattern[last];
+		int i = Math.max(from, 0) + last; //Position in text aligned with the last char of the pattern.
+		while (i < end) {
+			char c = fold(text.charAt(i));
+			if (c==lastChar) {
+				int start = i - last;
+				int j = last - 1;
+				while (j>=0 && fold(text.charAt(start+j))==pattern[j]) {
+					j--;
+				}
+				if (j<0) {
+					return start;
+				}
+			}
+			i += shift[c & 0xFF];
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean matches(CharSequence text) {
+		return indexOf(text, 0)>=0;
+	}
+
+	@Override
+	public IRegion find(CharSequence text, int from) {
+		int start = indexOf(text, from);
+		if (start>=0) {
+			return new Region(start, pattern.length);
+		}
+		return null;
+	}
+
+	public String getLiteral() {
+		return literal;
+	}
+
+	public boolean isCaseSensitive() {
+		return caseSensitive;
+	}
+
+	@Override
+	public String toString() {
+		return "LiteralMatcher("+literal+", "+(caseSensitive?"caseSens":"caseInSens")+")";
+	}
+
+}
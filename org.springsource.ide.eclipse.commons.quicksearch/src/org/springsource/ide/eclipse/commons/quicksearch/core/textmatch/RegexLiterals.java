@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.textmatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds literal strings that any match of a regular expression must contain. These can be searched
+ * for with a fast {@link LiteralMatcher} to reject most text before running the regexp.
+ * <p>
+ * The analysis is conservative. It only looks at the top level of the expression: groups,
+ * character classes and escapes other than quoted chars just end a literal, and an expression with
+ * a top level '|' or with embedded flags has no required literals at all.
+ */
+public class RegexLiterals {
+
+	private final String regex;
+	private int pos = 0;
+
+	private final List<String> literals = new ArrayList<String>();
+	private final StringBuilder current = new StringBuilder();
+
+	private RegexLiterals(String regex) {
+		this.regex = regex;
+	}
+
+	/**
+	 * Compute the required literals of a regexp. The regexp should be valid, i.e. it should have
+	 * been compiled successfully.
+	 *
+	 * @return The literals, possibly none.
+	 */
+	public static List<String> requiredLiterals(String regex) {
+		RegexLiterals analysis = new RegexLiterals(regex);
+		if (!analysis.analyze()) {
+			return Collections.emptyList();
+		}
+		return analysis.literals;
+	}
+
+	/**
+	 * @return false if there's no point looking for literals.
+	 */
+	private boolean analyze() {
+		int len = regex.length();
+		while (pos<len) {
+			char c = regex.charAt(pos++);
+			switch (c) {
+			case '|':
+				//Any of the alternatives might match.
+				return false;
+			case '(':
+				if (pos<len && regex.charAt(pos)=='?' && pos+1<len && isFlag(regex.charAt(pos+1))) {
+					//Like '(?i)'. Changes how the rest of the expression matches.
+					return false;
+				}
+				endLiteral();
+				skipGroup();
+				break;
+			case '[':
+				endLiteral();
+				skipClass();
+				break;
+			case '*':
+			case '?':
+			case '{':
+				//The preceding char is optional (or at least we don't bother working out whether it is).
+				dropLastChar();
+				endLiteral();
+				if (c=='{') {
+					skipTo('}');
+				}
+				break;
+			case '+':
+				//The preceding char is still needed once, but nothing can follow it.
+				endLiteral();
+				break;
+			case '\\':
+				escape();
+				break;
+			case '.':
+			case '^':
+			case '$':
+				endLiteral();
+				break;
+			default:
+				current.append(c);
+				break;
+			}
+		}
+		endLiteral();
+		return true;
+	}
+
+	private static boolean isFlag(char c) {
+		return Character.isLetter(c) || c=='-';
+	}
+
+	private void escape() {
+		int len = regex.length();
+		if (pos>=len) {
+			return;
+		}
+		char c = regex.charAt(pos++);
+		if (!Character.isLetterOrDigit(c)) {
+			//A quoted special char.
+			current.append(c);
+			return;
+		}
+		if (c=='Q') {
+			int end = regex.indexOf("\\E", pos);
+			if (end<0) {
+				end = len;
+			}
+			current.append(regex, pos, end);
+			pos = Math.min(end+2, len);
+			return;
+		}
+		//Character class, boundary, back reference or char code. Skip its arguments so they aren't
+		// mistaken for literal chars.
+		endLiteral();
+		switch (c) {
+		case 'x':
+			if (pos<len && regex.charAt(pos)=='{') {
+				skipTo('}');
+			} else {
+				pos = Math.min(pos+2, len);
+			}
+			break;
+		case 'u':
+			pos = Math.min(pos+4, len);
+			break;
+		case 'c':
+			pos = Math.min(pos+1, len);
+			break;
+		case '0':
+			for (int i = 0; i < 3 && pos<len && regex.charAt(pos)>='0' && regex.charAt(pos)<='7'; i++) {
+				pos++;
+			}
+			break;
+		case 'p':
+		case 'P':
+		case 'N':
+			if (pos<len && regex.charAt(pos)=='{') {
+				skipTo('}');
+			} else {
+				pos = Math.min(pos+1, len);
+			}
+			break;
+		case 'k':
+			skipTo('>');
+			break;
+		default:
+			if (c>='1' && c<='9') {
+				while (pos<len && Character.isDigit(regex.charAt(pos))) {
+					pos++;
+				}
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Skip past the end of a group, the opening '(' has already been read.
+	 */
+	private void skipGroup() {
+		int depth = 1;
+		int len = regex.length();
+		while (pos<len && depth>0) {
+			char c = regex.charAt(pos++);
+			if (c=='\\') {
+				skipEscape();
+			} else if (c=='[') {
+				skipClass();
+			} else if (c=='(') {
+				depth++;
+			} else if (c==')') {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Skip past the end of a character class, the opening '[' has already been read.
+	 */
+	private void skipClass() {
+		int depth = 1;
+		int len = regex.length();
+		if (pos<len && regex.charAt(pos)=='^') {
+			pos++;
+		}
+		if (pos<len && regex.charAt(pos)==']') {
+			//A ']' right at the start is just a char.
+			pos++;
+		}
+		while (pos<len && depth>0) {
+			char c = regex.charAt(pos++);
+			if (c=='\\') {
+				skipEscape();
+			} else if (c=='[') {
+				depth++;
+			} else if (c==']') {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Skip an escape inside a group or class, the '\' has already been read.
+	 */
+	private void skipEscape() {
+		int len = regex.length();
+		if (pos<len && regex.charAt(pos)=='Q') {
+			int end = regex.indexOf("\\E", pos);
+			pos = end<0 ? len : end+2;
+		} else {
+			pos = Math.min(pos+1, len);
+		}
+	}
+
+	private void skipTo(char end) {
+		int i = regex.indexOf(end, pos);
+		pos = i<0 ? regex.length() : i+1;
+	}
+
+	private void dropLastChar() {
+		int len = current.length();
+		if (len>0) {
+			//A quantifier applies to a whole code point.
+			boolean pair = len>1 && Character.isLowSurrogate(current.charAt(len-1)) && Character.isHighSurrogate(current.charAt(len-2));
+			current.setLength(len - (pair ? 2 : 1));
+		}
+	}
+
+	private void endLiteral() {
+		if (current.length()>0) {
+			literals.add(current.toString());
+			current.setLength(0);
+		}
+	}
+
+}
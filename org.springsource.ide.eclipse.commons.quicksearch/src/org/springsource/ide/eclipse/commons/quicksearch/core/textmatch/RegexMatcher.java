@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.textmatch;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+
+/**
+ * TextMatcher based on a java regular expression.
+ * <p>
+ * Optionally, the matcher can be given literals that any match must contain, which are searched for
+ * first to quickly reject text, and a step budget that stops backtracking patterns from taking
+ * forever on a single line.
+ */
+public class RegexMatcher implements TextMatcher {
+
+	/**
+	 * Thrown when a search runs out of steps. Shared, since it has no stack trace and we only care
+	 * that it happened.
+	 */
+	@SuppressWarnings("serial")
+	private static final RuntimeException BUDGET_EXCEEDED = new RuntimeException("Regexp step budget exceeded", null, false, false) {};
+
+	private final Pattern pattern;
+
+	/**
+	 * Literals that every match contains, longest first.
+	 */
+	private final LiteralMatcher[] required;
+
+	/**
+	 * The number of chars the regexp engine may read, per char of the text, before giving up. Or 0
+	 * for no limit.
+	 */
+	private final int stepsPerChar;
+
+	public RegexMatcher(Pattern pattern) {
+		this(pattern, null, 0);
+	}
+
+	/**
+	 * @param required Literals that any match must contain, e.g. computed with {@link RegexLiterals}. May be null.
+	 * @param stepsPerChar Bounds the work done for a single text. A text for which the budget is
+	 *     exceeded is treated as having no matches. Use 0 for no limit.
+	 */
+	public RegexMatcher(Pattern pattern, List<String> required, int stepsPerChar) {
+		this.pattern = pattern;
+		this.stepsPerChar = stepsPerChar;
+		boolean caseSensitive = (pattern.flags() & Pattern.CASE_INSENSITIVE)==0;
+		LiteralMatcher[] literals = new LiteralMatcher[required==null ? 0 : required.size()];
+		for (int i = 0; i < literals.length; i++) {
+			literals[i] = new LiteralMatcher(required.get(i), caseSensitive);
+		}
+		Arrays.sort(literals, (a, b) -> b.getLiteral().length() - a.getLiteral().length());
+		this.required = literals;
+	}
+
+	@Override
+	public boolean matches(CharSequence text) {
+		if (!containsRequired(text)) {
+			return false;
+		}
+		//Creates some garbage, but this is thread safe without synchronization.
+		try {
+			return pattern.matcher(budgeted(text)).find();
+		} catch (RuntimeException e) {
+			if (e==BUDGET_EXCEEDED) {
+				return false;
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public IRegion find(CharSequence text, int from) {
+		if (!containsRequired(text)) {
+			return null;
+		}
+		Matcher matcher = pattern.matcher(budgeted(text));
+		try {
+			if (from<=text.length() && matcher.find(from)) {
+				return new Region(matcher.start(), matcher.end()-matcher.start());
+			}
+		} catch (RuntimeException e) {
+			if (e!=BUDGET_EXCEEDED) {
+				throw e;
+			}
+		}
+		return null;
+	}
+
+	private boolean containsRequired(CharSequence text) {
+		for (LiteralMatcher literal : required) {
+			if (!literal.matches(text)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private CharSequence budgeted(CharSequence text) {
+		if (stepsPerChar<=0) {
+			return text;
+		}
+		return new BudgetedText(text, (int) Math.min(Integer.MAX_VALUE, stepsPerChar * (text.length()+1L)));
+	}
+
+	@Override
+	public String toString() {
+		return "RegexMatcher("+pattern+")";
+	}
+
+	/**
+	 * Counts the chars read by the regexp engine and bails out when there have been too many.
+	 * Backtracking reads the same chars over and over, so this bounds the time spent.
+	 */
+	private static class BudgetedText implements CharSequence {
+
+		private final CharSequence text;
+		private int steps;
+
+		BudgetedText(CharSequence text, int steps) {
+			this.text = text;
+			this.steps = steps;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (--steps<0) {
+				throw BUDGET_EXCEEDED;
+			}
+			return text.charAt(index);
+		}
+
+		@Override
+		public int length() {
+			return text.length();
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return text.subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return text.toString();
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.textmatch;
+
+import org.eclipse.jface.text.IRegion;
+
+/**
+ * Finds occurrences of a (compiled) search pattern in a line of text.
+ * <p>
+ * Implementations must be thread safe, the same matcher is used concurrently
+ * by all the threads searching files.
+ */
+public interface TextMatcher {
+
+	/**
+	 * @return true if the text contains at least one match. This is called for every line
+	 *   of text that is searched, so implementations should try hard to be fast and avoid
+	 *   creating garbage.
+	 */
+	boolean matches(CharSequence text);
+
+	/**
+	 * Find the first match that starts at or after a given position in the text.
+	 *
+	 * @return The region of the match, or null if there is no match.
+	 */
+	IRegion find(CharSequence text, int from);
+
+}
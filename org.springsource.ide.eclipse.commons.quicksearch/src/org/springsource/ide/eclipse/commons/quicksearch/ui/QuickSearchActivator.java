@@ -6,6 +6,11 @@ import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.BloomFilterTable;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.ContentCache;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.ContentSniffer;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.IndexMaintainer;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.TrigramIndex;
 import org.springsource.ide.eclipse.commons.quicksearch.core.preferences.QuickSearchPreferences;
 
 /**
@@ -20,6 +25,12 @@ public class QuickSearchActivator extends AbstractUIPlugin {
 	private static QuickSearchActivator plugin;
 
 	private QuickSearchPreferences prefs = null; //Lazy initialized
+
+	private TrigramIndex index = null; //Lazy initialized
+	private IndexMaintainer indexMaintainer = null; //Lazy initialized
+	private ContentCache contentCache = null; //Lazy initialized
+	private BloomFilterTable bloomFilters = null; //Lazy initialized
+	private ContentSniffer contentSniffer = null; //Lazy initialized
 	
 	/**
 	 * The constructor
@@ -41,6 +52,23 @@ public class QuickSearchActivator extends AbstractUIPlugin {
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		synchronized (this) {
+			if (indexMaintainer!=null) {
+				indexMaintainer.stop();
+				indexMaintainer = null;
+			}
+			contentCache = null;
+			bloomFilters = null;
+			contentSniffer = null;
+			if (index!=null) {
+				try {
+					index.save();
+				} catch (Exception e) {
+					log(e);
+				}
+				index = null;
+			}
+		}
 		plugin = null;
 		super.stop(context);
 	}
@@ -88,5 +116,108 @@ public class QuickSearchActivator extends AbstractUIPlugin {
 		}
 		return prefs;
 	}
+
+	/**
+	 * @return The workspace trigram index or null if the index is disabled in the preferences.
+	 */
+	public synchronized TrigramIndex getTrigramIndex() {
+		if (!getPreferences().isIndexEnabled()) {
+			if (index!=null) {
+				//Stop keeping it up-to-date. Save it first, it's still valid for the files that don't
+				// change while it is off.
+				removeParticipant(index);
+				try {
+					index.save();
+				} catch (Exception e) {
+					log(e);
+				}
+				index = null;
+			}
+			return null;
+		}
+		if (index==null) {
+			index = new TrigramIndex(getStateLocation().append("trigram.index").toFile());
+			getIndexMaintainer().addParticipant(index);
+		}
+		return index;
+	}
+
+	/**
+	 * @return The cache for the contents of recently searched files or null if caching is disabled
+	 *    in the preferences.
+	 */
+	public synchronized ContentCache getContentCache() {
+		long budget = getPreferences().getContentCacheBudget();
+		if (budget<=0) {
+			if (contentCache!=null) {
+				//Free the memory, rather than just ignoring the cache.
+				contentCache.setBudget(0);
+			}
+			return null;
+		}
+		if (contentCache==null) {
+			contentCache = new ContentCache(budget);
+			getIndexMaintainer().addParticipant(contentCache);
+		} else {
+			contentCache.setBudget(budget);
+		}
+		return contentCache;
+	}
+
+	/**
+	 * @return The table of bloom filters for searched files, or null if disabled in the preferences.
+	 */
+	public synchronized BloomFilterTable getBloomFilterTable() {
+		if (!getPreferences().isBloomFiltersEnabled()) {
+			//Drop the filters, there's no point keeping them in memory.
+			if (bloomFilters!=null) {
+				removeParticipant(bloomFilters);
+				bloomFilters = null;
+			}
+			return null;
+		}
+		if (bloomFilters==null) {
+			bloomFilters = new BloomFilterTable();
+			getIndexMaintainer().addParticipant(bloomFilters);
+		}
+		return bloomFilters;
+	}
+
+	/**
+	 * @return The detector for binary files, or null if disabled in the preferences.
+	 */
+	public synchronized ContentSniffer getContentSniffer() {
+		if (!getPreferences().isBinarySniffingEnabled()) {
+			//Drop the verdicts, there's no point keeping them in memory.
+			if (contentSniffer!=null) {
+				removeParticipant(contentSniffer);
+				contentSniffer = null;
+			}
+			return null;
+		}
+		if (contentSniffer==null) {
+			contentSniffer = new ContentSniffer();
+			getIndexMaintainer().addParticipant(contentSniffer);
+		}
+		return contentSniffer;
+	}
+
+	private void removeParticipant(IndexMaintainer.Participant participant) {
+		if (indexMaintainer!=null) {
+			indexMaintainer.removeParticipant(participant);
+		}
+	}
+
+	/**
+	 * @return The component that keeps the trigram index (and other per-file data) up-to-date as
+	 *    workspace files change. It is started when first requested.
+	 */
+	public synchronized IndexMaintainer getIndexMaintainer() {
+		if (indexMaintainer==null) {
+			indexMaintainer = new IndexMaintainer();
+			indexMaintainer.start();
+		}
+		return indexMaintainer;
+	}
 	
 }
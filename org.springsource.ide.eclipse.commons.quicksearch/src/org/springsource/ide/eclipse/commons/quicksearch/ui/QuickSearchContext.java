@@ -64,16 +64,11 @@ public class QuickSearchContext {
 		PrioriTree priorities = PrioriTree.create();
 		priorities.configure(QuickSearchActivator.getDefault().getPreferences());
 		try {
-// TODO: This is not working correctly right now, if the selected resources are containers / folders.
-// The PrioriTree only assigns a priority to the folder itself, but not to its children.
-// So open editors will automatically take priority over the children of selected projects.
-// To fix, PrioriTree will need a mechanism to assign priorities to children.
-// If doing so, care must be taken not to accidentally assign priorities to ignored
-// resources.
-
+			//Everything inside selected folders / projects is more interesting than open files. Ignored
+			// resources stay ignored, the tree never raises their priority.
 			Collection<IResource> selectedResources = getSelectedResources();
 			for (IResource r : selectedResources) {
-				priorities.setPriority(r.getFullPath(), 3*PriorityFunction.PRIORITY_INTERESTING);
+				priorities.setPriority(r.getFullPath(), 3*PriorityFunction.PRIORITY_INTERESTING, 3*PriorityFunction.PRIORITY_INTERESTING);
 			}
 
 			IFile currentFile = getActiveFile();
@@ -130,7 +125,7 @@ public class QuickSearchContext {
 	 * Gets the IFile that is currently open in the active editor.
 	 * @return IFile or null if there is no current editor or the editor isn't associated to a file.
 	 */
-	private IFile getActiveFile() {
+	public IFile getActiveFile() {
 		IWorkbenchPage page = window.getActivePage();
 		if (page!=null) {
 			IEditorPart editor = page.getActiveEditor();
@@ -17,9 +17,7 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.quicksearch.ui;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.core.commands.AbstractHandler;
@@ -114,7 +112,9 @@ import org.eclipse.ui.internal.WorkbenchMessages;
 import org.eclipse.ui.internal.ide.IDEWorkbenchPlugin;
 import org.eclipse.ui.progress.UIJob;
 import org.springsource.ide.eclipse.commons.quicksearch.core.LineItem;
+import org.springsource.ide.eclipse.commons.quicksearch.core.MatchStore;
 import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery.Mode;
 import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery.TextRange;
 import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextSearchRequestor;
 import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextSearcher;
@@ -347,6 +347,12 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 	private static final String DIALOG_PATH_FILTER = "PATH_FILTER";
 	private static final String CASE_SENSITIVE = "CASE_SENSITIVE";
 	private static final boolean CASE_SENSITIVE_DEFAULT = true;
+	private static final String REGEXP = "REGEXP";
+	private static final boolean REGEXP_DEFAULT = false;
+	private static final String FUZZY = "FUZZY";
+	private static final boolean FUZZY_DEFAULT = false;
+	private static final String MULTI_TERM = "MULTI_TERM";
+	private static final boolean MULTI_TERM_DEFAULT = false;
 
 	private static final String KEEP_OPEN = "KEEP_OPEN";
 	private static final boolean KEEP_OPEN_DEFAULT = false;
@@ -395,6 +401,8 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 
 	private final int MAX_LINE_LEN;
 
+	private final int SEARCH_THREADS;
+
 	private IHandlerActivation showViewHandler;
 
 	private QuickTextSearcher searcher;
@@ -405,6 +413,9 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 
 
 	private ToggleCaseSensitiveAction toggleCaseSensitiveAction;
+	private ToggleRegexpAction toggleRegexpAction;
+	private ToggleFuzzyAction toggleFuzzyAction;
+	private ToggleMultiTermAction toggleMultiTermAction;
 	private ToggleKeepOpenAction toggleKeepOpenAction;
 	
 
@@ -438,6 +449,7 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		contentProvider = new ContentProvider();
 		selectionMode = NONE;
 		MAX_LINE_LEN = QuickSearchActivator.getDefault().getPreferences().getMaxLineLen();
+		SEARCH_THREADS = QuickSearchActivator.getDefault().getPreferences().getSearchThreads();
 	}
 
 //	/**
@@ -573,6 +585,81 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		}
 	}
 
+	/**
+	 * Regexp, fuzzy and multi term matching are exclusive, checking one unchecks the others.
+	 */
+	private class ToggleRegexpAction extends Action {
+
+		public ToggleRegexpAction(IDialogSettings settings) {
+			super(
+					"Regular Expression",
+					IAction.AS_CHECK_BOX
+			);
+			if (settings.get(REGEXP)==null) {
+				setChecked(REGEXP_DEFAULT);
+			} else{
+				setChecked(settings.getBoolean(REGEXP));
+			}
+		}
+
+		public void run() {
+			if (isChecked()) {
+				toggleFuzzyAction.setChecked(false);
+				toggleMultiTermAction.setChecked(false);
+			}
+			refreshHeaderLabel();
+			applyFilter(false);
+		}
+	}
+
+	private class ToggleFuzzyAction extends Action {
+
+		public ToggleFuzzyAction(IDialogSettings settings) {
+			super(
+					"Fuzzy (Allow Typos)",
+					IAction.AS_CHECK_BOX
+			);
+			if (settings.get(FUZZY)==null) {
+				setChecked(FUZZY_DEFAULT);
+			} else{
+				setChecked(settings.getBoolean(FUZZY));
+			}
+		}
+
+		public void run() {
+			if (isChecked()) {
+				toggleRegexpAction.setChecked(false);
+				toggleMultiTermAction.setChecked(false);
+			}
+			refreshHeaderLabel();
+			applyFilter(false);
+		}
+	}
+
+	private class ToggleMultiTermAction extends Action {
+
+		public ToggleMultiTermAction(IDialogSettings settings) {
+			super(
+					"Multiple Terms (' & ' Same Line, ' && ' Same File)",
+					IAction.AS_CHECK_BOX
+			);
+			if (settings.get(MULTI_TERM)==null) {
+				setChecked(MULTI_TERM_DEFAULT);
+			} else{
+				setChecked(settings.getBoolean(MULTI_TERM));
+			}
+		}
+
+		public void run() {
+			if (isChecked()) {
+				toggleRegexpAction.setChecked(false);
+				toggleFuzzyAction.setChecked(false);
+			}
+			refreshHeaderLabel();
+			applyFilter(false);
+		}
+	}
+
 
 	/*
 	 * (non-Javadoc)
@@ -614,6 +701,15 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		if (toggleCaseSensitiveAction!=null) {
 			settings.put(CASE_SENSITIVE, toggleCaseSensitiveAction.isChecked());
 		}
+		if (toggleRegexpAction!=null) {
+			settings.put(REGEXP, toggleRegexpAction.isChecked());
+		}
+		if (toggleFuzzyAction!=null) {
+			settings.put(FUZZY, toggleFuzzyAction.isChecked());
+		}
+		if (toggleMultiTermAction!=null) {
+			settings.put(MULTI_TERM, toggleMultiTermAction.isChecked());
+		}
 		if (toggleKeepOpenAction!=null) {
 			settings.put(KEEP_OPEN, toggleKeepOpenAction.isChecked());
 		}
@@ -672,10 +768,32 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 
 	private void refreshHeaderLabel() {
 		String msg = toggleCaseSensitiveAction.isChecked() ? "Case SENSITIVE" : "Case INSENSITIVE";
-		msg += " Pattern (? = any character, * = any string)";
+		if (toggleRegexpAction.isChecked()) {
+			msg += " Regular Expression";
+		} else if (toggleFuzzyAction.isChecked()) {
+			msg += " Fuzzy Pattern (up to one typo per 4 characters)";
+		} else if (toggleMultiTermAction.isChecked()) {
+			msg += " Terms (? = any character, * = any string, ' & ' = same line, ' && ' = same file)";
+		} else {
+			msg += " Pattern (? = any character, * = any string)";
+		}
 		headerLabel.setText(msg);
 	}
 
+	/**
+	 * Shows what's wrong with the pattern in the header, instead of the usual message.
+	 */
+	private void refreshHeaderLabel(QuickTextQuery filter) {
+		if (headerLabel==null || headerLabel.isDisposed()) {
+			return;
+		}
+		if (filter.getPatternError()!=null) {
+			headerLabel.setText("Invalid Regular Expression: "+filter.getPatternError());
+		} else {
+			refreshHeaderLabel();
+		}
+	}
+
 	/**
 	 * Create the labels for the list and the progress. Return the list label.
 	 *
@@ -765,6 +883,18 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		IDialogSettings settings = getDialogSettings();
 		toggleCaseSensitiveAction = new ToggleCaseSensitiveAction(settings);
 		menuManager.add(toggleCaseSensitiveAction);
+		toggleRegexpAction = new ToggleRegexpAction(settings);
+		menuManager.add(toggleRegexpAction);
+		toggleFuzzyAction = new ToggleFuzzyAction(settings);
+		menuManager.add(toggleFuzzyAction);
+		toggleMultiTermAction = new ToggleMultiTermAction(settings);
+		menuManager.add(toggleMultiTermAction);
+		if (toggleRegexpAction.isChecked()) {
+			toggleFuzzyAction.setChecked(false);
+		}
+		if (toggleRegexpAction.isChecked() || toggleFuzzyAction.isChecked()) {
+			toggleMultiTermAction.setChecked(false);
+		}
 		toggleKeepOpenAction = new ToggleKeepOpenAction(settings);
 		menuManager.add(toggleKeepOpenAction);
 	}
@@ -1236,9 +1366,16 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		if (list != null && !list.getTable().isDisposed()) {
 //			ScrollBar sb = list.getTable().getVerticalBar();
 //			int oldScroll = sb.getSelection();
+			int firstChange = contentProvider.takeFirstChange();
 			int itemCount = contentProvider.getNumberOfElements();
 			list.setItemCount(itemCount);
-			list.refresh(true, false);
+			if (contentProvider.takeLabelsChanged()) {
+				list.refresh(true, false);
+			} else if (firstChange>=0 && firstChange<itemCount) {
+				//Rows before the first change still show the same match. The others are fetched again
+				// when they are shown.
+				list.getTable().clear(firstChange, itemCount-1);
+			}
 			Button goButton = getButton(GO_BUTTON_ID);
 			if (goButton!=null && !goButton.isDisposed()) {
 				//Even if no element is selected. The dialog should be have as if the first
@@ -1425,7 +1562,11 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 	 *        the list.
 	 */
 	protected QuickTextQuery createFilter() {
-		return new QuickTextQuery(pattern.getText(), toggleCaseSensitiveAction.isChecked());
+		Mode mode = toggleRegexpAction.isChecked() ? Mode.REGEXP
+				: toggleFuzzyAction.isChecked() ? Mode.FUZZY
+				: toggleMultiTermAction.isChecked() ? Mode.MULTI_TERM
+				: Mode.WILDCARD;
+		return new QuickTextQuery(pattern.getText(), toggleCaseSensitiveAction.isChecked(), mode);
 	}
 
 	/**
@@ -1440,30 +1581,43 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 	 */
 	protected void applyFilter(boolean force) {
 		QuickTextQuery newFilter = createFilter();
+		refreshHeaderLabel(newFilter);
 		if (this.searcher==null) {
 			if (!newFilter.isTrivial()) {
 				//Create the QuickTextSearcher with the inital query.
-				this.searcher = new QuickTextSearcher(newFilter, context.createPriorityFun(), MAX_LINE_LEN, new QuickTextSearchRequestor() {
+				this.searcher = new QuickTextSearcher(newFilter, context.createPriorityFun(), context.getActiveFile(), MAX_LINE_LEN, SEARCH_THREADS, new QuickTextSearchRequestor() {
 					@Override
 					public void add(LineItem match) {
-						contentProvider.add(match);
 						contentProvider.refresh();
 					}
 					@Override
 					public void clear() {
-						contentProvider.reset();
 						contentProvider.refresh();
 					}
 					@Override
 					public void revoke(LineItem match) {
-						contentProvider.remove(match);
 						contentProvider.refresh();
 					}
 					@Override
 					public void update(LineItem match) {
+						contentProvider.refreshLabels();
+					}
+					//Results arrive in batches. A single refresh is enough for each batch.
+					@Override
+					public void addAll(List<LineItem> matches) {
+						contentProvider.refresh();
+					}
+					@Override
+					public void revokeAll(List<LineItem> lines) {
 						contentProvider.refresh();
 					}
+					@Override
+					public void updateAll(List<LineItem> matches) {
+						contentProvider.refreshLabels();
+					}
 				});
+				//The list shows the searcher's matches directly, rather than keeping a copy.
+				contentProvider.setSearcher(searcher);
 				applyPathMatcher();
 				refreshWidgets();
 			}
@@ -1518,37 +1672,43 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 	 */
 	private class ContentProvider implements IStructuredContentProvider, ILazyContentProvider {
 
-		private List items;
+		private MatchStore items;
+
+		/**
+		 * Set when the searcher ranks its matches. The table then shows the {@link #ranked} matches, best
+		 * first, rather than the matches in the order they were found.
+		 */
+		private QuickTextSearcher rankedSearcher = null;
+
+		/**
+		 * The ranked matches at the last refresh.
+		 */
+		private LineItem[] ranked = new LineItem[0];
 
 		/**
 		 * Creates new instance of <code>ContentProvider</code>.
 		 */
 		public ContentProvider() {
-			this.items = Collections.synchronizedList(new ArrayList(2048));
+			this.items = new MatchStore(); //Empty until there is a searcher.
 //			this.duplicates = Collections.synchronizedSet(new HashSet(256));
 //			this.lastSortedItems = Collections.synchronizedList(new ArrayList(
 //					2048));
 		}
 
-		public void remove(LineItem match) {
-			this.items.remove(match);
-		}
-
 		/**
-		 * Removes all content items and resets progress message.
+		 * Show the matches of a searcher. These are kept up-to-date by the searcher.
 		 */
-		public void reset() {
-			this.items.clear();
+		public void setSearcher(QuickTextSearcher searcher) {
+			this.items = searcher.getMatches();
+			this.rankedSearcher = searcher.isRanked() ? searcher : null;
+			labelsChanged = true;
 		}
 
 		/**
-		 * Adds filtered item.
-		 *
-		 * @param match
+		 * Set when the matches stay the same, but their labels need to be redrawn (i.e. the
+		 * highlighting changed).
 		 */
-		public void add(LineItem match) {
-			this.items.add(match);
-		}
+		private volatile boolean labelsChanged = false;
 
 		/**
 		 * Refresh dialog.
@@ -1557,16 +1717,57 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 			scheduleRefresh();
 		}
 
+		/**
+		 * Refresh dialog, including the labels of rows that didn't change.
+		 */
+		public void refreshLabels() {
+			labelsChanged = true;
+			scheduleRefresh();
+		}
+
+		public boolean takeLabelsChanged() {
+			boolean changed = labelsChanged;
+			labelsChanged = false;
+			return changed;
+		}
+
+		/**
+		 * @return The first row that changed since the last call, or -1. See {@link MatchStore#takeFirstChange()}.
+		 *    With ranked matches, this also takes a new snapshot of the ranking.
+		 */
+		public int takeFirstChange() {
+			int firstChange = items.takeFirstChange();
+			if (rankedSearcher!=null) {
+				//Even if no match was added or removed, the ranking changes when the query changes.
+				LineItem[] old = ranked;
+				ranked = rankedSearcher.getRankedMatches();
+				firstChange = 0;
+				while (firstChange<old.length && firstChange<ranked.length && old[firstChange].equals(ranked[firstChange])) {
+					firstChange++;
+				}
+				if (firstChange==old.length && firstChange==ranked.length) {
+					firstChange = -1;
+				}
+			}
+			return firstChange;
+		}
+
 		/*
 		 * (non-Javadoc)
 		 *
 		 * @see org.eclipse.jface.viewers.IStructuredContentProvider#getElements(java.lang.Object)
 		 */
 		public Object[] getElements(Object inputElement) {
-			return items.toArray();
+			if (rankedSearcher!=null) {
+				return ranked.clone();
+			}
+			return items.toList().toArray();
 		}
 
 		public int getNumberOfElements() {
+			if (rankedSearcher!=null) {
+				return ranked.length;
+			}
 			return items.size();
 		}
 
@@ -1594,9 +1795,18 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		 */
 		public void updateElement(int index) {
 
-			QuickSearchDialog.this.list.replace((items
-					.size() > index) ? items.get(index) : null,
-					index);
+			LineItem item;
+			if (rankedSearcher!=null) {
+				LineItem[] ranked = this.ranked;
+				item = ranked.length > index ? ranked[index] : null;
+			} else {
+				MatchStore items = this.items;
+				synchronized (items) {
+					//The searcher may be changing the matches at the same time.
+					item = items.size() > index ? items.get(index) : null;
+				}
+			}
+			QuickSearchDialog.this.list.replace(item, index);
 
 		}
 
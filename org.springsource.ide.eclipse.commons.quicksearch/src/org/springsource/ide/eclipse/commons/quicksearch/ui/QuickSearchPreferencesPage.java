@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.quicksearch.ui;
 
+import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.ui.IWorkbench;
@@ -54,9 +55,63 @@ public class QuickSearchPreferencesPage extends FieldEditorPreferencePage implem
 		IntegerFieldEditor field_maxLineLen = new IntegerFieldEditor(QuickSearchPreferences.MAX_LINE_LEN, "Max Line Length", getFieldEditorParent());
 		field_maxLineLen.getTextControl(getFieldEditorParent()).setToolTipText(
 				"When QuickSearch encounters a line of text longer than 'Max Line Length' it stops " + 
-				"searching the current file. This is meant to avoid searching in machine generated text " + 
-				"files, such as, minified javascript.");
+				"searching the current file, unless very long lines are searched in windows. This is meant " +
+				"to avoid searching in machine generated text files, such as, minified javascript.");
 		addField(field_maxLineLen);
+
+		BooleanFieldEditor field_windows = new BooleanFieldEditor(QuickSearchPreferences.LONG_LINE_WINDOWS, "Search very long lines in windows", getFieldEditorParent());
+		field_windows.getDescriptionControl(getFieldEditorParent()).setToolTipText(
+				"Search lines longer than 'Max Line Length' (e.g. in minified files) as a series of overlapping " +
+				"windows of that length, instead of skipping the rest of the file. Results show the part of the " +
+				"line around the match. Matches longer than a quarter of 'Max Line Length' may be missed.");
+		addField(field_windows);
+
+		BooleanFieldEditor field_sniffing = new BooleanFieldEditor(QuickSearchPreferences.BINARY_SNIFFING_ENABLED, "Skip files that look binary", getFieldEditorParent());
+		field_sniffing.getDescriptionControl(getFieldEditorParent()).setToolTipText(
+				"Look at the first few KB of each file before searching it, and skip it if it contains NUL bytes " +
+				"or many bytes that are not valid text. Each version of a file is only checked once.");
+		addField(field_sniffing);
+
+		IntegerFieldEditor field_searchThreads = new IntegerFieldEditor(QuickSearchPreferences.SEARCH_THREADS, "Search Threads", getFieldEditorParent());
+		field_searchThreads.setValidRange(1, 64);
+		field_searchThreads.getTextControl(getFieldEditorParent()).setToolTipText(
+				"Number of threads used to search files in parallel. Files with a higher priority " +
+				"(e.g. open editors and selected resources) are still searched first.");
+		addField(field_searchThreads);
+
+		IntegerFieldEditor field_mmap = new IntegerFieldEditor(QuickSearchPreferences.MMAP_THRESHOLD_KB, "Memory map files larger than (KB)", getFieldEditorParent());
+		field_mmap.setValidRange(0, Integer.MAX_VALUE/1024);
+		field_mmap.getTextControl(getFieldEditorParent()).setToolTipText(
+				"Large files are memory mapped rather than read through a stream, which is faster. " +
+				"Set to 0 to disable memory mapping.");
+		addField(field_mmap);
+
+		IntegerFieldEditor field_cache = new IntegerFieldEditor(QuickSearchPreferences.CONTENT_CACHE_MB, "Cache contents of searched files (MB)", getFieldEditorParent());
+		field_cache.setValidRange(0, 4096);
+		field_cache.getTextControl(getFieldEditorParent()).setToolTipText(
+				"Keep the contents of recently searched files in memory, so that changing the query doesn't " +
+				"read them from disk again. Set to 0 to disable the cache.");
+		addField(field_cache);
+
+		BooleanFieldEditor field_ranking = new BooleanFieldEditor(QuickSearchPreferences.RANKING_ENABLED, "Show the most relevant results first", getFieldEditorParent());
+		field_ranking.getDescriptionControl(getFieldEditorParent()).setToolTipText(
+				"Rank results by relevance (file priority, exact case and whole word matches, position in the line " +
+				"and closeness to the active editor) instead of the order in which they are found. The search then " +
+				"keeps going after the result limit is reached, keeping only the best results.");
+		addField(field_ranking);
+
+		BooleanFieldEditor field_bloom = new BooleanFieldEditor(QuickSearchPreferences.BLOOM_FILTERS_ENABLED, "Remember file contents in compact filters to skip files", getFieldEditorParent());
+		field_bloom.getDescriptionControl(getFieldEditorParent()).setToolTipText(
+				"Keep a small (Bloom) filter in memory for each searched file, so that later searches can skip " +
+				"files that can't contain a match without opening them. Uses up to 1 KB per file.");
+		addField(field_bloom);
+
+		BooleanFieldEditor field_index = new BooleanFieldEditor(QuickSearchPreferences.INDEX_ENABLED, "Use a trigram index to skip files", getFieldEditorParent());
+		field_index.getDescriptionControl(getFieldEditorParent()).setToolTipText(
+				"Remember which sequences of three characters occur in searched files, so that later searches " + 
+				"don't need to open files that can't contain a match. The index is kept on disk and uses " +
+				"extra memory while the workbench is running.");
+		addField(field_index);
 		
 		for (int i = 0; i < fieldNames.length; i++) {
 			MultilineStringFieldEditor field = new MultilineStringFieldEditor(prefsKeys[i], "Ignore "+fieldNames[i], getFieldEditorParent());
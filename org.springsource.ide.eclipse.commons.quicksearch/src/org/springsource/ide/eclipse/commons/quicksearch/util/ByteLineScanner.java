@@ -0,0 +1,507 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Pivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.springsource.ide.eclipse.commons.quicksearch.core.textmatch.ByteLiteralMatcher;
+
+/**
+ * Splits raw bytes into lines and searches them for a literal without decoding them into chars.
+ * Only lines that contain the literal are decoded.
+ * <p>
+ * Line numbers and (char based) line offsets are computed exactly like {@link LineReader} does
+ * for the decoded text. To do this without decoding, the charset must be one of the
+ * {@link #isSupported(Charset) supported} charsets. These all encode CR and LF as a single byte
+ * that is never part of the encoding of another character.
+ * <p>
+ * Malformed UTF-8, like Latin-1 text in a file that is declared to be UTF-8, is counted the way
+ * Java's decoder replaces it: one U+FFFD for each maximal prefix of a well-formed sequence, and one
+ * for each byte that can't start a sequence.
+ * <p>
+ * Like the LineReader, a scanner can split long lines into overlapping windows, see
+ * {@link #setLongLineWindows(boolean)}. Window boundaries always fall between chars, and move one
+ * char earlier rather than split a surrogate pair, like they do in the LineReader.
+ */
+public class ByteLineScanner {
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	/**
+	 * Source to refill the buffer from. Null if all bytes are already in the buffer.
+	 */
+	private InputStream input;
+	private ByteBuffer buf;
+
+	private final Charset charset;
+	private final boolean utf8;
+	private final int MAX_LINE_LENGTH;
+
+	private int pos = 0; //Start of the next line in the buffer.
+	private int lineStart = 0; //Start of the current line in the buffer.
+	private int lineEnd = 0; //End of the current line (excluding terminator) in the buffer.
+	private int lineNumber = 0; //Line number of the current line (1 based).
+	private int lineOffset = -1; //Char offset of the current line.
+	private int charOffset = 0; //Char offset of the next line.
+
+	private boolean longLineWindows = false;
+	private boolean partial = false; //Whether the current line is a window onto a longer line.
+	private boolean continued = false; //Whether the next window continues the current line.
+	private int skipped; //Chars skipped by the last call to skipChars.
+
+	/**
+	 * Receives all the bytes read by a scanner, in order.
+	 */
+	public interface ContentListener {
+		void bytesRead(byte[] bytes, int offset, int length);
+	}
+
+	private ContentListener listener = null;
+
+	/**
+	 * Create a scanner that reads the bytes from a stream.
+	 */
+	public ByteLineScanner(InputStream input, Charset charset, int maxLineLength) {
+		this(input, (ByteBuffer) ByteBuffer.allocate(BUFFER_SIZE).limit(0), charset, maxLineLength);
+	}
+
+	/**
+	 * Create a scanner for bytes that are all in a given buffer. The bytes between the buffer's current
+	 * position and its limit are scanned.
+	 * <p>
+	 * A direct (e.g. memory mapped) buffer is copied into a heap buffer one chunk at a time rather than
+	 * scanned in place. Scanning a heap buffer byte by byte is considerably faster, and the bulk copy is
+	 * cheap compared to that.
+	 */
+	public ByteLineScanner(ByteBuffer buf, Charset charset, int maxLineLength) {
+		this(buf.hasArray() ? null : new ByteBufferInputStream(buf.slice()),
+				buf.hasArray() ? buf.slice() : (ByteBuffer) ByteBuffer.allocate(BUFFER_SIZE).limit(0),
+				charset, maxLineLength);
+	}
+
+	private ByteLineScanner(InputStream input, ByteBuffer buf, Charset charset, int maxLineLength) {
+		this.input = input;
+		this.buf = buf;
+		this.charset = charset;
+		this.utf8 = "UTF-8".equals(charset.name());
+		this.MAX_LINE_LENGTH = maxLineLength;
+	}
+
+	/**
+	 * Create a scanner for the contents of a workspace file. Large files that exist in the local
+	 * file system are memory mapped and scanned directly. Other files are streamed through
+	 * {@link IFile#getContents(boolean)}.
+	 *
+	 * @param mmapThreshold Files of at least this many bytes are memory mapped. Zero or less
+	 *    disables memory mapping.
+	 */
+	public static ByteLineScanner open(IFile file, Charset charset, int maxLineLength, long mmapThreshold) throws CoreException {
+		if (mmapThreshold>0) {
+			IPath location = file.getLocation();
+			if (location!=null) {
+				File localFile = location.toFile();
+				long size = localFile.length();
+				if (size>=mmapThreshold && size<=Integer.MAX_VALUE) {
+					try (FileChannel channel = FileChannel.open(localFile.toPath(), StandardOpenOption.READ)) {
+						//The mapping stays valid after the channel is closed.
+						return new ByteLineScanner(channel.map(MapMode.READ_ONLY, 0, size), charset, maxLineLength);
+					} catch (IOException e) {
+						//Fall back to reading it the 'normal' way.
+					}
+				}
+			}
+		}
+		return new ByteLineScanner(file.getContents(true), charset, maxLineLength);
+	}
+
+	/**
+	 * Set a listener that receives all bytes of the input, also those in lines that are skipped. The
+	 * listener must be set before scanning starts.
+	 */
+	public void setContentListener(ContentListener listener) {
+		this.listener = listener;
+		if (input==null) {
+			//Everything is in the buffer already.
+			listener.bytesRead(buf.array(), buf.arrayOffset()+buf.position(), buf.remaining());
+		}
+	}
+
+	/**
+	 * Return lines longer than the maximum line length as a series of overlapping windows onto the
+	 * line, rather than throwing an IOException. See {@link LineReader#setLongLineWindows(boolean)}.
+	 */
+	public void setLongLineWindows(boolean enable) {
+		longLineWindows = enable;
+	}
+
+	/**
+	 * Determines whether bytes in a given charset can be scanned without decoding them.
+	 */
+	public static boolean isSupported(Charset charset) {
+		switch (charset.name()) {
+		case "UTF-8":
+		case "US-ASCII":
+		case "ISO-8859-1":
+		case "windows-1252":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Advance to the next line that contains the literal.
+	 *
+	 * @return true if such a line was found; false if the end of the input was reached or the monitor
+	 *    was canceled.
+	 * @throws IOException if a line longer than the maximum line length is encountered, and long
+	 *    lines are not split into windows.
+	 */
+	public boolean find(ByteLiteralMatcher literal, IProgressMonitor mon) throws IOException {
+		int linesScanned = 0;
+		while (nextLine()) {
+			if (literal.indexOf(buf, lineStart, lineEnd)>=0) {
+				return true;
+			}
+			if ((++linesScanned & 0x3FF)==0 && mon.isCanceled()) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Advance to the next line.
+	 *
+	 * @return false if there are no more lines.
+	 */
+	private boolean nextLine() throws IOException {
+		lineStart = pos;
+		if (pos>=buf.limit() && !refill()) {
+			return false;
+		}
+		lineOffset = charOffset;
+		if (!continued) {
+			lineNumber++;
+		}
+		partial = continued;
+		continued = false;
+		int chars = 0;
+		int need = 0; //Number of UTF-8 continuation bytes still expected for the current char.
+		int expected = 0; //Range of the next continuation byte, see sequenceStart.
+		int sequenceChars = 0; //Chars the current sequence decodes to, when it is complete.
+		int i = pos;
+		while (true) {
+			int limit = buf.limit();
+			//With windows, only look as far as needed to find the end of the first one. No char is
+			// more than 4 bytes long.
+			int scanLimit = longLineWindows && (limit-lineStart)/4>MAX_LINE_LENGTH ? lineStart + 4*(MAX_LINE_LENGTH+1) : limit;
+			while (i<scanLimit) {
+				int b = buf.get(i) & 0xFF;
+				if (need>0) {
+					if (b>=(expected>>>8) && b<=(expected & 0xFF)) {
+						expected = CONTINUATION;
+						if (--need==0) {
+							chars += sequenceChars;
+						}
+						i++;
+						continue;
+					}
+					//The decoder replaces the sequence so far with one char, and starts over at b.
+					chars++;
+					need = 0;
+				}
+				if (b=='\n' || b=='\r') {
+					break;
+				}
+				if (!utf8 || b<0x80) {
+					chars++;
+				} else {
+					expected = sequenceStart(b);
+					if (expected==0) {
+						chars++; //Can't start a sequence, the decoder replaces it.
+					} else {
+						need = b<0xE0 ? 1 : b<0xF0 ? 2 : 3;
+						sequenceChars = need==3 ? 2 : 1; //Four bytes decode as a surrogate pair.
+					}
+				}
+				i++;
+			}
+			boolean ended = i<scanLimit; //Found a terminator
+			if (!ended && i>=limit) {
+				int shift = lineStart;
+				boolean more = refill();
+				i -= shift - lineStart;
+				if (!more) {
+					//Last line, without terminator. A sequence cut short by the end of the input is
+					// replaced by one char.
+					if (need>0) {
+						chars++;
+						need = 0;
+					}
+					ended = true;
+				}
+			}
+			if (chars>=MAX_LINE_LENGTH) {
+				if (!longLineWindows) {
+					throw new IOException("Very long lines of text. Minified file?");
+				}
+				if (chars>MAX_LINE_LENGTH) {
+					nextWindow(i);
+					return true;
+				}
+			}
+			if (ended) {
+				break;
+			}
+		}
+		lineEnd = i;
+		int terminator = 0;
+		if (i<buf.limit()) {
+			terminator = 1;
+			if (buf.get(i)=='\r') {
+				//Need to peek at the next byte, it may be part of the terminator.
+				int shift = lineStart;
+				boolean more = i+1<buf.limit() || refill();
+				i -= shift - lineStart;
+				lineEnd = i;
+				if (more && i+1<buf.limit() && buf.get(i+1)=='\n') {
+					terminator = 2;
+				}
+			}
+		}
+		pos = lineEnd + terminator;
+		charOffset += chars + terminator;
+		return true;
+	}
+
+	/**
+	 * Makes the current line a window onto the line starting at lineStart, which has more than
+	 * MAX_LINE_LENGTH chars before position end, and moves ahead to the start of the next window.
+	 */
+	private void nextWindow(int end) {
+		lineEnd = skipChars(MAX_LINE_LENGTH, end);
+		pos = skipChars(LineReader.windowStep(MAX_LINE_LENGTH), end);
+		charOffset += skipped;
+		partial = continued = true;
+	}
+
+	/**
+	 * Finds the start of the char with a given index, counting from lineStart. Counts chars the same
+	 * way as nextLine, and sets skipped to the number of chars before the returned position. When the
+	 * index falls between the chars of a surrogate pair, this is the start of the pair instead, and
+	 * skipped is one less than the index. Unless the pair is the first char.
+	 */
+	private int skipChars(int index, int end) {
+		int chars = 0;
+		int need = 0;
+		int expected = 0;
+		int sequenceChars = 0;
+		int lead = 0; //Position of the first byte of the current sequence.
+		int i = lineStart;
+		for (; i<end; i++) {
+			int b = buf.get(i) & 0xFF;
+			if (need>0) {
+				if (b>=(expected>>>8) && b<=(expected & 0xFF)) {
+					expected = CONTINUATION;
+					if (--need==0) {
+						if (chars+sequenceChars>index && chars>0) {
+							//A surrogate pair straddles the index.
+							skipped = chars;
+							return lead;
+						}
+						chars += sequenceChars;
+					}
+					continue;
+				}
+				chars++;
+				need = 0;
+			}
+			if (chars>=index) {
+				break;
+			}
+			if (!utf8 || b<0x80) {
+				chars++;
+			} else {
+				expected = sequenceStart(b);
+				if (expected==0) {
+					chars++;
+				} else {
+					need = b<0xE0 ? 1 : b<0xF0 ? 2 : 3;
+					sequenceChars = need==3 ? 2 : 1;
+					lead = i;
+				}
+			}
+		}
+		skipped = chars;
+		return i;
+	}
+
+	/**
+	 * Range of a UTF-8 continuation byte, as (lowest<<8 | highest).
+	 */
+	private static final int CONTINUATION = 0x80BF;
+
+	/**
+	 * @return The range of bytes that may follow a given non-ASCII byte in well-formed UTF-8, as
+	 *    (lowest<<8 | highest). Or 0 if the byte can't start a sequence. The ranges of the second byte
+	 *    after E0, F0 and F4 rule out overlong encodings and code points above U+10FFFF. Like Java's
+	 *    decoder, ED may be followed by the bytes of a surrogate, which then decode to one U+FFFD.
+	 */
+	private static int sequenceStart(int b) {
+		if (b<0xC2 || b>0xF4) {
+			return 0;
+		}
+		switch (b) {
+		case 0xE0:
+			return 0xA0BF;
+		case 0xF0:
+			return 0x90BF;
+		case 0xF4:
+			return 0x808F;
+		default:
+			return CONTINUATION;
+		}
+	}
+
+	/**
+	 * Read more bytes into the buffer. Bytes in the buffer before the start of the current line are
+	 * discarded to make room, so any positions in the buffer shift by the old value of lineStart.
+	 *
+	 * @return false if no more bytes could be read.
+	 */
+	private boolean refill() throws IOException {
+		if (input==null) {
+			return false;
+		}
+		int keep = buf.limit() - lineStart;
+		if (lineStart>0) {
+			buf.position(lineStart);
+			buf.compact(); //Now keep bytes are at the start and position is at the end of them.
+		} else {
+			buf.position(buf.limit());
+			buf.limit(buf.capacity());
+		}
+		if (!buf.hasRemaining()) {
+			//Buffer is full with a single line. Grow it.
+			ByteBuffer bigger = ByteBuffer.allocate(buf.capacity()*2);
+			buf.flip();
+			bigger.put(buf);
+			buf = bigger;
+		}
+		pos -= lineStart;
+		lineStart = 0;
+		int read = input.read(buf.array(), buf.arrayOffset()+buf.position(), buf.remaining());
+		if (read>0) {
+			if (listener!=null) {
+				listener.bytesRead(buf.array(), buf.arrayOffset()+buf.position(), read);
+			}
+			buf.position(buf.position()+read);
+		}
+		buf.flip();
+		if (read<0) {
+			close();
+			return false;
+		}
+		return keep<buf.limit() || refill();
+	}
+
+	/**
+	 * Decodes the current line.
+	 */
+	public String getLine() {
+		int len = lineEnd - lineStart;
+		if (buf.hasArray()) {
+			return new String(buf.array(), buf.arrayOffset()+lineStart, len, charset);
+		}
+		byte[] bytes = new byte[len];
+		ByteBuffer line = buf.duplicate();
+		line.position(lineStart);
+		line.get(bytes);
+		return new String(bytes, charset);
+	}
+
+	/**
+	 * @return The line number of the current line. The first line is line 1.
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * @return Whether the current line is only a window onto a longer line.
+	 */
+	public boolean isPartialLine() {
+		return partial;
+	}
+
+	/**
+	 * @return The char offset of the start of the current line (or window) relative to beginning of
+	 *    the stream.
+	 */
+	public int getLastLineOffset() {
+		return lineOffset;
+	}
+
+	/**
+	 * Close the underlying stream (if any). Does nothing if already closed.
+	 */
+	public void close() {
+		InputStream toClose = input;
+		input = null;
+		if (toClose!=null) {
+			try {
+				toClose.close();
+			} catch (IOException e) {
+				//Ignore.
+			}
+		}
+	}
+
+	/**
+	 * Reads the remaining bytes of a buffer with bulk gets.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buf;
+
+		ByteBufferInputStream(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		@Override
+		public int read() {
+			return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int off, int len) {
+			if (!buf.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buf.remaining());
+			buf.get(bytes, off, n);
+			return n;
+		}
+	}
+
+}
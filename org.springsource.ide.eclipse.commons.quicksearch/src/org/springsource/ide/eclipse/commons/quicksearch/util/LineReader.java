@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.quicksearch.util;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 
@@ -20,125 +19,288 @@ import java.io.Reader;
  * track of character position while reading. This is needed to
  * ease translation from line-relative offsets into stream-relative
  * offsets.
+ * <p>
+ * The reader does its own buffering. Lines returned by {@link #nextLine()} are a
+ * window into that buffer, so reading a line does not allocate anything. The window
+ * is only valid until the next line is read; call toString on it to keep the text.
+ * <p>
+ * Lines longer than the maximum line length are an error, unless {@link #setLongLineWindows(boolean)}
+ * is enabled. Then such a line is returned as a series of overlapping windows, each at most the
+ * maximum line length, so the reader's memory use does not depend on the length of the lines.
  *
  * @author Kris De Volder
  */
 public class LineReader {
 
-	private static final int EXPECTED_LINE_LENGTH = 160;
+	private static final int BUFFER_SIZE = 8*1024;
 	public static final int DEFAULT_MAX_LINE_LENGTH = 1000;
 
-	private BufferedReader input;
-
-	//This simple implementation just wraps a BufferedReader and StringBuilder
-	//to do the buffering and String building.
-	//It may be more efficient to implement our own buffering like BufferedReader
-	//does.
+	private Reader input;
+	private char[] buf = new char[BUFFER_SIZE];
+	private int limit = 0; //End of the valid chars in the buffer.
 
 	public LineReader(Reader reader) {
 		this(reader, DEFAULT_MAX_LINE_LENGTH);
 	}
 
 	public LineReader(Reader reader, int maxLineLength) {
-		input = buffered(reader);
+		input = reader;
 		MAX_LINE_LENGTH = maxLineLength;
 	}
 
-
-	private StringBuilder line = new StringBuilder(EXPECTED_LINE_LENGTH);
+	private final Line line = new Line();
 
 	private final int MAX_LINE_LENGTH;
 	private int lineOffset = -1; //Start pos of last line read.
+	private int lineNumber = 0; //Line number of the last line read (1 based).
 	private int offset = 0; //position of next char in input.
-	private int mark = 0; //mark offset in underlying stream
+	private int pos = 0; //position of next char in the buffer.
+	private int lineStart = 0; //Start of the last line read in the buffer.
 
-	private BufferedReader buffered(Reader reader) {
-		//If already buffered don't wrap it again.
-		if (reader instanceof BufferedReader) {
-			return (BufferedReader) reader;
-		} else {
-			return new BufferedReader(reader);
-		}
+	private boolean longLineWindows = false;
+	private boolean partial = false; //Whether the last line read is a window onto a longer line.
+	private boolean continued = false; //Whether the next window continues the last line read.
+
+	/**
+	 * Distance between the starts of consecutive windows onto a long line. The windows overlap by
+	 * a quarter of their length, so any match that is not longer than that is seen whole in one of
+	 * them.
+	 */
+	static int windowStep(int maxLineLength) {
+		return Math.max(1, maxLineLength - maxLineLength/4);
+	}
+
+	/**
+	 * Return lines longer than the maximum line length as a series of overlapping windows onto the
+	 * line, rather than throwing an IOException. All windows have the line number of the line, and
+	 * the offset of the window.
+	 * <p>
+	 * A window never starts or ends in the middle of a surrogate pair. When a pair straddles the place
+	 * where a window would end (or the next one would start), that boundary moves one char earlier.
+	 */
+	public void setLongLineWindows(boolean enable) {
+		longLineWindows = enable;
 	}
 
 	/**
 	 * Close the underlying stream. Does nothing if already closed.
 	 */
 	public void close() {
-		BufferedReader toClose = null;
-		synchronized (input) {
-			if (input==null) {
-				return;
+		Reader toClose = input;
+		input = null;
+		if (toClose!=null) {
+			try {
+				toClose.close();
+			} catch (IOException e) {
+				//Ignore.
 			}
-			toClose = input;
-			input = null;
-		}
-		try {
-			toClose.close();
-		} catch (IOException e) {
-			//Ignore.
 		}
 	}
 
-	public String readLine() throws IOException {
+	/**
+	 * Reads the next line.
+	 *
+	 * @return The text of the line, excluding the terminator. The returned CharSequence is reused: it
+	 *    is only valid until the next call to this reader. Returns null at the end of the stream.
+	 */
+	public CharSequence nextLine() throws IOException {
 		lineOffset = offset; //remember start of line
-		int maxOffset = offset + MAX_LINE_LENGTH;
-		//Read text until we see either a CR, CR LF or LF.
-		int c = read();
-		if (c==-1) {
+		lineStart = pos;
+		if (pos>=limit && !fill()) {
 			return null;
 		}
-		//read until newline
-		while (c!='\r' && c!='\n' && c!=-1) {
-			line.append((char)c);
-			c = read();
-			if (offset>maxOffset) {
-				throw new IOException("Very long lines of text. Minified file?");
+		//Read text until we see either a CR, CR LF or LF.
+		int i = pos;
+		while (true) {
+			char[] buf = this.buf;
+			int limit = this.limit;
+			//With windows there's no need to look further than the end of the first one.
+			int scanLimit = longLineWindows && limit-lineStart>MAX_LINE_LENGTH ? lineStart + MAX_LINE_LENGTH + 1 : limit;
+			while (i<scanLimit && buf[i]!='\r' && buf[i]!='\n') {
+				i++;
+			}
+			if (i-lineStart>=MAX_LINE_LENGTH) {
+				if (!longLineWindows) {
+					throw new IOException("Very long lines of text. Minified file?");
+				}
+				if (i-lineStart>MAX_LINE_LENGTH) {
+					return nextWindow();
+				}
+			}
+			if (i<limit) {
+				break;
+			}
+			int shift = lineStart;
+			boolean more = fill();
+			i -= shift - lineStart;
+			if (!more) {
+				break;
 			}
 		}
-		//Last char read was some kind of line terminator. But only read first char of it.
-		if (c=='\r') {
-			mark(); //next char may be part of next line. May need to 'unread' it.
-			int next = read();
-			if (next == '\n') {
-				//skip
-			} else {
-				unread();
+		int lineEnd = i;
+		int terminator = 0;
+		if (i<limit) {
+			terminator = 1;
+			if (buf[i]=='\r') {
+				//Next char may be part of the terminator or of the next line.
+				int shift = lineStart;
+				boolean more = i+1<limit || fill();
+				lineEnd = i -= shift - lineStart;
+				if (more && i+1<limit && buf[i+1]=='\n') {
+					terminator = 2;
+				}
 			}
 		}
-		try {
-			return line.toString();
-		} finally {
-			line.setLength(0);
+		pos = lineEnd + terminator;
+		offset += lineEnd - lineStart + terminator;
+		if (!continued) {
+			lineNumber++;
+		}
+		partial = continued;
+		continued = false;
+		line.set(lineStart, lineEnd - lineStart);
+		return line;
+	}
+
+	/**
+	 * Returns a window onto the current line, which has more than MAX_LINE_LENGTH chars left from
+	 * lineStart, and moves ahead to the start of the next window.
+	 */
+	private CharSequence nextWindow() {
+		int length = MAX_LINE_LENGTH;
+		if (length>1 && splitsPair(lineStart + length)) {
+			length--;
+		}
+		int step = windowStep(MAX_LINE_LENGTH);
+		if (step>1 && splitsPair(lineStart + step)) {
+			step--;
 		}
+		if (!continued) {
+			lineNumber++;
+		}
+		partial = continued = true;
+		pos = lineStart + step;
+		offset += step;
+		line.set(lineStart, length);
+		return line;
 	}
 
-	private void unread() throws IOException {
-		offset = mark;
-		input.reset();
+	/**
+	 * @return Whether the chars on either side of a position in the buffer are a surrogate pair.
+	 */
+	private boolean splitsPair(int i) {
+		return Character.isHighSurrogate(buf[i-1]) && Character.isLowSurrogate(buf[i]);
 	}
 
-	private void mark() throws IOException {
-		mark = offset;
-		input.mark(1);
+	/**
+	 * Reads the next line as a String. Prefer {@link #nextLine()} when most lines are not kept.
+	 *
+	 * @return The text of the line, excluding the terminator, or null at the end of the stream.
+	 */
+	public String readLine() throws IOException {
+		CharSequence line = nextLine();
+		return line==null ? null : line.toString();
 	}
 
-	private int read() throws IOException {
+	/**
+	 * Read more chars into the buffer. Chars before the start of the current line are discarded
+	 * to make room, so positions in the buffer shift by the old value of lineStart.
+	 *
+	 * @return false if no more chars could be read.
+	 */
+	private boolean fill() {
+		if (input==null) {
+			return false;
+		}
+		int keep = limit - lineStart;
+		if (keep==buf.length) {
+			//Buffer is full with a single line. Grow it.
+			char[] bigger = new char[buf.length*2];
+			System.arraycopy(buf, 0, bigger, 0, keep);
+			buf = bigger;
+		} else if (lineStart>0) {
+			System.arraycopy(buf, lineStart, buf, 0, keep);
+		}
+		pos -= lineStart;
+		lineStart = 0;
+		limit = keep;
+		int read;
 		try {
-			offset++;
-			return input.read();
+			do {
+				read = input.read(buf, limit, buf.length - limit);
+			} while (read==0);
 		} catch (IOException e) {
 			//pretend errors are like EOF.
-			return -1;
+			read = -1;
 		}
+		if (read<0) {
+			close();
+			return false;
+		}
+		limit += read;
+		return true;
 	}
 
 	/**
-	 * @return The offset of the start of the last line read relative to beginning of the stream; or -1 if
+	 * @return The offset of the start of the last line (or window) read relative to beginning of the stream; or -1 if
 	 * no line has been read yet.
 	 */
 	public int getLastLineOffset() {
 		return lineOffset;
 	}
 
+	/**
+	 * @return The line number of the last line read. The first line is line 1.
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * @return Whether the last line read is only a window onto a longer line.
+	 */
+	public boolean isPartialLine() {
+		return partial;
+	}
+
+	/**
+	 * A window onto the buffer, holding the text of the last line read.
+	 */
+	private class Line implements CharSequence {
+
+		private int start;
+		private int length;
+
+		void set(int start, int length) {
+			this.start = start;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index<0 || index>=length) {
+				throw new IndexOutOfBoundsException(""+index);
+			}
+			return buf[start+index];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			if (from<0 || to>length || from>to) {
+				throw new IndexOutOfBoundsException(from+", "+to);
+			}
+			return new String(buf, start+from, to-from);
+		}
+
+		@Override
+		public String toString() {
+			return new String(buf, start, length);
+		}
+	}
+
 }